@@ -1,6 +1,9 @@
 import agents.*;
 import env.*;
 import experiments.*;
+import tools.glue.LocalMORLGlue;
+
+import org.rlcommunity.rlglue.codec.RLGlue;
 
 
 public class MORL_Glue_Driver
@@ -8,6 +11,12 @@ public class MORL_Glue_Driver
 
 	public static void main(String[] args) 
 	{
+			// "local" runs the agent, environment and experiment in this thread, connected in-process rather than via the server
+			if (args!=null && args.length>0 && args[0].equals("local"))
+			{
+				runLocal();
+				return;
+			}
 			Process server = null;
 			// try to launch the MORL_Glue server
 			Runtime rt = Runtime.getRuntime();
@@ -56,4 +65,12 @@ public class MORL_Glue_Driver
 		  experiment.start();
 		}
 	
+	// runs the same agent, environment and experiment as main, but without launching the server
+	public static void runLocal()
+	{
+		GeneralisedDeepSeaTreasureEnv env = new GeneralisedDeepSeaTreasureEnv(15, 4, 1, 3, 0.0, 0.0, GeneralisedDeepSeaTreasureEnv.CONCAVE, 471);
+		RLGlue.setGlue(new LocalMORLGlue(new TLO_Agent(), env));
+		DemoExperiment.main(null);
+	}
+
 }
@@ -3,7 +3,6 @@ package agents;
 
 import java.math.BigDecimal;
 import java.util.Random;
-import java.util.Stack;
 
 import org.rlcommunity.rlglue.codec.AgentInterface;
 import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
@@ -15,16 +14,40 @@ import org.rlcommunity.rlglue.codec.util.AgentLoader;
 import tools.hypervolume.Point;
 import tools.staterep.DummyStateConverter;
 import tools.staterep.interfaces.StateConverter;
-import tools.traces.StateActionDiscrete;
+import tools.traces.ReplacingTrace;
+import tools.valuefunction.Softmax;
+import tools.valuefunction.TLO;
+import tools.valuefunction.ActionSelection;
+import tools.valuefunction.SharedTLO_LookupTable;
 import tools.valuefunction.TLO_LookupTable;
 import tools.valuefunction.interfaces.ActionSelector;
 import tools.valuefunction.interfaces.ValueFunction;
+import tools.glue.ReusableStepObjects;
+import tools.replay.Minibatch;
+import tools.replay.ReplayMemory;
 
 
 public class TLO_Agent implements AgentInterface {
 
     TLO_LookupTable vf = null;
-    Stack<StateActionDiscrete> tracingStack = null;
+    SharedTLO_LookupTable sharedTable = null; // if not null, vf is this agent's view of a table shared with other agents
+    ReplacingTrace tracingStack = null;
+    ActionSelection selection = new ActionSelection(); // reused on every step to hold the selected and greedy actions
+    ReusableStepObjects stepObjects = new ReusableStepObjects(); // supplies the Actions returned by agent_start and agent_step
+    // Experience replay (off unless set_replay_parameters is sent) - as well as the trace-based update, each transition is
+    // stored, and after every step replaysPerStep minibatches sampled from the memory are learnt from as batch updates.
+    // The memory holds a reward per objective, so it is only created once agent_init has found the number of objectives.
+    ReplayMemory replay = null;
+    Minibatch minibatch = null;
+    int replaysPerStep = 0;
+    int replayCapacity = 0; // 0 turns replay off
+    int replayBatchSize = 0;
+    int replaySampling = ReplayMemory.UNIFORM;
+    double replayAlpha = ReplayMemory.DEFAULT_ALPHA;
+    double replayBeta = ReplayMemory.DEFAULT_BETA;
+    long replaySeed = 471; // given to every replay memory created, so set_random_seed also holds for one created later
+    private int previousState; // the state and action of the transition currently in progress, to store in the replay memory
+    private int previousAction;
 
     private boolean clearTraces; 
     public static final boolean WATKINS = true; // use Watkin's traces (clear on non-greedy actions)
@@ -52,6 +75,8 @@ public class TLO_Agent implements AgentInterface {
     double temperatureDecayRatio;
     double temperature;
     final int MAX_STACK_SIZE = 20;
+    final int MAX_CUTOFF_TRACE_SIZE = 10000; // upper limit on the trace length when a trace cutoff is in use
+    double traceCutoff = 0; // if > 0, traces are truncated once lambda^k falls below this, rather than at MAX_STACK_SIZE
 
     int numOfSteps;
     int numEpisodes;
@@ -62,6 +87,30 @@ public class TLO_Agent implements AgentInterface {
 
     StateConverter stateConverter = null;
 
+    public TLO_Agent()
+    {
+    }
+    
+    // Creates an agent which learns into its own view of sharedTable rather than a table of its own, so that several
+    // agents (each with its own environment, on its own thread) can learn a single set of Q-values at the same time.
+    // The shared table isn't reset by start_new_trial - call its resetQValues method before the workers start instead.
+    public TLO_Agent(SharedTLO_LookupTable sharedTable)
+    {
+    	this.sharedTable = sharedTable;
+    }
+    
+    private TLO_LookupTable createValueFunction()
+    {
+    	if (sharedTable == null)
+    		return new TLO_LookupTable( numOfObjectives, numActions, numStates, 0, thresholds);
+    	if (sharedTable.getNumberOfObjectives() != numOfObjectives || sharedTable.getNumberOfActions() != numActions 
+    			|| sharedTable.getNumberOfStates() != numStates)
+    		throw new IllegalArgumentException("Shared lookup table does not match the size of the task");
+    	TLO_LookupTable view = sharedTable.createWorkerView();
+    	view.setThresholds(thresholds);
+    	return view;
+    }
+
     @Override
     public void agent_init(String taskSpecification) 
     {
@@ -77,18 +126,33 @@ public class TLO_Agent implements AgentInterface {
         // default to all thresholds set at 0
         for (int i=0; i<numOfObjectives-1; i++)
         	thresholds[i]=0.0;
-        vf = new TLO_LookupTable( numOfObjectives, numActions, numStates, 0, thresholds);
+        vf = createValueFunction();
+        createReplayMemory();
 
         random = new Random(471);
-        tracingStack = new Stack<>();
+        tracingStack = ReplacingTrace.resize(tracingStack, lambda, traceCutoff, MAX_STACK_SIZE, MAX_CUTOFF_TRACE_SIZE);
 
         //set the model of converting MDP observation to an int state representation
         stateConverter = new DummyStateConverter();
-        StateActionDiscrete.setStateConverter( stateConverter );
         resetForNewTrial();
 
     }
     
+    // (re)creates the replay memory and minibatch from the replay parameters, for the current number of objectives
+    private void createReplayMemory()
+    {
+        if (replayCapacity <= 0)
+        {
+            replay = null;
+            minibatch = null;
+            return;
+        }
+        replay = new ReplayMemory(replayCapacity, numOfObjectives, replaySampling);
+        replay.setExponents(replayAlpha, replayBeta);
+        replay.setSeed(replaySeed);
+        minibatch = new Minibatch(replayBatchSize, numOfObjectives);
+    }
+    
     private void resetForNewTrial()
     {
         numOfSteps = 0;
@@ -96,7 +160,10 @@ public class TLO_Agent implements AgentInterface {
         epsilon = startingEpsilon;
         temperature = startingTemperature;
         // reset Q-values
-        vf.resetQValues(initQValues); 
+        if (sharedTable == null)
+        	vf.resetQValues(initQValues); 
+        if (replay != null)
+        	replay.clear();
         policyFrozen = false;
         fubar = false;
     }
@@ -108,11 +175,14 @@ public class TLO_Agent implements AgentInterface {
     	numOfSteps = 0;
         tracingStack.clear();
         int state = stateConverter.getStateNumber( observation );
-        int action = getAction(state);
+        selectAction(state);
+        int action = selection.getAction();
 
-        Action returnAction = new Action(1, 0, 0);
+        Action returnAction = stepObjects.getAction();
         returnAction.intArray[0] = action;
-        tracingStack.add(new StateActionDiscrete(observation, returnAction)); // put executed action on the stack
+        tracingStack.add(state, action); // put executed action on the stack
+        previousState = state;
+        previousAction = action;
         lastState = state;
         stateRepetitionCounter = 0;
         return returnAction;
@@ -125,16 +195,17 @@ public class TLO_Agent implements AgentInterface {
         numOfSteps++;
 
         int state = stateConverter.getStateNumber( observation );
-        int action;
-        int greedyAction = ((ActionSelector)vf).chooseGreedyAction(state);
+        // choose the next action before updating, as in Watkins' Q(lambda) - this also gives us the greedy action for the 
+        // target, and whether the chosen action is greedy, from the same evaluation of this state's action values
+        selectAction(state);
+        int action = selection.getAction();
+        int greedyAction = selection.getGreedyAction();
 
         if (!policyFrozen) {
             double currentLambda = lambda;
             for (int i = tracingStack.size() - 1; i >= 0; i--) {
-                StateActionDiscrete pair = tracingStack.get(i);
-
-                int prevAction = pair.getAction().getInt(0);
-                int prevState = stateConverter.getStateNumber(pair.getObservation());
+                int prevAction = tracingStack.getAction(i);
+                int prevState = tracingStack.getState(i);
 
                 if (i + 1 == tracingStack.size()) // this is the most recent action
                 {
@@ -144,34 +215,30 @@ public class TLO_Agent implements AgentInterface {
                 else {
                 	// if there is no more recent entry for this state-action pair then update it
                 	// this is to implement replacing rather than accumulating traces
-                    int index = tracingStack.indexOf(pair, i + 1);
-                    if (index == -1) {
+                    if (tracingStack.isMostRecent(i)) {
                         vf.update(prevAction, prevState, currentLambda, alpha);
                     }
                     currentLambda *= lambda;
                 }
             }
-            action = getAction(state);
-        } else {// if frozen, don't learn and follow greedy policy
-            action = greedyAction;
-        }
+            if (replay != null)
+            {
+                replay.add(previousState, previousAction, reward.doubleArray, state, false);
+                learnFromReplay();
+            }
+        } // if frozen, don't learn - selectAction will already have followed the greedy policy
+        previousState = state;
+        previousAction = action;
 
-        Action returnAction = new Action(1, 0, 0);
+        Action returnAction = stepObjects.getAction();
         returnAction.intArray[0] = action;
-        // clear trace if this action is not greedy and we are using Watkin's approach to traces, otherwise trim stack if neccesary
-        if (clearTraces && !isGreedy(state,action))
+        // clear trace if this action is not greedy and we are using Watkin's approach to traces (the trace drops its oldest entry itself once full)
+        if (clearTraces && !selection.isGreedy())
         {
         	tracingStack.clear();
         }
-        else
-        {
-	        if( tracingStack.size() == MAX_STACK_SIZE ) 
-	        {
-	            tracingStack.remove(0);
-	        }
-        }
-        // in either case, can now add this state-action to the trace stack
-        tracingStack.add( new StateActionDiscrete(observation, returnAction ) );
+        // in either case, can now add this state-action to the trace
+        tracingStack.add(state, action);
 
         return returnAction;
     }
@@ -187,10 +254,8 @@ public class TLO_Agent implements AgentInterface {
         if (!policyFrozen) {
             double currentLambda = lambda;
             for (int i = tracingStack.size() - 1; i >= 0; i--) {
-                StateActionDiscrete pair = tracingStack.get(i);
-
-                int prevAction = pair.getAction().getInt(0);
-                int prevState = stateConverter.getStateNumber(pair.getObservation());
+                int prevAction = tracingStack.getAction(i);
+                int prevState = tracingStack.getState(i);
 
                 if (i + 1 == tracingStack.size()) 
                 {
@@ -201,13 +266,34 @@ public class TLO_Agent implements AgentInterface {
                 {
                 	// if there is no more recent entry for this state-action pair then update it
                 	// this is to implement replacing rather than accumulating traces
-                    int index = tracingStack.indexOf(pair, i + 1);
-                    if (index == -1) {
+                    if (tracingStack.isMostRecent(i)) {
                         vf.update(prevAction, prevState, currentLambda, alpha);
                     }
                     currentLambda *= lambda;
                 }
             }
+            if (replay != null)
+            {
+                // there is no next state, so the previous state is stored in its place
+                replay.add(previousState, previousAction, reward.doubleArray, previousState, true);
+                learnFromReplay();
+            }
+        }
+    }
+
+    // Learns from replaysPerStep minibatches sampled from the replay memory, once it holds at least a minibatch of
+    // transitions. The errors for each minibatch are all found before any of its samples are applied.
+    private void learnFromReplay()
+    {
+        if (replay.size() < minibatch.getCapacity())
+            return;
+        for (int r=0; r<replaysPerStep; r++)
+        {
+            int count = replay.sample(minibatch);
+            vf.calculateBatchErrors(count, minibatch.actions, minibatch.states, minibatch.rewards, minibatch.nextStates, minibatch.terminal, 
+            						gamma, minibatch.errors);
+            vf.updateBatch(count, minibatch.actions, minibatch.states, minibatch.errors, minibatch.weights, alpha);
+            replay.updatePriorities(minibatch);
         }
     }
 
@@ -217,49 +303,54 @@ public class TLO_Agent implements AgentInterface {
         policyFrozen = false;
     }
 
-    private int getAction(int state) {
+    // Selects the action to perform in this state, and records it in selection along with the greedy action and whether
+    // the selected action is greedy
+    private void selectAction(int state) {
         ActionSelector valueFunction = (ActionSelector) vf;
-        int action;
         if (!policyFrozen)
         {
         	switch (explorationStrategy)
         	{
 	        	case TLO_LookupTable.EGREEDY: 
-	        		action = valueFunction.choosePossiblyExploratoryAction(epsilon, state); 
+	        		valueFunction.choosePossiblyExploratoryAction(epsilon, state, selection); 
 	        		break;
 	        	case TLO_LookupTable.SOFTMAX_TOURNAMENT: 
 	        	case TLO_LookupTable.SOFTMAX_ADDITIVE_EPSILON : 
-	        		action = valueFunction.choosePossiblyExploratoryAction(temperature, state);
+	        		valueFunction.choosePossiblyExploratoryAction(temperature, state, selection);
 	        		break;
 	        	default:
-	        		action = -1; // this should never happen - if it does we'll return an invalid value to force the program to halt
+	        		selection.set(-1, -1, false); // this should never happen - if it does we'll return an invalid value to force the program to halt
         	}
         } 
         else 
         {
-        	action = valueFunction.chooseGreedyAction(state);
+        	int greedyAction = valueFunction.chooseGreedyAction(state);
+        	selection.set(greedyAction, greedyAction, true);
         }
-        return action;
-    }
-    
-    // returns true if the specified action is amongst the greedy actions for the 
-    // specified state, false otherwise
-    private boolean isGreedy(int state, int action)
-    {
-        ActionSelector valueFunction = (ActionSelector) vf;
-        return valueFunction.isGreedy(state,action);  	
     }
 
     @Override
     public String agent_message(String message) {
+        String reuseResponse = stepObjects.handleMessage(message);
+        if (reuseResponse != null)
+            return reuseResponse;
         if (message.startsWith("set_num_states")){
         	System.out.println(message);
         	String[] parts = message.split(" ");
         	numStates = Integer.valueOf(parts[1]).intValue();
-            vf = new TLO_LookupTable( numOfObjectives, numActions, numStates, 0, thresholds);
+            vf = createValueFunction();
+            if (replay != null)
+            	replay.clear(); // the stored states may no longer be valid
         	System.out.println("TLO Agent - num states set to " + numStates);
             return "Number of states set";
         }
+        if (message.startsWith("set_trace_cutoff")){
+        	String[] parts = message.split(" ");
+        	traceCutoff = Double.valueOf(parts[1]).doubleValue();
+        	tracingStack = ReplacingTrace.resize(tracingStack, lambda, traceCutoff, MAX_STACK_SIZE, MAX_CUTOFF_TRACE_SIZE);
+            System.out.println("Trace cutoff set to " + traceCutoff + " - maximum trace length is now " + tracingStack.getCapacity());
+            return "Trace cutoff set";
+        }
         if (message.startsWith("set_learning_parameters")){
         	System.out.println(message);
         	String[] parts = message.split(" ");
@@ -277,8 +368,45 @@ public class TLO_Agent implements AgentInterface {
         		System.out.print(" " + initQValues[i]);
         	}
             System.out.println();
+            tracingStack = ReplacingTrace.resize(tracingStack, lambda, traceCutoff, MAX_STACK_SIZE, MAX_CUTOFF_TRACE_SIZE); // the trace length may depend on lambda
             return "Learning parameters set";
         }	
+        if (message.startsWith("set_replay_parameters")){
+        	// memory capacity, minibatch size, minibatches per step and sampling mode, optionally followed by the
+        	// prioritisation exponents alpha and beta - a capacity of 0 turns replay off. If the agent hasn't been
+        	// initialised yet, the memory is created by agent_init.
+        	System.out.println(message);
+        	String[] parts = message.split(" ");
+        	int capacity = Integer.parseInt(parts[1]);
+        	if (capacity <= 0)
+        	{
+        		replayCapacity = 0;
+        		createReplayMemory();
+        		return "Experience replay off";
+        	}
+        	if (parts.length < 5)
+        		return "set_replay_parameters needs a capacity, minibatch size, minibatches per step and sampling mode";
+        	int batchSize = Integer.parseInt(parts[2]);
+        	int sampling = Integer.parseInt(parts[4]);
+        	if (batchSize < 1 || (sampling != ReplayMemory.UNIFORM && sampling != ReplayMemory.PRIORITISED))
+        		return "Invalid replay parameters: " + message;
+        	replayCapacity = capacity;
+        	replayBatchSize = batchSize;
+        	replaysPerStep = Integer.parseInt(parts[3]);
+        	replaySampling = sampling;
+        	replayAlpha = ReplayMemory.DEFAULT_ALPHA;
+        	replayBeta = ReplayMemory.DEFAULT_BETA;
+        	if (parts.length > 6)
+        	{
+        		replayAlpha = Double.valueOf(parts[5]).doubleValue();
+        		replayBeta = Double.valueOf(parts[6]).doubleValue();
+        	}
+        	if (numOfObjectives > 0)
+        		createReplayMemory();
+        	System.out.println("Experience replay: capacity " + capacity + ", " + replaysPerStep + " minibatches of " + batchSize 
+        			+ " per step, " + ReplayMemory.samplingToString(sampling) + " sampling");
+            return "Replay parameters set";
+        }
         if (message.equals("freeze_learning")) {
             policyFrozen = true;
             //System.out.println("\t\t\tLearning and exploration has been frozen");
@@ -319,6 +447,18 @@ public class TLO_Agent implements AgentInterface {
             System.out.println("Starting temperature changed to " + startingTemperature + " Decay ratio = " + temperatureDecayRatio);
             return "softmax parameters changed";
         } 
+        if (message.startsWith("set_random_seed")){
+        	// seeds all of the random number generators used in selecting actions, so that a trial can be reproduced
+        	String[] parts = message.split(" ");
+        	long seed = Long.parseLong(parts[1]);
+        	vf.setSeed(seed);
+        	TLO.setSeed(seed);
+        	Softmax.setSeed(seed);
+        	replaySeed = seed;
+        	if (replay != null)
+        		replay.setSeed(seed);
+            return "Random seed set";
+        }
         if (message.equals("start_new_trial")){
         	resetForNewTrial();
             System.out.println("\t\t\tNew trial started: Q-values and other variables reset");
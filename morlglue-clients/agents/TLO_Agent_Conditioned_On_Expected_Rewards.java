@@ -8,7 +8,6 @@ package agents;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Random;
-import java.util.Stack;
 
 import org.rlcommunity.rlglue.codec.AgentInterface;
 import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
@@ -20,15 +19,19 @@ import org.rlcommunity.rlglue.codec.util.AgentLoader;
 import tools.hypervolume.Point;
 import tools.staterep.DummyStateConverter;
 import tools.staterep.interfaces.StateConverter;
-import tools.traces.StateActionIndexPair;
+import tools.traces.ReplacingTrace;
+import tools.valuefunction.Softmax;
+import tools.valuefunction.TLO;
 import tools.valuefunction.TLOConditionedLookupTable;
 import tools.valuefunction.TLO_LookupTable;
 import tools.valuefunction.interfaces.ActionSelector;
 import tools.valuefunction.interfaces.ValueFunction;
+import tools.glue.ReusableStepObjects;
 
 
 public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface 
 {
+    ReusableStepObjects stepObjects = new ReusableStepObjects(); // supplies the Actions returned by agent_start and agent_step
 
 	// Parameters for the discretisation of the accumulated rewards - all arrays so they can be set independently for each objective that
 	// is being thresholded
@@ -45,7 +48,7 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
     int lastState, lastAction; // the most recent environmental state and last action - needed for updating the immediate reward estimates
     
 	TLOConditionedLookupTable vf = null;
-    Stack<StateActionIndexPair> tracingStack = null;
+    ReplacingTrace tracingStack = null;
 
     private boolean policyFrozen = false;
     private boolean debugging = false;
@@ -71,6 +74,8 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
     double gamma;
     double lambda;
     final int MAX_STACK_SIZE = 20;
+    final int MAX_CUTOFF_TRACE_SIZE = 10000; // upper limit on the trace length when a trace cutoff is in use
+    double traceCutoff = 0; // if > 0, traces are truncated once lambda^k falls below this, rather than at MAX_STACK_SIZE
 
     int numOfSteps;
     int numEpisodes;
@@ -109,7 +114,7 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
         // first trial is started
 
         random = new Random(471);
-        tracingStack = new Stack<>();
+        tracingStack = ReplacingTrace.resize(tracingStack, lambda, traceCutoff, MAX_STACK_SIZE, MAX_CUTOFF_TRACE_SIZE);
 
         //set the model of converting MDP observation to an int state representation
         stateConverter = new DummyStateConverter();
@@ -196,9 +201,9 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
         int state = getAugmentedStateIndex(observation);
         int action = getAction(state);
 
-        Action returnAction = new Action(1, 0, 0);
+        Action returnAction = stepObjects.getAction();
         returnAction.intArray[0] = action;
-        tracingStack.add(new StateActionIndexPair(state, returnAction)); // put executed action on the stack
+        tracingStack.add(state, action); // put executed action on the stack
     	if (debugging)
     	{
         	for (int i=0; i<numActions; i++)
@@ -251,10 +256,8 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
         if (!policyFrozen) {
             double currentLambda = lambda;
             for (int i = tracingStack.size() - 1; i >= 0; i--) {
-                StateActionIndexPair pair = tracingStack.get(i);
-
-                int prevAction = pair.getAction().getInt(0);
-                int prevState = pair.getState();
+                int prevAction = tracingStack.getAction(i);
+                int prevState = tracingStack.getState(i);
 
                 if (i + 1 == tracingStack.size()) // this is the most recent action
                 {
@@ -264,8 +267,7 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
                 else {
                 	// if there is no more recent entry for this state-action pair then update it
                 	// this is to implement replacing rather than accumulating traces
-                    int index = tracingStack.indexOf(pair, i + 1);
-                    if (index == -1) {
+                    if (tracingStack.isMostRecent(i)) {
                         vf.update(prevAction, prevState, currentLambda, alpha);
                     }
                     currentLambda *= lambda;
@@ -276,22 +278,15 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
             action = greedyAction;
         }
 
-        Action returnAction = new Action(1, 0, 0);
+        Action returnAction = stepObjects.getAction();
         returnAction.intArray[0] = action;
-        // clear trace if this action is not greedy, otherwise trim stack if neccesary
-        if (isGreedy(state,action))
-        {
-	        if( tracingStack.size() == MAX_STACK_SIZE ) 
-	        {
-	            tracingStack.remove(0);
-	        }
-        }
-        else
+        // clear trace if this action is not greedy (the trace drops its oldest entry itself once full)
+        if (!isGreedy(state,action))
         {
         	tracingStack.clear();
         }
-        // in either case, can now add this state-action to the trace stack
-        tracingStack.add( new StateActionIndexPair(state, returnAction ) );
+        // in either case, can now add this state-action to the trace
+        tracingStack.add(state, action);
         if (debugging)
         {
         	for (int i=0; i<numActions; i++)
@@ -335,10 +330,8 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
         if (!policyFrozen) {
             double currentLambda = lambda;
             for (int i = tracingStack.size() - 1; i >= 0; i--) {
-                StateActionIndexPair pair = tracingStack.get(i);
-
-                int prevAction = pair.getAction().getInt(0);
-                int prevState = pair.getState();
+                int prevAction = tracingStack.getAction(i);
+                int prevState = tracingStack.getState(i);
 
                 if (i + 1 == tracingStack.size()) 
                 {
@@ -349,8 +342,7 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
                 {
                 	// if there is no more recent entry for this state-action pair then update it
                 	// this is to implement replacing rather than accumulating traces
-                    int index = tracingStack.indexOf(pair, i + 1);
-                    if (index == -1) {
+                    if (tracingStack.isMostRecent(i)) {
                         vf.update(prevAction, prevState, currentLambda, alpha);
                     }
                     currentLambda *= lambda;
@@ -410,6 +402,9 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
 
     @Override
     public String agent_message(String message) {
+        String reuseResponse = stepObjects.handleMessage(message);
+        if (reuseResponse != null)
+            return reuseResponse;
     	if (message.equals("get_agent_name"))
     	{
     		return "TLO_Expected";
@@ -448,6 +443,13 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
         	System.out.println();
             return "TLO parameters set";
         }
+        if (message.startsWith("set_trace_cutoff")){
+        	String[] parts = message.split(" ");
+        	traceCutoff = Double.valueOf(parts[1]).doubleValue();
+        	tracingStack = ReplacingTrace.resize(tracingStack, lambda, traceCutoff, MAX_STACK_SIZE, MAX_CUTOFF_TRACE_SIZE);
+            System.out.println("Trace cutoff set to " + traceCutoff + " - maximum trace length is now " + tracingStack.getCapacity());
+            return "Trace cutoff set";
+        }
         if (message.startsWith("set_learning_parameters")){
         	System.out.println(message);
         	String[] parts = message.split(" ");
@@ -459,6 +461,7 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
         	vf.setExplorationStrategy(explorationStrategy);
         	System.out.print("Alpha = " + startingAlpha + " Lambda = " + lambda + " Gamma = " + gamma + " exploration = " + TLO_LookupTable.explorationStrategyToString(explorationStrategy) + " alpha decay = " +alphaDecay);
             System.out.println();
+            tracingStack = ReplacingTrace.resize(tracingStack, lambda, traceCutoff, MAX_STACK_SIZE, MAX_CUTOFF_TRACE_SIZE); // the trace length may depend on lambda
             return "Learning parameters set";
         }
         if (message.startsWith("set_egreedy_parameters")){
@@ -476,6 +479,15 @@ public class TLO_Agent_Conditioned_On_Expected_Rewards implements AgentInterface
             System.out.println("Starting temperature changed to " + startingTemperature + " Decay ratio = " + temperatureDecayRatio);
             return "softmax parameters changed";
         } 
+        else if (message.startsWith("set_random_seed")){
+        	// seeds all of the random number generators used in selecting actions, so that a trial can be reproduced
+        	String[] parts = message.split(" ");
+        	long seed = Long.parseLong(parts[1]);
+        	vf.setSeed(seed);
+        	TLO.setSeed(seed);
+        	Softmax.setSeed(seed);
+            return "Random seed set";
+        }
         else if (message.equals("start_new_trial")){
         	resetForNewTrial();
             System.out.println("New trial started: Q-values and other variables reset");
@@ -0,0 +1,534 @@
+// A planning agent which chooses each action by multi-objective Monte Carlo tree search, comparing actions by
+// thresholded lexicographic ordering (using TLO.compare) rather than by a scalarised value.
+// Rather than learning from experience, the agent plans from the environment's current state before every action.
+// It takes a snapshot of the real environment (which must be a RestorableEnvironment in the same process, eg connected
+// through a LocalMORLGlue), and worker threads each restore the snapshot into their own copy of the environment
+// (created by a SimulatorFactory) and sample rollouts from there. Each copy is reseeded before every rollout, so
+// rollouts sample their own outcomes rather than repeating the real environment's future.
+// The workers share a single search tree. Each node is a decision point identified by the observations seen since the
+// root, and holds a visit count and a sum of return vectors for each action. Actions are selected within the tree by
+// adding a UCB exploration bonus to each objective of their mean return (scaled by the range of returns seen from the
+// root so that the exploration constant doesn't depend on the size of the rewards, or by DEFAULT_RETURN_RANGE until those
+// returns vary) and comparing the results with TLO.compare. Once a rollout leaves the tree, actions are chosen uniformly
+// at random until the episode ends or the horizon is reached, and one new node is added to the tree per rollout.
+// While a rollout is in progress, each action it passes through carries a virtual loss - an extra visit valued at the
+// worst return seen so far - so that other workers are steered onto different paths instead of duplicating its work.
+// After the search, the action with the best mean return (by TLO.compare, without the exploration bonus) is performed.
+// The search budget for each decision is either a number of rollouts or a time limit, set by the messages
+// "set_rollout_budget N" and "set_time_budget milliseconds". Thresholds apply to the expected return from the current
+// state (as for TLO_Agent's Q-values), and are set by the message "change_thresholds t1 t2 ...".
+// With a single worker thread and a given seed the agent's choices are reproducible. With more than one worker they
+// depend on how the threads' rollouts interleave.
+// This agent can't be run over the network, as it needs direct access to the environment.
+
+package agents;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.rlcommunity.rlglue.codec.AgentInterface;
+import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
+import org.rlcommunity.rlglue.codec.types.Action;
+import org.rlcommunity.rlglue.codec.types.Observation;
+import org.rlcommunity.rlglue.codec.types.Reward;
+import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
+
+import env.interfaces.RestorableEnvironment;
+import tools.glue.ReusableStepObjects;
+import tools.valuefunction.TLO;
+
+public class TLO_Agent_MCTS implements AgentInterface {
+
+    // creates the environments used by the workers for their rollouts - each should be a separate instance of the same
+    // environment as the real one, with the same settings (but preferably without a display)
+    public interface SimulatorFactory
+    {
+        RestorableEnvironment createSimulator(int worker);
+    }
+
+    public static final int DEFAULT_ROLLOUT_BUDGET = 1000;
+    public static final int DEFAULT_HORIZON = 200;
+    public static final double DEFAULT_EXPLORATION = Math.sqrt(2);
+    // the scale of the exploration bonus for an objective whose returns from the root haven't varied yet
+    public static final double DEFAULT_RETURN_RANGE = 1.0;
+
+    private final RestorableEnvironment environment;
+    private final SimulatorFactory simulatorFactory;
+    ReusableStepObjects stepObjects = new ReusableStepObjects(); // supplies the Actions returned by agent_start and agent_step
+
+    private int numActions = 0;
+    int numOfObjectives;
+    double thresholds[];
+
+    // search settings
+    private int rolloutBudget = DEFAULT_ROLLOUT_BUDGET; // rollouts per decision, if timeBudget is 0
+    private long timeBudget = 0; // milliseconds per decision, used instead of rolloutBudget if > 0
+    private int horizon = DEFAULT_HORIZON; // maximum number of steps in a rollout
+    private double exploration = DEFAULT_EXPLORATION;
+    private double gamma = 1.0;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private long seed = 471;
+
+    // workers, created when first needed and kept until the number of threads changes or the agent is cleaned up
+    private Worker workers[] = null;
+    private ExecutorService pool = null;
+    private Random seeds; // supplies each decision's seeds for the workers
+
+    // the current search
+    private long rootSnapshot[];
+    private Node root;
+    private final AtomicInteger rolloutsStarted = new AtomicInteger();
+    private long deadline;
+    private int lastRollouts = 0;
+
+    public TLO_Agent_MCTS(RestorableEnvironment environment, SimulatorFactory simulatorFactory)
+    {
+        this.environment = environment;
+        this.simulatorFactory = simulatorFactory;
+    }
+
+    @Override
+    public void agent_init(String taskSpecification)
+    {
+        System.out.println("TLO MCTS agent launched");
+        TaskSpecVRLGLUE3 theTaskSpec = new TaskSpecVRLGLUE3(taskSpecification);
+
+        numActions = theTaskSpec.getDiscreteActionRange(0).getMax() + 1;
+        numOfObjectives = theTaskSpec.getNumOfObjectives();
+
+        thresholds = new double[numOfObjectives-1];
+        // default to all thresholds set at 0
+        for (int i=0; i<numOfObjectives-1; i++)
+            thresholds[i]=0.0;
+        rootSnapshot = new long[environment.getSnapshotSize()];
+        seeds = new Random(seed);
+    }
+
+    @Override
+    public Action agent_start(Observation observation) {
+        Action returnAction = stepObjects.getAction();
+        returnAction.intArray[0] = search();
+        return returnAction;
+    }
+
+    @Override
+    public Action agent_step(Reward reward, Observation observation)
+    {
+        Action returnAction = stepObjects.getAction();
+        returnAction.intArray[0] = search();
+        return returnAction;
+    }
+
+    @Override
+    public void agent_end(Reward reward)
+    {
+    }
+
+    @Override
+    public void agent_cleanup() {
+        shutdownWorkers();
+        root = null;
+    }
+
+    // the number of rollouts performed for the most recent decision
+    public int getLastRollouts()
+    {
+        return lastRollouts;
+    }
+
+    // Searches from the environment's current state, and returns the action to perform
+    private int search()
+    {
+        if (workers == null)
+            createWorkers();
+        environment.saveSnapshot(rootSnapshot, 0);
+        root = new Node(true);
+        rolloutsStarted.set(0);
+        deadline = System.nanoTime() + timeBudget * 1000000L;
+        for (int w=0; w<workers.length; w++)
+        {
+            workers[w].random.setSeed(seeds.nextLong());
+        }
+        if (workers.length == 1)
+        {
+            workers[0].call();
+        }
+        else
+        {
+            ArrayList<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int w=0; w<workers.length; w++)
+            {
+                results.add(pool.submit(workers[w]));
+            }
+            try
+            {
+                for (Future<Void> result : results)
+                {
+                    result.get();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while searching", e);
+            }
+            catch (ExecutionException e)
+            {
+                throw new RuntimeException("A search worker failed", e.getCause());
+            }
+        }
+        lastRollouts = root.totalVisits;
+        return root.bestAction();
+    }
+
+    // true if the current search should start another rollout
+    private boolean claimRollout()
+    {
+        if (timeBudget > 0)
+            return System.nanoTime() < deadline;
+        return rolloutsStarted.getAndIncrement() < rolloutBudget;
+    }
+
+    private void createWorkers()
+    {
+        workers = new Worker[Math.max(1, numThreads)];
+        for (int w=0; w<workers.length; w++)
+        {
+            workers[w] = new Worker(simulatorFactory.createSimulator(w));
+        }
+        if (workers.length > 1)
+            pool = Executors.newFixedThreadPool(workers.length);
+    }
+
+    private void shutdownWorkers()
+    {
+        if (pool != null)
+        {
+            pool.shutdown();
+            pool = null;
+        }
+        if (workers != null)
+        {
+            for (int w=0; w<workers.length; w++)
+            {
+                workers[w].simulator.env_cleanup();
+            }
+            workers = null;
+        }
+    }
+
+    // A decision point in the search tree. All access to a node's fields is synchronized on the node.
+    private class Node
+    {
+        final int visits[] = new int[numActions]; // completed rollouts through each action
+        final int virtualLoss[] = new int[numActions]; // rollouts in progress through each action
+        final double returnSums[][] = new double[numActions][numOfObjectives];
+        int totalVisits = 0;
+        // the following node for each action and observation, keyed by action in the high 32 bits and observation in the low
+        final HashMap<Long, Node> children = new HashMap<Long, Node>();
+        // the range of returns seen from this node - only maintained at the root, and null elsewhere
+        final double minReturn[];
+        final double maxReturn[];
+
+        Node(boolean _isRoot)
+        {
+            minReturn = _isRoot ? new double[numOfObjectives] : null;
+            maxReturn = _isRoot ? new double[numOfObjectives] : null;
+        }
+
+        // Selects an action to follow during a rollout and adds a virtual loss to it. Untried actions are selected first,
+        // at random. Otherwise the action whose mean return plus exploration bonus ranks highest under TLO is selected.
+        synchronized int select(double range[], double worst[], double value[], double bestValue[], Random random)
+        {
+            int total = 0;
+            int untried = 0;
+            for (int a=0; a<numActions; a++)
+            {
+                int n = visits[a] + virtualLoss[a];
+                total += n;
+                if (n == 0)
+                    untried++;
+            }
+            int best = -1;
+            if (untried > 0)
+            {
+                int choice = random.nextInt(untried);
+                for (int a=0; a<numActions; a++)
+                {
+                    if (visits[a] + virtualLoss[a] == 0 && choice-- == 0)
+                    {
+                        best = a;
+                        break;
+                    }
+                }
+            }
+            else
+            {
+                double logTotal = Math.log(total);
+                for (int a=0; a<numActions; a++)
+                {
+                    int n = visits[a] + virtualLoss[a];
+                    double bonus = exploration * Math.sqrt(logTotal / n);
+                    for (int o=0; o<numOfObjectives; o++)
+                    {
+                        value[o] = (returnSums[a][o] + virtualLoss[a] * worst[o]) / n + bonus * range[o];
+                    }
+                    if (best < 0 || TLO.compare(value, bestValue, thresholds) > 0)
+                    {
+                        best = a;
+                        System.arraycopy(value, 0, bestValue, 0, numOfObjectives);
+                    }
+                }
+            }
+            virtualLoss[best]++;
+            return best;
+        }
+
+        // Returns the node following _action and _observation. If there isn't one yet, it is created and
+        // _created[0] is set.
+        synchronized Node getChild(int _action, int _observation, boolean _created[])
+        {
+            Long key = Long.valueOf(((long) _action << 32) | (_observation & 0xffffffffL));
+            Node child = children.get(key);
+            if (child == null)
+            {
+                child = new Node(false);
+                children.put(key, child);
+                _created[0] = true;
+            }
+            return child;
+        }
+
+        // replaces a virtual loss on _action with a completed rollout, whose return is held in _returns from _offset
+        synchronized void backup(int _action, double _returns[], int _offset)
+        {
+            virtualLoss[_action]--;
+            visits[_action]++;
+            for (int o=0; o<numOfObjectives; o++)
+            {
+                double g = _returns[_offset + o];
+                returnSums[_action][o] += g;
+                if (minReturn != null)
+                {
+                    if (totalVisits == 0 || g < minReturn[o])
+                        minReturn[o] = g;
+                    if (totalVisits == 0 || g > maxReturn[o])
+                        maxReturn[o] = g;
+                }
+            }
+            totalVisits++;
+        }
+
+        // copies the range and minimum of the returns seen so far from the root into _range and _worst - a range of 0
+        // (eg before the second rollout) is replaced by DEFAULT_RETURN_RANGE, so the exploration bonus isn't switched off
+        synchronized void getReturnRange(double _range[], double _worst[])
+        {
+            for (int o=0; o<numOfObjectives; o++)
+            {
+                double range = maxReturn[o] - minReturn[o];
+                _range[o] = (range > 0) ? range : DEFAULT_RETURN_RANGE;
+                _worst[o] = minReturn[o];
+            }
+        }
+
+        // the tried action with the highest-ranked mean return, with ties going to the action with more visits
+        synchronized int bestAction()
+        {
+            double value[] = new double[numOfObjectives];
+            double bestValue[] = new double[numOfObjectives];
+            int best = -1;
+            for (int a=0; a<numActions; a++)
+            {
+                if (visits[a] == 0)
+                    continue;
+                for (int o=0; o<numOfObjectives; o++)
+                {
+                    value[o] = returnSums[a][o] / visits[a];
+                }
+                int comparison = (best < 0) ? 1 : TLO.compare(value, bestValue, thresholds);
+                if (comparison > 0 || (comparison == 0 && visits[a] > visits[best]))
+                {
+                    best = a;
+                    System.arraycopy(value, 0, bestValue, 0, numOfObjectives);
+                }
+            }
+            // if no rollout finished (eg the time budget was too short) there is nothing to go on
+            return (best < 0) ? 0 : best;
+        }
+    }
+
+    // Performs rollouts on its own simulator until the search budget is used up
+    private class Worker implements Callable<Void>
+    {
+        final RestorableEnvironment simulator;
+        final Random random = new Random();
+        final Action action = new Action(1, 0, 0);
+        // working storage, reused for every rollout
+        final Node path[] = new Node[horizon];
+        final int pathActions[] = new int[horizon];
+        final double returns[] = new double[horizon * numOfObjectives]; // rewards, then returns, for each step
+        final double range[] = new double[numOfObjectives];
+        final double worst[] = new double[numOfObjectives];
+        final double value[] = new double[numOfObjectives];
+        final double bestValue[] = new double[numOfObjectives];
+        final boolean created[] = new boolean[1];
+
+        Worker(RestorableEnvironment _simulator)
+        {
+            simulator = _simulator;
+            simulator.env_init();
+            simulator.env_message(ReusableStepObjects.MESSAGE + " true");
+        }
+
+        public Void call()
+        {
+            while (claimRollout())
+            {
+                rollout();
+            }
+            return null;
+        }
+
+        private void rollout()
+        {
+            simulator.restoreSnapshot(rootSnapshot, 0);
+            simulator.reseed(random.nextLong());
+            root.getReturnRange(range, worst);
+            Node node = root;
+            boolean leavingTree = false;
+            int pathLength = 0;
+            int steps = 0;
+            boolean terminal = false;
+            while (steps < horizon && !terminal)
+            {
+                if (node != null)
+                {
+                    action.intArray[0] = node.select(range, worst, value, bestValue, random);
+                    path[pathLength] = node;
+                    pathActions[pathLength] = action.intArray[0];
+                    pathLength++;
+                }
+                else
+                {
+                    action.intArray[0] = random.nextInt(numActions);
+                }
+                Reward_observation_terminal result = simulator.env_step(action);
+                for (int o=0; o<numOfObjectives; o++)
+                {
+                    returns[steps * numOfObjectives + o] = result.r.getDouble(o);
+                }
+                terminal = result.isTerminal();
+                steps++;
+                if (node != null)
+                {
+                    if (leavingTree || terminal)
+                    {
+                        node = null;
+                    }
+                    else
+                    {
+                        created[0] = false;
+                        node = node.getChild(action.intArray[0], result.o.getInt(0), created);
+                        leavingTree = created[0];
+                    }
+                }
+            }
+            // convert each step's reward into the return from that step
+            for (int s=steps-2; s>=0; s--)
+            {
+                for (int o=0; o<numOfObjectives; o++)
+                {
+                    returns[s * numOfObjectives + o] += gamma * returns[(s + 1) * numOfObjectives + o];
+                }
+            }
+            for (int i=0; i<pathLength; i++)
+            {
+                path[i].backup(pathActions[i], returns, i * numOfObjectives);
+                path[i] = null;
+            }
+        }
+    }
+
+    @Override
+    public String agent_message(String message) {
+        String reuseResponse = stepObjects.handleMessage(message);
+        if (reuseResponse != null)
+            return reuseResponse;
+        if (message.startsWith("change_thresholds")){
+            System.out.println(message);
+            System.out.print("\tThresholds changed to ");
+            String[] parts = message.split(" ");
+            double thresholds[] = new double[numOfObjectives-1];
+            for (int i=0; i< numOfObjectives-1; i++)
+            {
+                thresholds[i] = Double.valueOf(parts[i+1]).doubleValue();
+                System.out.print(thresholds[i] + " ");
+            }
+            this.thresholds = thresholds;
+            System.out.println();
+            return "Thresholds changed";
+        }
+        if (message.startsWith("set_rollout_budget")){
+            String[] parts = message.split(" ");
+            rolloutBudget = Integer.parseInt(parts[1]);
+            timeBudget = 0;
+            System.out.println("MCTS budget set to " + rolloutBudget + " rollouts per decision");
+            return "Rollout budget set";
+        }
+        if (message.startsWith("set_time_budget")){
+            String[] parts = message.split(" ");
+            timeBudget = Long.parseLong(parts[1]);
+            System.out.println("MCTS budget set to " + timeBudget + "ms per decision");
+            return "Time budget set";
+        }
+        if (message.startsWith("set_search_parameters")){
+            // the exploration constant, the rollout horizon and the discount factor
+            System.out.println(message);
+            String[] parts = message.split(" ");
+            exploration = Double.valueOf(parts[1]).doubleValue();
+            int newHorizon = Integer.parseInt(parts[2]);
+            gamma = Double.valueOf(parts[3]).doubleValue();
+            if (newHorizon != horizon)
+            {
+                horizon = newHorizon;
+                shutdownWorkers(); // their working storage depends on the horizon
+            }
+            return "Search parameters set";
+        }
+        if (message.startsWith("set_num_threads")){
+            String[] parts = message.split(" ");
+            numThreads = Math.max(1, Integer.parseInt(parts[1]));
+            shutdownWorkers();
+            System.out.println("MCTS agent will search with " + numThreads + " threads");
+            return "Number of threads set";
+        }
+        if (message.startsWith("set_random_seed")){
+            // seeds the generator which supplies the workers' seeds, so that with one worker a trial can be reproduced
+            String[] parts = message.split(" ");
+            seed = Long.parseLong(parts[1]);
+            seeds = new Random(seed);
+            return "Random seed set";
+        }
+        if (message.equals("freeze_learning") || message.equals("unfreeze_learning")) {
+            // there is nothing to freeze, as the agent plans afresh for every action
+            return "message understood, MCTS agent does not learn";
+        }
+        if (message.equals("start_new_trial")){
+            seeds = new Random(seed);
+            root = null;
+            return "New trial started";
+        }
+        if (message.equals("get_agent_name")) {
+            return "TLO_MCTS";
+        }
+
+        return "TLO MCTS agent(Java) does not understand your message.";
+    }
+}
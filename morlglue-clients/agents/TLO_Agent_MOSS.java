@@ -8,7 +8,6 @@
 
 package agents;
 
-import java.util.Stack;
 
 import org.rlcommunity.rlglue.codec.AgentInterface;
 import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
@@ -19,10 +18,15 @@ import org.rlcommunity.rlglue.codec.util.AgentLoader;
 
 import tools.staterep.DummyStateConverter;
 import tools.staterep.interfaces.StateConverter;
-import tools.traces.StateActionIndexPair;
+import tools.traces.ReplacingTrace;
+import tools.valuefunction.Softmax;
+import tools.valuefunction.TLO;
+import tools.valuefunction.ActionSelection;
 import tools.valuefunction.TLO_MOSS_LookupTable;
 import tools.valuefunction.TLO_LookupTable;
 import tools.valuefunction.interfaces.ActionSelector;
+import tools.valuefunction.interfaces.LookupTable;
+import tools.glue.ReusableStepObjects;
 
 public class TLO_Agent_MOSS implements AgentInterface 
 {
@@ -48,7 +52,9 @@ public class TLO_Agent_MOSS implements AgentInterface
 	//double conditioningValues[][]; //[state] [numThresholds]
     
 	TLO_MOSS_LookupTable vf = null;
-	Stack<StateActionIndexPair> tracingStack = null;
+	ReplacingTrace tracingStack = null;
+	ActionSelection selection = new ActionSelection(); // reused on every step to hold the selected and greedy actions
+	ReusableStepObjects stepObjects = new ReusableStepObjects(); // supplies the Actions returned by agent_start and agent_step
 
 	private boolean policyFrozen = false;
 
@@ -73,6 +79,8 @@ public class TLO_Agent_MOSS implements AgentInterface
     double gamma;
     double lambda;
     final int MAX_STACK_SIZE = 20;
+    final int MAX_CUTOFF_TRACE_SIZE = 10000; // upper limit on the trace length when a trace cutoff is in use
+    double traceCutoff = 0; // if > 0, traces are truncated once lambda^k falls below this, rather than at MAX_STACK_SIZE
 
     int numOfSteps;
     int numEpisodes; //count of all episodes v_\pi
@@ -111,7 +119,7 @@ public class TLO_Agent_MOSS implements AgentInterface
         // discretisations levels are being used for each objective, and what the thresholds are - that needs to happen before the 
         // first trial is started
 
-        tracingStack = new Stack<>();
+        tracingStack = ReplacingTrace.resize(tracingStack, lambda, traceCutoff, MAX_STACK_SIZE, MAX_CUTOFF_TRACE_SIZE);
 
         //set the model of converting MDP observation to an int state representation
         stateConverter = new DummyStateConverter();
@@ -231,11 +239,12 @@ public class TLO_Agent_MOSS implements AgentInterface
     	resetForNewEpisode();
         int envState = stateConverter.getStateNumber( observation );
         int state = updateStatisticsHelper(envState, accumulatedRewards);
-        int action = getAction(state);
+        selectAction(state);
+        int action = selection.getAction();
 
-        Action returnAction = new Action(1, 0, 0);
+        Action returnAction = stepObjects.getAction();
         returnAction.intArray[0] = action;
-        tracingStack.add(new StateActionIndexPair(state, returnAction)); // put executed action on the stack
+        tracingStack.add(state, action); // put executed action on the stack
 
         lastAction = action;
         return returnAction;
@@ -251,16 +260,17 @@ public class TLO_Agent_MOSS implements AgentInterface
         }
         lastState = stateConverter.getStateNumber( observation ); // get the envt state index
         int state = updateStatisticsHelper(lastState, accumulatedRewards);
-        int action;
-        int greedyAction = ((ActionSelector)vf).chooseGreedyAction(state);
+        // choose the next action before updating, as in Watkins' Q(lambda) - this also gives us the greedy action for the 
+        // target, and whether the chosen action is greedy, from the same evaluation of this state's action values
+        selectAction(state);
+        int action = selection.getAction();
+        int greedyAction = selection.getGreedyAction();
 
         if (!policyFrozen) {
             double currentLambda = lambda;
             for (int i = tracingStack.size() - 1; i >= 0; i--) {
-                StateActionIndexPair pair = tracingStack.get(i);
-
-                int prevAction = pair.getAction().getInt(0);
-                int prevState = pair.getState();
+                int prevAction = tracingStack.getAction(i);
+                int prevState = tracingStack.getState(i);
 
                 if (i + 1 == tracingStack.size()) // this is the most recent action
                 {
@@ -270,37 +280,25 @@ public class TLO_Agent_MOSS implements AgentInterface
                 else {
                 	// if there is no more recent entry for this state-action pair then update it
                 	// this is to implement replacing rather than accumulating traces
-                    int index = tracingStack.indexOf(pair, i + 1);
-                    if (index == -1) {
+                    if (tracingStack.isMostRecent(i)) {
                         vf.update(prevAction, prevState, currentLambda, alpha);
                     }
                     currentLambda *= lambda;
                 }
 
             }
-            action = getAction(state);
-            
-        } else {// if frozen, don't learn and follow greedy policy
-            action = greedyAction;
-        }
+        } // if frozen, don't learn - selectAction will already have followed the greedy policy
 
-        Action returnAction = new Action(1, 0, 0);
+        Action returnAction = stepObjects.getAction();
         returnAction.intArray[0] = action;
         
-        // clear trace if this action is not greedy, otherwise trim stack if neccesary
-        if (isGreedy(state,action))
-        {
-	        if( tracingStack.size() == MAX_STACK_SIZE ) 
-	        {
-	            tracingStack.remove(0);
-	        }
-        }
-        else
+        // clear trace if this action is not greedy (the trace drops its oldest entry itself once full)
+        if (!selection.isGreedy())
         {
         	tracingStack.clear();
         }
-        // in either case, can now add this state-action to the trace stack
-        tracingStack.add( new StateActionIndexPair(state, returnAction ) );
+        // in either case, can now add this state-action to the trace
+        tracingStack.add(state, action);
 
     	// store info needed for updating immediate-rewards on the next time-step
         lastState = stateConverter.getStateNumber( observation ); // get the envt state index
@@ -325,10 +323,8 @@ public class TLO_Agent_MOSS implements AgentInterface
         if (!policyFrozen) {
             double currentLambda = lambda;
             for (int i = tracingStack.size() - 1; i >= 0; i--) {
-                StateActionIndexPair pair = tracingStack.get(i);
-
-                int prevAction = pair.getAction().getInt(0);
-                int prevState = pair.getState();
+                int prevAction = tracingStack.getAction(i);
+                int prevState = tracingStack.getState(i);
 
                 if (i + 1 == tracingStack.size()) 
                 {
@@ -339,8 +335,7 @@ public class TLO_Agent_MOSS implements AgentInterface
                 {
                 	// if there is no more recent entry for this state-action pair then update it
                 	// this is to implement replacing rather than accumulating traces
-                    int index = tracingStack.indexOf(pair, i + 1);
-                    if (index == -1) {
+                    if (tracingStack.isMostRecent(i)) {
                         vf.update(prevAction, prevState, currentLambda, alpha);
                     }
                     currentLambda *= lambda;
@@ -367,32 +362,29 @@ public class TLO_Agent_MOSS implements AgentInterface
         policyFrozen = false;
     }
     
-    private int getAction(int state) {
-        //ActionSelector valueFunction = (ActionSelector) vf;
-        int action;
+    // Selects the action to perform in this state, and records it in selection along with the greedy action and whether
+    // the selected action is greedy
+    private void selectAction(int state) {
         if (!policyFrozen)
         {
         	switch (explorationStrategy)
         	{
 	        	case TLO_LookupTable.EGREEDY: 
-	        		action = vf.choosePossiblyExploratoryAction(epsilon, state); 
+	        		vf.choosePossiblyExploratoryAction(epsilon, state, selection); 
 	        		break;
 	        	case TLO_LookupTable.SOFTMAX_TOURNAMENT: 
-                    //action = valueFunction.choosePossiblyExploratoryAction(temperature, state);
-                    //break;
 	        	case TLO_LookupTable.SOFTMAX_ADDITIVE_EPSILON : 
-	        		action = vf.choosePossiblyExploratoryAction(temperature, state);
+	        		vf.choosePossiblyExploratoryAction(temperature, state, selection);
 	        		break;
 	        	default:
-	        		action = -1; // this should never happen - if it does we'll return an invalid value to force the program to halt
+	        		selection.set(-1, -1, false); // this should never happen - if it does we'll return an invalid value to force the program to halt
         	}
         } 
         else 
         {
-        	action = vf.chooseGreedyAction(state);
+        	int greedyAction = vf.chooseGreedyAction(state);
+        	selection.set(greedyAction, greedyAction, true);
         }
-        
-        return action;
     }
     
     private int getGreedyAction(int envStateS){
@@ -416,15 +408,11 @@ public class TLO_Agent_MOSS implements AgentInterface
         return ((ActionSelector)vf).chooseGreedyAction(augmentedState);
     }
 
-    // returns true if the specified action is amongst the greedy actions for the 
-    // specified state, false otherwise
-    private boolean isGreedy(int state, int action){
-        ActionSelector valueFunction = (ActionSelector) vf;
-        return valueFunction.isGreedy(state,action);  	
-    }
-
     @Override
     public String agent_message(String message) {
+        String reuseResponse = stepObjects.handleMessage(message);
+        if (reuseResponse != null)
+            return reuseResponse;
     	if (message.equals("get_agent_name")){
     		return "TLO_MOSS";
     	}
@@ -459,10 +447,19 @@ public class TLO_Agent_MOSS implements AgentInterface
                 ///////////////// should be numStates * (numDiscretisations[i]+2)
             	numStates = numEnvtStates * (numDiscretisations[i]+2); // agent state = environmental-state U accumulated-actual-reward
             }	
-            vf = new TLO_MOSS_LookupTable(numOfObjectives, numActions, numStates, 0, thresholds);
+            // the augmented state space can be very large, so use the cache-friendly state-major layout for the Q-values
+            vf = new TLO_MOSS_LookupTable(numOfObjectives, numActions, numStates, 0, thresholds, LookupTable.STATE_MAJOR);
+            vf.setLazyReset(true); // so start_new_trial doesn't have to reinitialise the whole augmented table
         	System.out.println();
             return "TLO parameters set";
         }
+        if (message.startsWith("set_trace_cutoff")){
+        	String[] parts = message.split(" ");
+        	traceCutoff = Double.valueOf(parts[1]).doubleValue();
+        	tracingStack = ReplacingTrace.resize(tracingStack, lambda, traceCutoff, MAX_STACK_SIZE, MAX_CUTOFF_TRACE_SIZE);
+            System.out.println("Trace cutoff set to " + traceCutoff + " - maximum trace length is now " + tracingStack.getCapacity());
+            return "Trace cutoff set";
+        }
         if (message.startsWith("set_learning_parameters")){
         	System.out.println(message);
         	String[] parts = message.split(" ");
@@ -474,6 +471,7 @@ public class TLO_Agent_MOSS implements AgentInterface
         	vf.setExplorationStrategy(explorationStrategy);
         	System.out.print("Alpha = " + startingAlpha + " Lambda = " + lambda + " Gamma = " + gamma + " exploration = " + TLO_LookupTable.explorationStrategyToString(explorationStrategy) + " alpha decay = " +alphaDecay);
             System.out.println();
+            tracingStack = ReplacingTrace.resize(tracingStack, lambda, traceCutoff, MAX_STACK_SIZE, MAX_CUTOFF_TRACE_SIZE); // the trace length may depend on lambda
             return "Learning parameters set";
         }
         //////
@@ -562,6 +560,15 @@ public class TLO_Agent_MOSS implements AgentInterface
             System.out.println("Starting temperature changed to " + startingTemperature + " Decay ratio = " + temperatureDecayRatio);
             return "softmax parameters changed";
         } 
+        else if (message.startsWith("set_random_seed")){
+        	// seeds all of the random number generators used in selecting actions, so that a trial can be reproduced
+        	String[] parts = message.split(" ");
+        	long seed = Long.parseLong(parts[1]);
+        	vf.setSeed(seed);
+        	TLO.setSeed(seed);
+        	Softmax.setSeed(seed);
+            return "Random seed set";
+        }
         else if (message.equals("start_new_trial")){
         	resetForNewTrial();
             System.out.println("New trial started: Q-values and other variables reset");
@@ -1,6 +1,5 @@
 package agents;
 
-import java.util.Stack;
 
 import org.rlcommunity.rlglue.codec.AgentInterface;
 import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
@@ -11,10 +10,14 @@ import org.rlcommunity.rlglue.codec.util.AgentLoader;
 
 import tools.staterep.DummyStateConverter;
 import tools.staterep.interfaces.StateConverter;
-import tools.traces.StateActionIndexPair;
+import tools.traces.ReplacingTrace;
+import tools.valuefunction.Softmax;
+import tools.valuefunction.TLO;
+import tools.valuefunction.ActionSelection;
 import tools.valuefunction.TLO_Option_LookupTable;
 import tools.valuefunction.TLO_LookupTable;
 import tools.valuefunction.interfaces.ActionSelector;
+import tools.glue.ReusableStepObjects;
 
 public class TLO_Agent_Option implements AgentInterface 
 {
@@ -24,7 +27,9 @@ public class TLO_Agent_Option implements AgentInterface
 	int currentOption; // the current option been followed
 
 	TLO_Option_LookupTable vf = null;
-	Stack<StateActionIndexPair> tracingStack = null;
+	ReplacingTrace tracingStack = null;
+	ActionSelection selection = new ActionSelection(); // reused to hold the selected and greedy options
+	ReusableStepObjects stepObjects = new ReusableStepObjects(); // supplies the Actions returned by agent_start and agent_step
 
 	private boolean policyFrozen = false;
 
@@ -50,6 +55,8 @@ public class TLO_Agent_Option implements AgentInterface
     double gamma;
     double lambda;
     final int MAX_STACK_SIZE = 20;
+    final int MAX_CUTOFF_TRACE_SIZE = 10000; // upper limit on the trace length when a trace cutoff is in use
+    double traceCutoff = 0; // if > 0, traces are truncated once lambda^k falls below this, rather than at MAX_STACK_SIZE
 
     int numOfSteps;
     int numEpisodes; 
@@ -74,7 +81,7 @@ public class TLO_Agent_Option implements AgentInterface
         // we aren't creating the lookup table at this stage - need to defer that until we get the message telling us 
         // what the thresholds are - that needs to happen before the first trial is started
 
-        tracingStack = new Stack<>();
+        tracingStack = ReplacingTrace.resize(tracingStack, lambda, traceCutoff, MAX_STACK_SIZE, MAX_CUTOFF_TRACE_SIZE);
         //set the model of converting MDP observation to an int state representation
         stateConverter = new DummyStateConverter();
     }
@@ -107,16 +114,15 @@ public class TLO_Agent_Option implements AgentInterface
 
     	resetForNewEpisode();
         int state = stateConverter.getStateNumber( observation );
-        currentOption = getOption(state);
-        greedyFlag = isGreedy(state, currentOption);
+        selectOption(state);
+        currentOption = selection.getAction();
+        greedyFlag = selection.isGreedy();
         int action = getAction[state][currentOption];
 
-        Action returnAction = new Action(1, 0, 0);
+        Action returnAction = stepObjects.getAction();
         returnAction.intArray[0] = action;
 
-        Action returnOption = new Action(1, 0, 0);
-        returnOption.intArray[0] = currentOption;
-        tracingStack.add(new StateActionIndexPair(state, returnOption)); // put executed option on the stack
+        tracingStack.add(state, currentOption); // put executed option on the stack
 
         return returnAction; 
     }
@@ -132,10 +138,8 @@ public class TLO_Agent_Option implements AgentInterface
         if (!policyFrozen) {
             double currentLambda = lambda;
             for (int i = tracingStack.size() - 1; i >= 0; i--) {
-                StateActionIndexPair pair = tracingStack.get(i);
-
-                int prevOption = pair.getAction().getInt(0);
-                int prevState = pair.getState();
+                int prevOption = tracingStack.getAction(i);
+                int prevState = tracingStack.getState(i);
 
                 if (i + 1 == tracingStack.size()) // this is the most recent action
                 {
@@ -145,8 +149,7 @@ public class TLO_Agent_Option implements AgentInterface
                 else {
                     // if there is no more recent entry for this state-action pair then update it
                     // this is to implement replacing rather than accumulating traces
-                    int index = tracingStack.indexOf(pair, i + 1);
-                    if (index == -1) {
+                    if (tracingStack.isMostRecent(i)) {
                         vf.update(prevOption, prevState, currentLambda, alpha);
                     }
                     currentLambda *= lambda;
@@ -155,25 +158,16 @@ public class TLO_Agent_Option implements AgentInterface
             }
         }
 
-        Action returnOption = new Action(1, 0, 0);
-        returnOption.intArray[0] = currentOption;
         
-        // clear trace if this Option is not greedy, otherwise trim stack if neccesary
-        // if (greedyFlag)
-        // {
-	        if( tracingStack.size() == MAX_STACK_SIZE ) 
-	        {
-	            tracingStack.remove(0);
-	        }
-        // }
-        // else
+        // clear trace if this Option is not greedy (the trace drops its oldest entry itself once full)
+        // if (!greedyFlag)
         // {
         // 	tracingStack.clear();
         // }
-        // in either case, can now add this state-action to the trace stack
-        tracingStack.add( new StateActionIndexPair(state, returnOption) );
+        // in either case, can now add this state-action to the trace
+        tracingStack.add(state, currentOption);
 
-        Action returnAction = new Action(1, 0, 0);
+        Action returnAction = stepObjects.getAction();
         returnAction.intArray[0] = action;
 
         return returnAction;
@@ -190,10 +184,8 @@ public class TLO_Agent_Option implements AgentInterface
         if (!policyFrozen) {
             double currentLambda = lambda;
             for (int i = tracingStack.size() - 1; i >= 0; i--) {
-                StateActionIndexPair pair = tracingStack.get(i);
-
-                int prevOption = pair.getAction().getInt(0);
-                int prevState = pair.getState();
+                int prevOption = tracingStack.getAction(i);
+                int prevState = tracingStack.getState(i);
 
                 if (i + 1 == tracingStack.size()) 
                 {
@@ -204,8 +196,7 @@ public class TLO_Agent_Option implements AgentInterface
                 {
                 	// if there is no more recent entry for this state-action pair then update it
                 	// this is to implement replacing rather than accumulating traces
-                    int index = tracingStack.indexOf(pair, i + 1);
-                    if (index == -1) {
+                    if (tracingStack.isMostRecent(i)) {
                         vf.update(prevOption, prevState, currentLambda, alpha);
                     }
                     currentLambda *= lambda;
@@ -240,43 +231,36 @@ public class TLO_Agent_Option implements AgentInterface
         return getAction;
     }
     
-    private int getOption(int state) {
-
-        int option;
+    // Selects the option to follow from this state, and records it in selection along with the greedy option and whether
+    // the selected option is greedy
+    private void selectOption(int state) {
         if (!policyFrozen)
         {
         	switch (explorationStrategy)
         	{
 	        	case TLO_LookupTable.EGREEDY: 
-                    option = vf.choosePossiblyExploratoryAction(epsilon, state); 
+                    vf.choosePossiblyExploratoryAction(epsilon, state, selection); 
 	        		break;
 	        	case TLO_LookupTable.SOFTMAX_TOURNAMENT: 
-                    //action = valueFunction.choosePossiblyExploratoryAction(temperature, state);
-                    //break;
 	        	case TLO_LookupTable.SOFTMAX_ADDITIVE_EPSILON : 
-                    option = vf.choosePossiblyExploratoryAction(temperature, state);
+                    vf.choosePossiblyExploratoryAction(temperature, state, selection);
 	        		break;
 	        	default:
-                    option = -1; // this should never happen - if it does we'll return an invalid value to force the program to halt
+                    selection.set(-1, -1, false); // this should never happen - if it does we'll return an invalid value to force the program to halt
         	}
         } 
         else 
         {
-        	option = vf.chooseGreedyAction(state);
+        	int greedyOption = vf.chooseGreedyAction(state);
+        	selection.set(greedyOption, greedyOption, true);
         }
-        
-        return option;
-    }
-    
-    // returns true if the specified option is amongst the greedy options for the 
-    // specified state, false otherwise
-    private boolean isGreedy(int state, int option){
-        ActionSelector valueFunction = (ActionSelector) vf;
-        return valueFunction.isGreedy(state, option);  	
     }
 
     @Override
     public String agent_message(String message) {
+        String reuseResponse = stepObjects.handleMessage(message);
+        if (reuseResponse != null)
+            return reuseResponse;
     	if (message.equals("get_agent_name")){
     		return "TLO_Agent_Option";
     	}
@@ -306,6 +290,13 @@ public class TLO_Agent_Option implements AgentInterface
         	System.out.println();
             return "TLO parameters set";
         }
+        if (message.startsWith("set_trace_cutoff")){
+        	String[] parts = message.split(" ");
+        	traceCutoff = Double.valueOf(parts[1]).doubleValue();
+        	tracingStack = ReplacingTrace.resize(tracingStack, lambda, traceCutoff, MAX_STACK_SIZE, MAX_CUTOFF_TRACE_SIZE);
+            System.out.println("Trace cutoff set to " + traceCutoff + " - maximum trace length is now " + tracingStack.getCapacity());
+            return "Trace cutoff set";
+        }
         if (message.startsWith("set_learning_parameters")){
         	System.out.println(message);
         	String[] parts = message.split(" ");
@@ -317,6 +308,7 @@ public class TLO_Agent_Option implements AgentInterface
         	vf.setExplorationStrategy(explorationStrategy);
         	System.out.print("Alpha = " + startingAlpha + " Lambda = " + lambda + " Gamma = " + gamma + " exploration = " + TLO_LookupTable.explorationStrategyToString(explorationStrategy) + " alpha decay = " +alphaDecay);
             System.out.println();
+            tracingStack = ReplacingTrace.resize(tracingStack, lambda, traceCutoff, MAX_STACK_SIZE, MAX_CUTOFF_TRACE_SIZE); // the trace length may depend on lambda
             return "Learning parameters set";
         }
         //////
@@ -352,6 +344,15 @@ public class TLO_Agent_Option implements AgentInterface
             System.out.println("Starting temperature changed to " + startingTemperature + " Decay ratio = " + temperatureDecayRatio);
             return "softmax parameters changed";
         } 
+        else if (message.startsWith("set_random_seed")){
+        	// seeds all of the random number generators used in selecting actions, so that a trial can be reproduced
+        	String[] parts = message.split(" ");
+        	long seed = Long.parseLong(parts[1]);
+        	vf.setSeed(seed);
+        	TLO.setSeed(seed);
+        	Softmax.setSeed(seed);
+            return "Random seed set";
+        }
         else if (message.equals("start_new_trial")){
         	resetForNewTrial();
             System.out.println("New trial started: Q-values and other variables reset");
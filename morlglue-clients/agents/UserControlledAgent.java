@@ -10,9 +10,11 @@ import org.rlcommunity.rlglue.codec.types.Reward;
 import org.rlcommunity.rlglue.codec.util.AgentLoader;
 
 import java.util.Scanner;
+import tools.glue.ReusableStepObjects;
 
 public class UserControlledAgent implements AgentInterface 
 {
+    ReusableStepObjects stepObjects = new ReusableStepObjects(); // supplies the Actions returned by agent_start and agent_step
     private int numActions;
     private int numStates;
     private int numOfObjectives;
@@ -35,7 +37,7 @@ public class UserControlledAgent implements AgentInterface
     	System.out.println("*** Starting new episode");
         displayObservation(observation);
         int theIntAction =  getNextAction(numActions);
-        Action returnAction = new Action(1, 0, 0);
+        Action returnAction = stepObjects.getAction();
         returnAction.intArray[0] = theIntAction;
         for (int i=0; i<numOfObjectives; i++)
         {
@@ -49,7 +51,7 @@ public class UserControlledAgent implements AgentInterface
         displayObservation(observation);
         displayAndAccumulateReward(reward);
         int theIntAction =  getNextAction(numActions);
-        Action returnAction = new Action(1, 0, 0);
+        Action returnAction = stepObjects.getAction();
         returnAction.intArray[0] = theIntAction;
         return returnAction;
     }
@@ -109,6 +111,9 @@ public class UserControlledAgent implements AgentInterface
     }
 
     public String agent_message(String message) {
+        String reuseResponse = stepObjects.handleMessage(message);
+        if (reuseResponse != null)
+            return reuseResponse;
         if(message.equals("what is your name?"))
             return "my name is user_controlled_agent, Java edition!";
 
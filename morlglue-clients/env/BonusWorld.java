@@ -15,9 +15,13 @@ import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
 import org.rlcommunity.rlglue.codec.util.EnvironmentLoader;
 import java.util.Random;
 
+import env.interfaces.BatchEnvironment;
+import tools.glue.ReusableStepObjects;
+
 
 public class BonusWorld implements EnvironmentInterface
 {  
+	private ReusableStepObjects stepObjects = new ReusableStepObjects();
 	// define the structure of the environment
     private final int NUM_ROWS = 9;
     private final int NUM_COLS = 9;
@@ -66,7 +70,7 @@ public class BonusWorld implements EnvironmentInterface
         agentCol = HOME[1];
         hasBonus = 0;    
         terminal = false;
-        Observation theObservation = new Observation(1, 0, 0);
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, getState());
         return theObservation;
     }
@@ -75,9 +79,9 @@ public class BonusWorld implements EnvironmentInterface
     public Reward_observation_terminal env_step(Action action) 
     {
         updatePosition( action.getInt(0) );
-        // set up new Observation
-        Reward_observation_terminal RewardObs = new Reward_observation_terminal();
-        Observation theObservation = new Observation(1, 0, 0);
+        // set up the Observation
+        Reward_observation_terminal RewardObs = stepObjects.getStepResult();
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, getState());
         RewardObs.setObservation(theObservation);
         RewardObs.setTerminal(terminal);
@@ -96,6 +100,9 @@ public class BonusWorld implements EnvironmentInterface
 
     public String env_message(String message) 
     {
+        String response = stepObjects.handleMessage(message);
+        if (response != null)
+            return response;
         throw new UnsupportedOperationException(message + " is not supported by BonusWorld environment.");
     }
     
@@ -105,6 +112,37 @@ public class BonusWorld implements EnvironmentInterface
         return agentCol + (NUM_COLS * agentRow) + (NUM_COLS * NUM_ROWS) * hasBonus;
     }
     
+    // place the agent in the state with the given index (the inverse of getState), at the start of an episode
+    private void setState(int state)
+    {
+        agentCol = state % NUM_COLS;
+        agentRow = (state / NUM_COLS) % NUM_ROWS;
+        hasBonus = state / (NUM_COLS * NUM_ROWS);
+        terminal = false;
+    }
+    
+    // Returns a batch of independent copies of this environment, for stepping many episodes at once. The environment is
+    // deterministic, so the outcome of every action in every state is tabulated by running updatePosition.
+    public BatchEnvironment createBatch(int batchSize, long seed)
+    {
+        int numStates = NUM_COLS * NUM_ROWS * 2;
+        int savedState = getState();
+        boolean savedTerminal = terminal;
+        TabularBatchEnvironment.Builder builder = new TabularBatchEnvironment.Builder(numStates, 4, NUM_OBJECTIVES);
+        for (int state=0; state<numStates; state++)
+        {
+            for (int action=0; action<4; action++)
+            {
+                setState(state);
+                updatePosition(action);
+                builder.setOutcome(state, action, getState(), rewards.doubleArray, terminal);
+            }
+        }
+        setState(savedState);
+        terminal = savedTerminal;
+        return builder.build(HOME[1] + NUM_COLS * HOME[0], batchSize, seed);
+    }
+    
     // set rewards - scale up the 0,1 values for enemy,gold,gems to the range 0..10
     private void setRewards(int rowScore, int colScore, int timeScore)
     {
@@ -12,10 +12,12 @@ import org.rlcommunity.rlglue.codec.types.Observation;
 import org.rlcommunity.rlglue.codec.types.Reward;
 import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
 import org.rlcommunity.rlglue.codec.util.EnvironmentLoader;
+import tools.glue.ReusableStepObjects;
 
 
 public class DeepSeaTreasureEnv implements EnvironmentInterface
 {  
+	private ReusableStepObjects stepObjects = new ReusableStepObjects();
 	// define the structure of the environment, and the treasure rewards
     private int depths[] = {1, 2, 3, 4, 4, 4, 7, 7, 9, 10};
     private float treasure[] = {1, 2, 3, 5, 8, 16, 24, 50, 74, 124};
@@ -52,7 +54,7 @@ public class DeepSeaTreasureEnv implements EnvironmentInterface
     public Observation env_start() {
         this.agentRow = 0;
         this.agentCol = 0;       
-        Observation theObservation = new Observation(1, 0, 0);
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, getState());
         return theObservation;
     }
@@ -61,14 +63,14 @@ public class DeepSeaTreasureEnv implements EnvironmentInterface
     public Reward_observation_terminal env_step(Action action) 
     {
         updatePosition( action.getInt(0) );
-        // set up new Observation
-        Reward_observation_terminal RewardObs = new Reward_observation_terminal();
-        Observation theObservation = new Observation(1, 0, 0);
+        // set up the Observation
+        Reward_observation_terminal RewardObs = stepObjects.getStepResult();
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, getState());
         RewardObs.setObservation(theObservation);
         RewardObs.setTerminal(isTerminal());
         // setup new rewards
-        Reward rewards = new Reward(0,2,0);
+        Reward rewards = stepObjects.getReward(2);
         double[] rewardsArray = getRewards();
         rewards.setDouble(0, rewardsArray[0]);
         rewards.setDouble(1, rewardsArray[1]);
@@ -85,6 +87,9 @@ public class DeepSeaTreasureEnv implements EnvironmentInterface
 
     public String env_message(String message) 
     {
+        String response = stepObjects.handleMessage(message);
+        if (response != null)
+            return response;
         throw new UnsupportedOperationException(message + " is not supported by DST environment.");
     }
     
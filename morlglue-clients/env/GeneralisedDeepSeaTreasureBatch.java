@@ -0,0 +1,77 @@
+// A batch of independent copies of a GeneralisedDeepSeaTreasureEnv instance, created by its createBatch method. The
+// copies share the instance's CompiledTransitionModel, and each copy's state is the index of its submarine's cell.
+// Rewards are those of GeneralisedDeepSeaTreasureEnv.getRewards for the cell entered, with the instance's reward noise
+// applied in the same way as by env_step. The copies are not displayed.
+// Stepping a copy after it has found a treasure continues from the treasure's cell, as env_step does.
+
+package env;
+
+import java.util.Random;
+
+import env.interfaces.BatchEnvironment;
+import tools.MDP.CompiledTransitionModel;
+
+public class GeneralisedDeepSeaTreasureBatch extends BatchEnvironment
+{
+	private final CompiledTransitionModel model;
+	private final double stateRewards[];  // the non-noisy reward for entering each state, 2 values per state
+	private final boolean terminal[];     // whether entering each state ends the episode
+	private final double rewardNoise;
+	private final int startState;
+	// the state of each copy
+	private final int state[];
+
+	GeneralisedDeepSeaTreasureBatch(CompiledTransitionModel _model, double _stateRewards[], boolean _terminal[], double _rewardNoise,
+										int _startState, int _batchSize, long _seed)
+	{
+		super(_batchSize, 2, _seed);
+		model = _model;
+		stateRewards = _stateRewards;
+		terminal = _terminal;
+		rewardNoise = _rewardNoise;
+		startState = _startState;
+		state = new int[_batchSize];
+		for (int copy=0; copy<_batchSize; copy++)
+		{
+			state[copy] = startState;
+		}
+	}
+
+	public int getNumStates()
+	{
+		return model.getNumStates();
+	}
+
+	public int getNumActions()
+	{
+		return model.getNumActions();
+	}
+
+	protected int startCopy(int _copy)
+	{
+		state[_copy] = startState;
+		return startState;
+	}
+
+	protected void stepCopies(int _first, int _last, int _actions[], int _observations[], double _rewards[], boolean _terminal[])
+	{
+		for (int copy=_first; copy<_last; copy++)
+		{
+			Random r = random[copy];
+			int next = model.getNextState(state[copy], _actions[copy], r);
+			state[copy] = next;
+			_observations[copy] = next;
+			_terminal[copy] = terminal[next];
+			if (rewardNoise == 0.0)
+			{
+				_rewards[copy * 2] = stateRewards[next * 2];
+				_rewards[copy * 2 + 1] = stateRewards[next * 2 + 1];
+			}
+			else
+			{
+				_rewards[copy * 2] = stateRewards[next * 2] * (1 + r.nextGaussian() * rewardNoise);
+				_rewards[copy * 2 + 1] = stateRewards[next * 2 + 1] * (1 + r.nextGaussian() * rewardNoise);
+			}
+		}
+	}
+}
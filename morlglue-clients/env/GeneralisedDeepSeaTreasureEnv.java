@@ -9,6 +9,10 @@
 // - transition noise - the probability that an action will be taken at random rather than as specified by the agent - double between 0 and 1 inclusive
 // - reward noise - the standard variation of Gaussian noise to be added to reward values on each time-step
 // - front shape - linear, concave, convex or mixed (use the static constants provided by this class)
+// The environment is displayed in a GDST_Frame by default (or not at all when running headless). Another renderer can be
+// passed to the constructor, or selected with the message "set_display none", "set_display frame" or
+// "set_display throttled <max repaints per second>". Displays can't be selected when no display is available, and
+// set_display returns an error message rather than changing the renderer in that case, or if its arguments are missing.
 // Written by Peter Vamplew August 2017
 
 package env;
@@ -28,11 +32,17 @@ import java.awt.*;
 
 import javax.swing.*;
 
+import env.interfaces.BatchEnvironment;
+import env.interfaces.RestorableEnvironment;
 import tools.visualisers.*;
+import tools.visualisers.interfaces.GDST_Renderer;
 import tools.MDP.*;
+import tools.glue.ReusableStepObjects;
+import tools.random.RestorableRandom;
 
-public class GeneralisedDeepSeaTreasureEnv implements EnvironmentInterface
+public class GeneralisedDeepSeaTreasureEnv implements RestorableEnvironment
 {  
+	private ReusableStepObjects stepObjects = new ReusableStepObjects();
 	// static ints used in defining the desired shape of the Pareto front defined by the treasures
 	public static final int LINEAR = 0;
 	public static final int CONCAVE = 1;
@@ -46,7 +56,7 @@ public class GeneralisedDeepSeaTreasureEnv implements EnvironmentInterface
     private int numRows;
     private int numCols = 10;
     private int frontShape;
-    private TransitionList transitionFunction[][]; // stores a list of successor states and probabilities for each state, action pair
+    private CompiledTransitionModel transitionFunction; // stores the successor states and probabilities for each state, action pair
     private double transitionNoise;
     private double rewardNoise;
     private String taskSpecString; // used to return details of state size and Pareto set
@@ -59,21 +69,29 @@ public class GeneralisedDeepSeaTreasureEnv implements EnvironmentInterface
     private int agentRow;
     private int agentCol;
     // random number generator
-    private Random r;
-    // variables and objects related to the visual display of the environment
-    private GDST_Frame frame;
+    private RestorableRandom r;
+    // displays the environment
+    private GDST_Renderer renderer;
 	
-    private GeneralisedDeepSeaTreasureEnv(int _width, int _minDepth, int _minVerticalStep, int _maxVerticalStep, double _transitionNoise, 
+    public GeneralisedDeepSeaTreasureEnv(int _width, int _minDepth, int _minVerticalStep, int _maxVerticalStep, double _transitionNoise, 
     										double _rewardNoise, int _frontShape, int _seed)
     {
     	constructEnvironment(_width, _minDepth, _minVerticalStep, _maxVerticalStep, _transitionNoise, _rewardNoise, _frontShape, _seed);
     }
     
+    // as above, but displaying the environment with the given renderer (eg a GDST_NullRenderer to display nothing)
+    public GeneralisedDeepSeaTreasureEnv(int _width, int _minDepth, int _minVerticalStep, int _maxVerticalStep, double _transitionNoise, 
+    										double _rewardNoise, int _frontShape, int _seed, GDST_Renderer _renderer)
+    {
+    	renderer = _renderer;
+    	constructEnvironment(_width, _minDepth, _minVerticalStep, _maxVerticalStep, _transitionNoise, _rewardNoise, _frontShape, _seed);
+    }
+    
     // sets up the properties of the environment based on the provided parameters
     private void constructEnvironment(int _width, int _minDepth, int _minVerticalStep, int _maxVerticalStep, double _transitionNoise, 
 			double _rewardNoise, int _frontShape, int _seed)
 	{
-    	r = new Random(_seed);
+    	r = new RestorableRandom(_seed);
     	// set up the structure of the environment
     	numCols = _width;
     	depths = new int[numCols];
@@ -108,12 +126,30 @@ public class GeneralisedDeepSeaTreasureEnv implements EnvironmentInterface
     		taskSpecString += " " + 0;
     	}
     	// set up the display
-    	if (frame==null)
-    		frame = new GDST_Frame(numCols, numRows, depths, steps, treasure);
+    	if (renderer==null)
+    		renderer = createDefaultRenderer();
     	else
-    		frame.updateEnvironmentSettings(numCols, numRows, depths, steps, treasure);
+    		renderer.updateEnvironmentSettings(numCols, numRows, depths, steps, treasure);
 	}
     
+    // a frame to display the environment, unless there is no display available
+    private GDST_Renderer createDefaultRenderer()
+    {
+    	if (GraphicsEnvironment.isHeadless())
+    		return new GDST_NullRenderer();
+    	return new GDST_Frame(numCols, numRows, depths, steps, treasure);
+    }
+    
+    // replaces the renderer displaying the environment, closing the previous one
+    public void setRenderer(GDST_Renderer _renderer)
+    {
+    	if (renderer!=null)
+    		renderer.close();
+    	renderer = _renderer;
+    	renderer.updateEnvironmentSettings(numCols, numRows, depths, steps, treasure);
+    	renderer.moveSubmarine(agentCol, agentRow);
+    }
+    
     private void setTreasure()
     {
     	treasure = new int[numCols];
@@ -150,7 +186,7 @@ public class GeneralisedDeepSeaTreasureEnv implements EnvironmentInterface
     private void setTransitionFunction()
     {
     	double probOfEachActionUnderNoise = transitionNoise / 4;
-    	transitionFunction = new TransitionList[numRows*numCols][4];
+    	CompiledTransitionModel.Builder builder = new CompiledTransitionModel.Builder(numRows*numCols, 4);
     	int nextS[] = new int[4];
     	for (int col=0; col<numCols; col++)
     	{
@@ -162,19 +198,18 @@ public class GeneralisedDeepSeaTreasureEnv implements EnvironmentInterface
     			{
     				nextS[action] = getDeterministicTransition(col, row, action);
     			}
-    			// we know the possible successor states, so can set up the TransitionLists for this state
+    			// we know the possible successor states, so can set up the transitions for this state
     			for (int action = 0; action<4; action++)
     			{
-    				transitionFunction[stateNum][action] = new TransitionList();
-    				transitionFunction[stateNum][action].add(nextS[action], 1 - transitionNoise); 
+    				builder.add(stateNum, action, nextS[action], 1 - transitionNoise); 
     				for (int otherAction = 0; otherAction<4; otherAction++)
     				{
-    					transitionFunction[stateNum][action].add(nextS[otherAction], probOfEachActionUnderNoise);
+    					builder.add(stateNum, action, nextS[otherAction], probOfEachActionUnderNoise);
     				} 	
-    				//System.out.println("\t" + stateNum + "\t" + action + "\t" + transitionFunction[stateNum][action]);
     			}			
     		}
     	}
+    	transitionFunction = builder.build();
     }
     
     private int getDeterministicTransition(int col, int row, int theAction)
@@ -249,10 +284,10 @@ public class GeneralisedDeepSeaTreasureEnv implements EnvironmentInterface
     public Observation env_start() {
         this.agentRow = 0;
         this.agentCol = 0;       
-        Observation theObservation = new Observation(1, 0, 0);
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, getState(agentCol, agentRow));
         // update display
-        frame.moveSubmarine(agentCol, agentRow);
+        renderer.moveSubmarine(agentCol, agentRow);
         return theObservation;
     }
     
@@ -260,14 +295,14 @@ public class GeneralisedDeepSeaTreasureEnv implements EnvironmentInterface
     public Reward_observation_terminal env_step(Action action) 
     {
         updatePosition( action.getInt(0) );
-        // set up new Observation
-        Reward_observation_terminal RewardObs = new Reward_observation_terminal();
-        Observation theObservation = new Observation(1, 0, 0);
+        // set up the Observation
+        Reward_observation_terminal RewardObs = stepObjects.getStepResult();
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, getState(agentCol,agentRow));
         RewardObs.setObservation(theObservation);
         RewardObs.setTerminal(isTerminal());
         // setup new rewards, add noise as required
-        Reward rewards = new Reward(0,2,0);
+        Reward rewards = stepObjects.getReward(2);
         double[] rewardsArray = getRewards(agentCol,agentRow);
         rewards.setDouble(0, rewardsArray[0] * (1+r.nextGaussian()*rewardNoise));
         rewards.setDouble(1, rewardsArray[1] * (1+r.nextGaussian()*rewardNoise));
@@ -301,12 +336,197 @@ public class GeneralisedDeepSeaTreasureEnv implements EnvironmentInterface
 	    	constructEnvironment(_width, _minDepth, _minVerticalStep, _maxVerticalStep, _transitionNoise, _rewardNoise, _frontShape, _seed);
 	    	return taskSpecString;
         }
+        else if (message.startsWith(ReusableStepObjects.MESSAGE))
+        {
+        	return stepObjects.handleMessage(message);
+        }
+        else if (message.startsWith("set_display"))
+        {
+        	String[] args = message.split(" ");
+        	String usage = "GDST set_display needs a display type: none, frame or throttled <max repaints per second>";
+        	if (args.length < 2)
+        		return usage;
+        	boolean needsDisplay = args[1].equals("frame") || args[1].equals("throttled");
+        	if (needsDisplay && GraphicsEnvironment.isHeadless())
+        		return "GDST cannot use display " + args[1] + " as no display is available";
+        	if (args[1].equals("none"))
+        		setRenderer(new GDST_NullRenderer());
+        	else if (args[1].equals("frame"))
+        		setRenderer(new GDST_Frame(numCols, numRows, depths, steps, treasure));
+        	else if (args[1].equals("throttled"))
+        	{
+        		if (args.length < 3)
+        			return "GDST set_display throttled needs the maximum number of repaints per second";
+        		int maxRepaintsPerSecond;
+        		try
+        		{
+        			maxRepaintsPerSecond = Integer.parseInt(args[2]);
+        		}
+        		catch (NumberFormatException e)
+        		{
+        			return "GDST set_display throttled needs an integer number of repaints per second: " + args[2];
+        		}
+        		setRenderer(new GDST_ThrottledRenderer(maxRepaintsPerSecond));
+        	}
+        	else
+        		return usage + " - not " + args[1];
+        	return "GDST display set to " + args[1];
+        }
         else
         {
         	throw new UnsupportedOperationException(message + " is not supported by DST environment.");
         }
     }
     
+    // snapshots hold the submarine's state index, followed by the state of the random number generator
+    public int getSnapshotSize()
+    {
+    	return 1 + RestorableRandom.SNAPSHOT_SIZE;
+    }
+    
+    public void saveSnapshot(long snapshot[], int offset)
+    {
+    	snapshot[offset] = getState(agentCol, agentRow);
+    	r.saveSnapshot(snapshot, offset + 1);
+    }
+    
+    public void restoreSnapshot(long snapshot[], int offset)
+    {
+    	int state = (int)snapshot[offset];
+    	agentRow = state % numRows;
+    	agentCol = state / numRows;
+    	r.restoreSnapshot(snapshot, offset + 1);
+    	// update display
+    	renderer.moveSubmarine(agentCol, agentRow);
+    }
+    
+    public void reseed(long seed)
+    {
+    	r.setSeed(seed);
+    }
+    
+    // returns the model of the environment's transitions, so it can be solved exactly rather than sampled
+    public CompiledTransitionModel getTransitionModel()
+    {
+    	return transitionFunction;
+    }
+    
+    // returns a solver for this instance of the environment. Reward noise has a mean of 0, so the solver is given the
+    // non-noisy rewards, and the values it finds are the expected returns. The states below the sea-bed can never be
+    // entered, and are marked as terminal so that their self-transitions don't stop the values from converging.
+    public MOValueIteration getSolver()
+    {
+    	double rewards[][] = new double[numRows*numCols][];
+    	boolean terminal[] = new boolean[numRows*numCols];
+    	for (int col=0; col<numCols; col++)
+    	{
+    		for (int row=0; row<numRows; row++)
+    		{
+    			rewards[getState(col, row)] = getRewards(col, row);
+    			terminal[getState(col, row)] = (row >= depths[col]);
+    		}
+    	}
+    	return new MOValueIteration(transitionFunction, rewards, terminal, 1.0);
+    }
+    
+    // Returns a solver for the full front of this instance. The reward for each state-action pair is the expected reward
+    // of its successors, and states are terminal as for getSolver. Without transition noise the sets converge to the
+    // non-dominated treasures. With noise, the agent can always trade more time for a better chance of reaching a richer
+    // treasure, so the front never converges - each sweep adds one step to the horizon, so set the iteration limit to the
+    // episode length of interest, and a precision to keep the sets to a manageable size.
+    public ParetoValueIteration getParetoSolver(int mode)
+    {
+    	int numStates = numRows*numCols;
+    	double modelRewards[][][] = new double[numStates][4][2];
+    	boolean terminal[] = new boolean[numStates];
+    	for (int state=0; state<numStates; state++)
+    	{
+    		terminal[state] = (state % numRows >= depths[state / numRows]);
+    		if (terminal[state])
+    			continue; // the transitions out of the treasure states aren't meaningful, and are never used
+    		for (int action=0; action<4; action++)
+    		{
+    			int end = transitionFunction.getEndOfSuccessors(state, action);
+    			for (int i=transitionFunction.getFirstSuccessor(state, action); i<end; i++)
+    			{
+    				int next = transitionFunction.getSuccessorState(i);
+    				double p = transitionFunction.getSuccessorProbability(i);
+    				double nextRewards[] = getRewards(next / numRows, next % numRows);
+    				modelRewards[state][action][TREASURE] += p * nextRewards[TREASURE];
+    				modelRewards[state][action][TIME] += p * nextRewards[TIME];
+    			}
+    		}
+    	}
+    	return new ParetoValueIteration(transitionFunction, modelRewards, terminal, 1.0, mode);
+    }
+    
+    // Returns a batch of independent copies of this instance, for stepping many episodes at once without displaying them.
+    // The copies start in the top-left corner, and share this instance's transition model.
+    public BatchEnvironment createBatch(int batchSize, long seed)
+    {
+    	double stateRewards[] = new double[numRows*numCols*2];
+    	boolean terminal[] = new boolean[numRows*numCols];
+    	for (int col=0; col<numCols; col++)
+    	{
+    		for (int row=0; row<numRows; row++)
+    		{
+    			System.arraycopy(getRewards(col, row), 0, stateRewards, getState(col, row) * 2, 2);
+    			terminal[getState(col, row)] = (row == depths[col]);
+    		}
+    	}
+    	return new GeneralisedDeepSeaTreasureBatch(transitionFunction, stateRewards, terminal, rewardNoise, getState(0, 0), batchSize, seed);
+    }
+    
+    // Returns the policy which heads for the treasure in column targetCol by the shortest route - right towards it, down
+    // once in its column, and left back towards it (going up first wherever moving left would be blocked by the sea-bed
+    // or would end the episode on the wrong treasure). Without transition noise this reaches treasure[targetCol] in
+    // -steps[targetCol] steps.
+    public int[] getTreasurePolicy(int targetCol)
+    {
+    	int policy[] = new int[numRows*numCols];
+    	for (int col=0; col<numCols; col++)
+    	{
+    		for (int row=0; row<numRows; row++)
+    		{
+    			int action;
+    			if (col < targetCol)
+    				action = 0;
+    			else if (col == targetCol)
+    				action = 2;
+    			else if (row < depths[col-1] || (col-1 == targetCol && row == depths[col-1]))
+    				action = 1;
+    			else
+    				action = 3;
+    			policy[getState(col, row)] = action;
+    		}
+    	}
+    	return policy;
+    }
+    
+    // Returns the expected return from the starting state of the policy which heads straight for each treasure, indexed
+    // [column][objective]. With transition noise this is not the Pareto front (which is unbounded, see getParetoSolver),
+    // so it isn't included in the task spec - it is only a point of comparison for callers which want it.
+    // Each of the numCols policies is evaluated separately, and an IllegalStateException is thrown if one of the
+    // evaluations doesn't converge within the solver's iteration limit.
+    public double[][] getExpectedFront()
+    {
+    	return getExpectedFront(getSolver());
+    }
+    
+    // as getExpectedFront(), using a solver from getSolver() whose tolerance and iteration limit the caller has set
+    public double[][] getExpectedFront(MOValueIteration solver)
+    {
+    	double front[][] = new double[numCols][];
+    	for (int col=0; col<numCols; col++)
+    	{
+    		front[col] = solver.evaluatePolicy(getTreasurePolicy(col))[getState(0, 0)];
+    		if (!solver.hasConverged())
+    			throw new IllegalStateException("Evaluation of the policy for column " + col + " did not converge within " 
+    					+ solver.getIterations() + " iterations");
+    	}
+    	return front;
+    }
+    
     // convert the agent's current position into a state index
     public int getState(int col, int row) 
     {
@@ -318,11 +538,11 @@ public class GeneralisedDeepSeaTreasureEnv implements EnvironmentInterface
     public void updatePosition(int theAction) 
     {
         int state = getState(agentCol,agentRow);
-        int nextState = transitionFunction[state][theAction].getNextState(r);
+        int nextState = transitionFunction.getNextState(state, theAction, r);
         agentRow = nextState % numRows;
         agentCol = nextState / numRows;  
         // update display
-        frame.moveSubmarine(agentCol, agentRow);
+        renderer.moveSubmarine(agentCol, agentRow);
     }
     
     
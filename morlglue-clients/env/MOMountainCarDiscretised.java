@@ -37,17 +37,21 @@ import org.rlcommunity.rlglue.codec.types.Observation;
 import org.rlcommunity.rlglue.codec.types.Reward;
 import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
 import org.rlcommunity.rlglue.codec.util.EnvironmentLoader;
+import env.interfaces.RestorableEnvironment;
+import tools.glue.ReusableStepObjects;
+import tools.random.RestorableRandom;
 
 
 
-public class MOMountainCarDiscretised implements EnvironmentInterface
+public class MOMountainCarDiscretised implements RestorableEnvironment
 {
+    private ReusableStepObjects stepObjects = new ReusableStepObjects();
 
     static final int numActions = 3;
     static final int NUM_CELLS = 6; //specifies the degree of quantisation in each dimension of state space
     private MountainCarState theState;
     //Problem parameters have been moved to MountainCarState
-    private Random randomGenerator = new Random();
+    private RestorableRandom randomGenerator = new RestorableRandom();
 
    /* public static TaskSpecPayload getTaskSpecPayload(ParameterHolder P) {
         MountainCar theMC = new MountainCar(P);
@@ -102,12 +106,12 @@ public class MOMountainCarDiscretised implements EnvironmentInterface
             a = randomGenerator.nextInt(3);
         }
         theState.update(a);
-        // set up new Observation
-        Reward_observation_terminal RewardObs = new Reward_observation_terminal();
+        // set up the Observation
+        Reward_observation_terminal RewardObs = stepObjects.getStepResult();
         RewardObs.setObservation(makeObservation());
         RewardObs.setTerminal(theState.inGoalRegion());
         // setup new rewards
-        Reward rewards = new Reward(0,3,0);
+        Reward rewards = stepObjects.getReward(3);
         rewards.setDouble(0, theState.inGoalRegion() ? 0 : -1); // -1 penalty for time unless we escaped on this turn
         rewards.setDouble(1, a==0 ? -1 : 0); // -1 penalty for second objective if we braked this turn
         rewards.setDouble(2, a==2 ? -1 : 0); // -1 penalty for third objective if we accelerated this turn
@@ -115,10 +119,10 @@ public class MOMountainCarDiscretised implements EnvironmentInterface
         return RewardObs;
     }
     
-    // discretises the continuous state of the MountainCar, and stores the index of the active cell in a new Observation object
+    // discretises the continuous state of the MountainCar, and stores the index of the active cell in an Observation object
     private Observation makeObservation()
     {
-        Observation theObservation = new Observation(1, 0, 0);
+        Observation theObservation = stepObjects.getObservation();
         // get state from theState object and discretise it into an index
         int posIndex = (int)Math.floor((theState.getPosition()-theState.minPosition)*NUM_CELLS/(theState.maxPosition-theState.minPosition));
         int velocityIndex = (int)Math.floor((theState.getVelocity()-theState.minVelocity)*NUM_CELLS/(theState.maxVelocity-theState.minVelocity));
@@ -127,8 +131,32 @@ public class MOMountainCarDiscretised implements EnvironmentInterface
     }
 
 
+    // snapshots hold the car's state, followed by the state of the generator used to replace invalid actions
+    public int getSnapshotSize() {
+        return MountainCarState.SNAPSHOT_SIZE + RestorableRandom.SNAPSHOT_SIZE;
+    }
+
+    public void saveSnapshot(long snapshot[], int offset) {
+        theState.saveSnapshot(snapshot, offset);
+        randomGenerator.saveSnapshot(snapshot, offset + MountainCarState.SNAPSHOT_SIZE);
+    }
+
+    public void restoreSnapshot(long snapshot[], int offset) {
+        theState.restoreSnapshot(snapshot, offset);
+        randomGenerator.restoreSnapshot(snapshot, offset + MountainCarState.SNAPSHOT_SIZE);
+    }
+
+    // the car and the invalid action replacement get different seeds, so that their sequences aren't the same
+    public void reseed(long seed) {
+        theState.reseed(seed);
+        randomGenerator.setSeed(~seed);
+    }
+
     public String env_message(String message) 
     {
+        String response = stepObjects.handleMessage(message);
+        if (response != null)
+            return response;
         throw new UnsupportedOperationException(message + " is not supported by MOMountainCarDiscretised environment.");
     }
 
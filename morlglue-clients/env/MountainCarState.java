@@ -31,6 +31,7 @@ import org.rlcommunity.rlglue.codec.types.Observation;
 import org.rlcommunity.rlglue.codec.types.Reward;
 import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
 import org.rlcommunity.rlglue.codec.util.EnvironmentLoader;
+import tools.random.RestorableRandom;
 
 /**
  * This class manages all of the problem parameters, current state variables, 
@@ -57,7 +58,7 @@ public class MountainCarState {
     final public double defaultInitVelocity = 0.0d;
     final public double rewardPerStep = -1.0d;
     final public double rewardAtGoal = 0.0d;
-    final private Random randomGenerator;
+    final private RestorableRandom randomGenerator;
     //These are configurable
     private boolean randomStarts = false;
     private double transitionNoise = 0.0d;
@@ -68,9 +69,9 @@ public class MountainCarState {
         this.transitionNoise = transitionNoise;
 
         if (randomSeed == 0) {
-            this.randomGenerator = new Random();
+            this.randomGenerator = new RestorableRandom();
         } else {
-            this.randomGenerator = new Random(randomSeed);
+            this.randomGenerator = new RestorableRandom(randomSeed);
         }
 
         //Throw away the first few because they first bits are not that random.
@@ -156,6 +157,27 @@ public class MountainCarState {
         return lastAction;
     }
 
+    // the number of longs written by saveSnapshot - the position, velocity, last action and random number generator
+    static final int SNAPSHOT_SIZE = 3 + RestorableRandom.SNAPSHOT_SIZE;
+
+    void saveSnapshot(long snapshot[], int offset) {
+        snapshot[offset] = Double.doubleToRawLongBits(position);
+        snapshot[offset + 1] = Double.doubleToRawLongBits(velocity);
+        snapshot[offset + 2] = lastAction;
+        randomGenerator.saveSnapshot(snapshot, offset + 3);
+    }
+
+    void restoreSnapshot(long snapshot[], int offset) {
+        position = Double.longBitsToDouble(snapshot[offset]);
+        velocity = Double.longBitsToDouble(snapshot[offset + 1]);
+        lastAction = (int)snapshot[offset + 2];
+        randomGenerator.restoreSnapshot(snapshot, offset + 3);
+    }
+
+    void reseed(long seed) {
+        randomGenerator.setSeed(seed);
+    }
+
     /**
      * Get the height of the hill at this position
      * @param queryPosition
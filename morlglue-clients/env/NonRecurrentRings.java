@@ -13,9 +13,13 @@ import org.rlcommunity.rlglue.codec.types.Reward;
 import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
 import org.rlcommunity.rlglue.codec.util.EnvironmentLoader;
 
+import tools.MDP.*;
+import tools.glue.ReusableStepObjects;
+
 
 public class NonRecurrentRings implements EnvironmentInterface
 {  
+	private ReusableStepObjects stepObjects = new ReusableStepObjects();
 	private int currentState; 
 	private Reward rewards;
 	
@@ -42,7 +46,7 @@ public class NonRecurrentRings implements EnvironmentInterface
     // Setup the environment for the start of a new episode
     public Observation env_start() {
         currentState = 1;       
-        Observation theObservation = new Observation(1, 0, 0);
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, currentState-1); // maps states 1-8 to values 0 to 7 for the agent
         return theObservation;
     }
@@ -51,9 +55,9 @@ public class NonRecurrentRings implements EnvironmentInterface
     public Reward_observation_terminal env_step(Action action) 
     {
         updatePositionAndReward( action.getInt(0));
-        // set up new Observation
-        Reward_observation_terminal RewardObs = new Reward_observation_terminal();
-        Observation theObservation = new Observation(1, 0, 0);
+        // set up the Observation
+        Reward_observation_terminal RewardObs = stepObjects.getStepResult();
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, currentState-1); // maps states 1-8 to values 0 to 7 for the agent
         RewardObs.setObservation(theObservation);
         RewardObs.setTerminal(false); // this is a continuing task, so it never terminates
@@ -68,6 +72,9 @@ public class NonRecurrentRings implements EnvironmentInterface
 
     public String env_message(String message) 
     {
+        String response = stepObjects.handleMessage(message);
+        if (response != null)
+            return response;
         throw new UnsupportedOperationException(message + " is not supported by the NonRecurrentRings environment.");
     }
     
@@ -125,6 +132,31 @@ public class NonRecurrentRings implements EnvironmentInterface
         }     
     }   
 
+    // Returns a solver for the front of this environment, where gamma must be less than 1 as the task is continuing. The
+    // model is found by applying updatePositionAndReward to each state and action, so it always matches the environment.
+    public ParetoValueIteration getParetoSolver(double gamma, int mode)
+    {
+    	int savedState = currentState;
+    	Reward savedRewards = rewards;
+    	rewards = new Reward(0,2,0);
+    	CompiledTransitionModel.Builder builder = new CompiledTransitionModel.Builder(8, 2);
+    	double modelRewards[][][] = new double[8][2][2];
+    	for (int state=0; state<8; state++)
+    	{
+    		for (int action=0; action<2; action++)
+    		{
+    			currentState = state+1; // states 1-8 are observed as 0 to 7
+    			updatePositionAndReward(action);
+    			builder.add(state, action, currentState-1, 1.0);
+    			modelRewards[state][action][0] = rewards.getDouble(0);
+    			modelRewards[state][action][1] = rewards.getDouble(1);
+    		}
+    	}
+    	currentState = savedState;
+    	rewards = savedRewards;
+    	return new ParetoValueIteration(builder.build(), modelRewards, new boolean[8], gamma, mode);
+    }
+
     public static void main(String[] args) 
     {
     	//System.out.println("Launching NonRecurrent Rings Environment");
@@ -13,9 +13,15 @@ import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
 import org.rlcommunity.rlglue.codec.util.EnvironmentLoader;
 import java.util.Random;
 
+import env.interfaces.BatchEnvironment;
+import env.interfaces.RestorableEnvironment;
+import tools.random.RestorableRandom;
+import tools.glue.ReusableStepObjects;
 
-public class ResourceGatheringEpisodic implements EnvironmentInterface
+
+public class ResourceGatheringEpisodic implements RestorableEnvironment
 {  
+	private ReusableStepObjects stepObjects = new ReusableStepObjects();
 	// define the structure of the environment
     private final int NUM_ROWS = 5;
     private final int NUM_COLS = 5;
@@ -25,7 +31,7 @@ public class ResourceGatheringEpisodic implements EnvironmentInterface
     private final int ENEMY_LOCN1[] = {1,2};
     private final int ENEMY_LOCN2[] = {0,3};
     private final double ENEMY_CHANCE = 0.1;
-    private Random r = new Random(58);
+    private RestorableRandom r = new RestorableRandom(58);
     private boolean terminal;
     
     // define the ordering of the objectives
@@ -72,7 +78,7 @@ public class ResourceGatheringEpisodic implements EnvironmentInterface
         hasGold = hasGems = 0;    
         attacked = false;
         terminal = false;
-        Observation theObservation = new Observation(1, 0, 0);
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, getState());
         return theObservation;
     }
@@ -81,9 +87,9 @@ public class ResourceGatheringEpisodic implements EnvironmentInterface
     public Reward_observation_terminal env_step(Action action) 
     {
         updatePosition( action.getInt(0) );
-        // set up new Observation
-        Reward_observation_terminal RewardObs = new Reward_observation_terminal();
-        Observation theObservation = new Observation(1, 0, 0);
+        // set up the Observation
+        Reward_observation_terminal RewardObs = stepObjects.getStepResult();
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, getState());
         RewardObs.setObservation(theObservation);
         RewardObs.setTerminal(terminal);
@@ -102,6 +108,9 @@ public class ResourceGatheringEpisodic implements EnvironmentInterface
 
     public String env_message(String message) 
     {
+        String response = stepObjects.handleMessage(message);
+        if (response != null)
+            return response;
         throw new UnsupportedOperationException(message + " is not supported by ResourceGathering environment.");
     }
     
@@ -120,8 +129,113 @@ public class ResourceGatheringEpisodic implements EnvironmentInterface
     	rewards.setDouble(TIME, time);
     }
     
-    // update the agent's position within the environment based on the specified action
+    // snapshots hold the state index (which includes the resources collected), the attacked and terminal flags, the
+    // current rewards and the state of the random number generator
+    public int getSnapshotSize()
+    {
+        return 2 + NUM_OBJECTIVES + RestorableRandom.SNAPSHOT_SIZE;
+    }
+    
+    public void saveSnapshot(long snapshot[], int offset)
+    {
+        snapshot[offset] = getState();
+        snapshot[offset + 1] = (attacked ? 1 : 0) + (terminal ? 2 : 0);
+        for (int i=0; i<NUM_OBJECTIVES; i++)
+        {
+            snapshot[offset + 2 + i] = Double.doubleToRawLongBits(rewards.getDouble(i));
+        }
+        r.saveSnapshot(snapshot, offset + 2 + NUM_OBJECTIVES);
+    }
+    
+    public void restoreSnapshot(long snapshot[], int offset)
+    {
+        setState((int)snapshot[offset]);
+        attacked = (snapshot[offset + 1] & 1) != 0;
+        terminal = (snapshot[offset + 1] & 2) != 0;
+        for (int i=0; i<NUM_OBJECTIVES; i++)
+        {
+            rewards.setDouble(i, Double.longBitsToDouble(snapshot[offset + 2 + i]));
+        }
+        r.restoreSnapshot(snapshot, offset + 2 + NUM_OBJECTIVES);
+    }
+    
+    public void reseed(long seed)
+    {
+        r.setSeed(seed);
+    }
+    
+    // place the agent in the state with the given index (the inverse of getState), at the start of an episode
+    private void setState(int state)
+    {
+        hasGems = state / 50;
+        hasGold = (state / 25) % 2;
+        agentCol = (state % 25) / NUM_ROWS;
+        agentRow = state % NUM_ROWS;
+        attacked = false;
+        terminal = false;
+    }
+    
+    // Returns a batch of independent copies of this environment, for stepping many episodes at once. The outcome of every
+    // action in every state is tabulated by running move, and wherever that ends at an enemy location the outcome of an
+    // attack is added as an alternative, which happens with probability ENEMY_CHANCE.
+    public BatchEnvironment createBatch(int batchSize, long seed)
+    {
+        int numStates = NUM_ROWS * NUM_COLS * 4;
+        int savedState = getState();
+        boolean savedAttacked = attacked;
+        boolean savedTerminal = terminal;
+        TabularBatchEnvironment.Builder builder = new TabularBatchEnvironment.Builder(numStates, 4, NUM_OBJECTIVES);
+        for (int state=0; state<numStates; state++)
+        {
+            for (int action=0; action<4; action++)
+            {
+                setState(state);
+                move(action);
+                builder.setOutcome(state, action, getState(), rewards.doubleArray, terminal);
+                if (atEnemyLocation())
+                {
+                    attack();
+                    builder.setAlternativeOutcome(state, action, ENEMY_CHANCE, getState(), rewards.doubleArray, terminal);
+                }
+            }
+        }
+        setState(savedState);
+        attacked = savedAttacked;
+        terminal = savedTerminal;
+        return builder.build(HOME[1] * NUM_ROWS + HOME[0], batchSize, seed);
+    }
+    
+    // update the agent's position within the environment based on the specified action, including the chance of being
+    // attacked by an enemy
     public void updatePosition(int theAction) 
+    {
+        move(theAction);
+        // check for enemy attack
+        if (atEnemyLocation() && r.nextDouble()<=ENEMY_CHANCE) 
+        {
+            attack();
+        }
+    }
+    
+    private boolean atEnemyLocation()
+    {
+        return (agentRow==ENEMY_LOCN1[0] && agentCol==ENEMY_LOCN1[1]) || (agentRow==ENEMY_LOCN2[0] && agentCol==ENEMY_LOCN2[1]);
+    }
+    
+    // the agent was attacked, so move to the home position and lose all resources
+    private void attack()
+    {
+        attacked = true;
+        this.agentRow = HOME[0];
+        this.agentCol = HOME[1];
+        hasGold = hasGems = 0;
+        terminal = true;
+        setRewards(-1,0,0,-1);
+    }
+    
+    // update the agent's position based on the specified action, and collect any resources or return home - everything
+    // except the enemy attacks
+    private void move(int theAction) 
     {
         int newRow = agentRow;
         int newCol = agentCol;
@@ -180,21 +294,6 @@ public class ResourceGatheringEpisodic implements EnvironmentInterface
         {
         	hasGems = 1;
         }       
-        // check for enemy attack
-        else if ((agentRow==ENEMY_LOCN1[0] && agentCol==ENEMY_LOCN1[1]) || (agentRow==ENEMY_LOCN2[0] && agentCol==ENEMY_LOCN2[1]))
-        {
-        	if (r.nextDouble()<=ENEMY_CHANCE) 
-        	{
-        		// the agent was attacked, so move to the home position and lose all resources
-        		attacked = true;
-                this.agentRow = HOME[0];
-                this.agentCol = HOME[1];
-                hasGold = hasGems = 0;
-                terminal = true;
-                setRewards(-1,0,0,-1);
-        	}
-        }
-
     }
     
     public static void main(String[] args) 
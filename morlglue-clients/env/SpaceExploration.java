@@ -20,9 +20,13 @@ import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
 import org.rlcommunity.rlglue.codec.util.EnvironmentLoader;
 import java.util.Random;
 
+import env.interfaces.BatchEnvironment;
+import tools.glue.ReusableStepObjects;
+
 
 public class SpaceExploration implements EnvironmentInterface
 {  
+	private ReusableStepObjects stepObjects = new ReusableStepObjects();
 	// define the structure of the environment
     private final int NUM_ROWS = 5;
     private final int NUM_COLS = 13;
@@ -75,7 +79,7 @@ public class SpaceExploration implements EnvironmentInterface
         agentRow = HOME[0];
         agentCol = HOME[1];   
         terminal = false;
-        Observation theObservation = new Observation(1, 0, 0);
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, getState());
         return theObservation;
     }
@@ -84,9 +88,9 @@ public class SpaceExploration implements EnvironmentInterface
     public Reward_observation_terminal env_step(Action action) 
     {
         updatePosition( action.getInt(0) );
-        // set up new Observation
-        Reward_observation_terminal RewardObs = new Reward_observation_terminal();
-        Observation theObservation = new Observation(1, 0, 0);
+        // set up the Observation
+        Reward_observation_terminal RewardObs = stepObjects.getStepResult();
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, getState());
         RewardObs.setObservation(theObservation);
         RewardObs.setTerminal(terminal);
@@ -104,6 +108,9 @@ public class SpaceExploration implements EnvironmentInterface
 
     public String env_message(String message) 
     {
+        String response = stepObjects.handleMessage(message);
+        if (response != null)
+            return response;
         throw new UnsupportedOperationException(message + " is not supported by SpaceExploration environment.");
     }
     
@@ -113,6 +120,36 @@ public class SpaceExploration implements EnvironmentInterface
         return agentCol + (NUM_COLS * agentRow);
     }
     
+    // place the agent in the state with the given index (the inverse of getState), at the start of an episode
+    private void setState(int state)
+    {
+        agentCol = state % NUM_COLS;
+        agentRow = state / NUM_COLS;
+        terminal = false;
+    }
+    
+    // Returns a batch of independent copies of this environment, for stepping many episodes at once. The environment is
+    // deterministic, so the outcome of every action in every state is tabulated by running updatePosition.
+    public BatchEnvironment createBatch(int batchSize, long seed)
+    {
+        int numStates = NUM_COLS * NUM_ROWS;
+        int savedState = getState();
+        boolean savedTerminal = terminal;
+        TabularBatchEnvironment.Builder builder = new TabularBatchEnvironment.Builder(numStates, 8, NUM_OBJECTIVES);
+        for (int state=0; state<numStates; state++)
+        {
+            for (int action=0; action<8; action++)
+            {
+                setState(state);
+                updatePosition(action);
+                builder.setOutcome(state, action, getState(), rewards.doubleArray, terminal);
+            }
+        }
+        setState(savedState);
+        terminal = savedTerminal;
+        return builder.build(HOME[1] + NUM_COLS * HOME[0], batchSize, seed);
+    }
+    
     // set rewards
     private void setRewards(int successScore, int radiationScore)
     {
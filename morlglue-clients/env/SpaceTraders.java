@@ -15,13 +15,20 @@ import org.rlcommunity.rlglue.codec.types.Reward;
 import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
 import org.rlcommunity.rlglue.codec.util.EnvironmentLoader;
 
+import env.interfaces.BatchEnvironment;
+import env.interfaces.RestorableEnvironment;
+import tools.MDP.*;
+import tools.random.RestorableRandom;
+import tools.glue.ReusableStepObjects;
 
-public class SpaceTraders implements EnvironmentInterface
+
+public class SpaceTraders implements RestorableEnvironment
 {  
+	private ReusableStepObjects stepObjects = new ReusableStepObjects();
 	private int currentState; 
 	private boolean terminal;
 	private Reward rewards;
-    private Random r = new Random(471);
+    private RestorableRandom r = new RestorableRandom(471);
     // action names
     private final int INDIRECT = 0;
     private final int DIRECT = 1;
@@ -30,6 +37,16 @@ public class SpaceTraders implements EnvironmentInterface
     private double[][] STATE_A_DATA = {{1.0, -12, 9999},{0.9, -6, -1},{0.85, 0, 0}};
     private double[][] STATE_B_DATA = {{1.0, -10, 9999},{0.9, -8, -7},{0.85, 0, 0}};
 	
+    public SpaceTraders()
+    {
+    }
+    
+    // use a different seed for the random number generator, eg to give independent trials run in parallel different transitions
+    public SpaceTraders(long seed)
+    {
+    	r = new RestorableRandom(seed);
+    }
+    
     public String env_init() 
     {
         //initialize the starting position, and an object to hold the reward
@@ -54,7 +71,7 @@ public class SpaceTraders implements EnvironmentInterface
     public Observation env_start() {
         currentState = 0;       
         terminal = false;
-        Observation theObservation = new Observation(1, 0, 0);
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, currentState);
         return theObservation;
     }
@@ -63,9 +80,9 @@ public class SpaceTraders implements EnvironmentInterface
     public Reward_observation_terminal env_step(Action action) 
     {
         updatePositionAndReward( action.getInt(0));
-        // set up new Observation
-        Reward_observation_terminal RewardObs = new Reward_observation_terminal();
-        Observation theObservation = new Observation(1, 0, 0);
+        // set up the Observation
+        Reward_observation_terminal RewardObs = stepObjects.getStepResult();
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, currentState);
         RewardObs.setObservation(theObservation);
         RewardObs.setTerminal(terminal); // end once we have taken an action in state 1
@@ -80,10 +97,42 @@ public class SpaceTraders implements EnvironmentInterface
 
     public String env_message(String message) 
     {
+        String response = stepObjects.handleMessage(message);
+        if (response != null)
+            return response;
         throw new UnsupportedOperationException(message + " is not supported by the LinkedRings environment.");
     }
     
     
+    // snapshots hold the current state, the terminal flag, the current rewards and the state of the random number generator
+    public int getSnapshotSize()
+    {
+    	return 4 + RestorableRandom.SNAPSHOT_SIZE;
+    }
+    
+    public void saveSnapshot(long snapshot[], int offset)
+    {
+    	snapshot[offset] = currentState;
+    	snapshot[offset + 1] = terminal ? 1 : 0;
+    	snapshot[offset + 2] = Double.doubleToRawLongBits(rewards.getDouble(0));
+    	snapshot[offset + 3] = Double.doubleToRawLongBits(rewards.getDouble(1));
+    	r.saveSnapshot(snapshot, offset + 4);
+    }
+    
+    public void restoreSnapshot(long snapshot[], int offset)
+    {
+    	currentState = (int)snapshot[offset];
+    	terminal = snapshot[offset + 1] != 0;
+    	rewards.setDouble(0, Double.longBitsToDouble(snapshot[offset + 2]));
+    	rewards.setDouble(1, Double.longBitsToDouble(snapshot[offset + 3]));
+    	r.restoreSnapshot(snapshot, offset + 4);
+    }
+    
+    public void reseed(long seed)
+    {
+    	r.setSeed(seed);
+    }
+    
     // update the agent's position within the environment based on the specified action, and stores the associated reward values
     public void updatePositionAndReward(int theAction) 
     {
@@ -121,6 +170,66 @@ public class SpaceTraders implements EnvironmentInterface
         }     
     }   
 
+    // Returns a batch of independent copies of this environment, for stepping many episodes at once, tabulated from the
+    // success rates and time penalties of each action - a failed journey is the alternative to a successful one.
+    // Stepping a copy which has reached the terminal state leaves it there with a reward of 0.
+    public BatchEnvironment createBatch(int batchSize, long seed)
+    {
+    	double[][][] data = {STATE_A_DATA, STATE_B_DATA};
+    	TabularBatchEnvironment.Builder builder = new TabularBatchEnvironment.Builder(3, 3, 2);
+    	for (int state=0; state<2; state++)
+    	{
+    		for (int action=0; action<3; action++)
+    		{
+    			double success = data[state][action][0];
+    			// planet A leads to planet B on success, planet B back to planet A (which ends the episode, in state 2)
+    			double successRewards[] = {(state==0) ? 0 : 1, data[state][action][1]};
+    			builder.setOutcome(state, action, (state==0) ? 1 : 2, successRewards, state==1);
+    			if (success < 1) // actions which can't fail only have a placeholder failure penalty
+    			{
+    				double failureRewards[] = {0, data[state][action][2]}; // no penalty for failure
+    				builder.setAlternativeOutcome(state, action, 1 - success, 2, failureRewards, true);
+    			}
+    		}
+    	}
+    	for (int action=0; action<3; action++)
+    	{
+    		builder.setOutcome(2, action, 2, new double[2], true);
+    	}
+    	return builder.build(0, batchSize, seed);
+    }
+
+    // Returns a solver for the front of this environment, built from the success rates and time penalties of each
+    // action. Each state-action pair's reward is the expected reward over success and failure.
+    public ParetoValueIteration getParetoSolver(int mode)
+    {
+    	double[][][] data = {STATE_A_DATA, STATE_B_DATA};
+    	CompiledTransitionModel.Builder builder = new CompiledTransitionModel.Builder(3, 3);
+    	double modelRewards[][][] = new double[3][3][2];
+    	for (int state=0; state<2; state++)
+    	{
+    		for (int action=0; action<3; action++)
+    		{
+    			double success = data[state][action][0];
+    			// planet A leads to planet B on success, and everything else ends the episode (state 2)
+    			if (success > 0)
+    				builder.add(state, action, (state==0) ? 1 : 2, success);
+    			if (success < 1)
+    				builder.add(state, action, 2, 1 - success);
+    			modelRewards[state][action][0] = (state==0) ? 0 : success; // mission reward on returning to planet A
+    			modelRewards[state][action][1] = success * data[state][action][1];
+    			if (success < 1) // avoids multiplying the placeholder failure penalty of actions which can't fail by 0
+    				modelRewards[state][action][1] += (1 - success) * data[state][action][2];
+    		}
+    	}
+    	for (int action=0; action<3; action++)
+    	{
+    		builder.add(2, action, 2, 1.0);
+    	}
+    	boolean terminal[] = {false, false, true};
+    	return new ParetoValueIteration(builder.build(), modelRewards, terminal, 1.0, mode);
+    }
+
     public static void main(String[] args) 
     {
         EnvironmentLoader theLoader = new EnvironmentLoader(new SpaceTraders());
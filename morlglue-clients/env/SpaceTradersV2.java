@@ -13,9 +13,13 @@ import org.rlcommunity.rlglue.codec.types.Reward;
 import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
 import org.rlcommunity.rlglue.codec.util.EnvironmentLoader;
 
+import env.interfaces.BatchEnvironment;
+import tools.glue.ReusableStepObjects;
+
 
 public class SpaceTradersV2 implements EnvironmentInterface
 {  
+	private ReusableStepObjects stepObjects = new ReusableStepObjects();
 	private int currentState; 
 	private boolean terminal;
 	private Reward rewards;
@@ -52,7 +56,7 @@ public class SpaceTradersV2 implements EnvironmentInterface
     public Observation env_start() {
         currentState = 0;       
         terminal = false;
-        Observation theObservation = new Observation(1, 0, 0);
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, currentState);
         return theObservation;
     }
@@ -61,9 +65,9 @@ public class SpaceTradersV2 implements EnvironmentInterface
     public Reward_observation_terminal env_step(Action action) 
     {
         updatePositionAndReward( action.getInt(0));
-        // set up new Observation
-        Reward_observation_terminal RewardObs = new Reward_observation_terminal();
-        Observation theObservation = new Observation(1, 0, 0);
+        // set up the Observation
+        Reward_observation_terminal RewardObs = stepObjects.getStepResult();
+        Observation theObservation = stepObjects.getObservation();
         theObservation.setInt(0, currentState);
         RewardObs.setObservation(theObservation);
         RewardObs.setTerminal(terminal); // end once we have taken an action in state 1
@@ -78,6 +82,9 @@ public class SpaceTradersV2 implements EnvironmentInterface
 
     public String env_message(String message) 
     {
+        String response = stepObjects.handleMessage(message);
+        if (response != null)
+            return response;
         throw new UnsupportedOperationException(message + " is not supported by the LinkedRings environment.");
     }
     
@@ -119,6 +126,35 @@ public class SpaceTradersV2 implements EnvironmentInterface
         }     
     }   
 
+    // Returns a batch of independent copies of this environment, for stepping many episodes at once, tabulated from the
+    // success rates and time penalties of each action - a failed journey is the alternative to a successful one.
+    // Stepping a copy which has reached the terminal state leaves it there with a reward of 0.
+    public BatchEnvironment createBatch(int batchSize, long seed)
+    {
+    	double[][][] data = {STATE_A_DATA, STATE_B_DATA};
+    	TabularBatchEnvironment.Builder builder = new TabularBatchEnvironment.Builder(3, 3, 2);
+    	for (int state=0; state<2; state++)
+    	{
+    		for (int action=0; action<3; action++)
+    		{
+    			double success = data[state][action][0];
+    			// planet A leads to planet B on success, planet B back to planet A (which ends the episode, in state 2)
+    			double successRewards[] = {(state==0) ? 0 : 1, data[state][action][1]};
+    			builder.setOutcome(state, action, (state==0) ? 1 : 2, successRewards, state==1);
+    			if (success < 1) // actions which can't fail only have a placeholder failure penalty
+    			{
+    				double failureRewards[] = {-1, data[state][action][2]}; // -1 penalty for failure
+    				builder.setAlternativeOutcome(state, action, 1 - success, 2, failureRewards, true);
+    			}
+    		}
+    	}
+    	for (int action=0; action<3; action++)
+    	{
+    		builder.setOutcome(2, action, 2, new double[2], true);
+    	}
+    	return builder.build(0, batchSize, seed);
+    }
+
     public static void main(String[] args) 
     {
         EnvironmentLoader theLoader = new EnvironmentLoader(new SpaceTradersV2());
@@ -0,0 +1,157 @@
+// A BatchEnvironment for small environments whose dynamics can be tabulated in full. Every state-action pair has an
+// outcome - the next state, the reward vector and whether the episode ends - and may also have an alternative outcome
+// which happens instead with a given probability (eg an enemy attack in ResourceGatheringEpisodic, or a failed journey
+// in SpaceTraders). Each copy's state is a single int, so a step is a handful of array lookups per copy.
+// Tables are set up with a Builder, typically by the createBatch method of the environment being tabulated.
+// Stepping a copy after its episode has ended continues from the state it ended in, using the same tables.
+
+package env;
+
+import env.interfaces.BatchEnvironment;
+
+public class TabularBatchEnvironment extends BatchEnvironment
+{
+	private final int numStates;
+	private final int numActions;
+	private final int startState;
+	// tables are indexed by state * numActions + action, with numObjectives rewards per pair
+	private final int nextState[];
+	private final double rewards[];
+	private final boolean terminal[];
+	private final double alternativeProbability[]; // 0 if the pair has no alternative outcome
+	private final int alternativeNextState[];
+	private final double alternativeRewards[];
+	private final boolean alternativeTerminal[];
+	// the state of each copy
+	private final int state[];
+
+	private TabularBatchEnvironment(Builder _builder, int _startState, int _batchSize, long _seed)
+	{
+		super(_batchSize, _builder.numObjectives, _seed);
+		numStates = _builder.numStates;
+		numActions = _builder.numActions;
+		startState = _startState;
+		nextState = _builder.nextState.clone();
+		rewards = _builder.rewards.clone();
+		terminal = _builder.terminal.clone();
+		alternativeProbability = _builder.alternativeProbability.clone();
+		alternativeNextState = _builder.alternativeNextState.clone();
+		alternativeRewards = _builder.alternativeRewards.clone();
+		alternativeTerminal = _builder.alternativeTerminal.clone();
+		state = new int[_batchSize];
+		for (int copy=0; copy<_batchSize; copy++)
+		{
+			state[copy] = startState;
+		}
+	}
+
+	public int getNumStates()
+	{
+		return numStates;
+	}
+
+	public int getNumActions()
+	{
+		return numActions;
+	}
+
+	protected int startCopy(int _copy)
+	{
+		state[_copy] = startState;
+		return startState;
+	}
+
+	protected void stepCopies(int _first, int _last, int _actions[], int _observations[], double _rewards[], boolean _terminal[])
+	{
+		for (int copy=_first; copy<_last; copy++)
+		{
+			int pair = state[copy] * numActions + _actions[copy];
+			double p = alternativeProbability[pair];
+			if (p > 0 && random[copy].nextDouble() < p)
+			{
+				state[copy] = alternativeNextState[pair];
+				_terminal[copy] = alternativeTerminal[pair];
+				System.arraycopy(alternativeRewards, pair * numObjectives, _rewards, copy * numObjectives, numObjectives);
+			}
+			else
+			{
+				state[copy] = nextState[pair];
+				_terminal[copy] = terminal[pair];
+				System.arraycopy(rewards, pair * numObjectives, _rewards, copy * numObjectives, numObjectives);
+			}
+			_observations[copy] = state[copy];
+		}
+	}
+
+	// Tabulates an environment's dynamics. Every state-action pair must be given an outcome before build is called.
+	public static class Builder
+	{
+		private final int numStates;
+		private final int numActions;
+		private final int numObjectives;
+		private final int nextState[];
+		private final double rewards[];
+		private final boolean terminal[];
+		private final boolean set[];
+		private final double alternativeProbability[];
+		private final int alternativeNextState[];
+		private final double alternativeRewards[];
+		private final boolean alternativeTerminal[];
+
+		public Builder(int _numStates, int _numActions, int _numObjectives)
+		{
+			numStates = _numStates;
+			numActions = _numActions;
+			numObjectives = _numObjectives;
+			int numPairs = _numStates * _numActions;
+			nextState = new int[numPairs];
+			rewards = new double[numPairs * _numObjectives];
+			terminal = new boolean[numPairs];
+			set = new boolean[numPairs];
+			alternativeProbability = new double[numPairs];
+			alternativeNextState = new int[numPairs];
+			alternativeRewards = new double[numPairs * _numObjectives];
+			alternativeTerminal = new boolean[numPairs];
+		}
+
+		// sets the outcome of taking _action in _state
+		public void setOutcome(int _state, int _action, int _nextState, double _rewards[], boolean _terminal)
+		{
+			int pair = getPair(_state, _action, _nextState, _rewards);
+			nextState[pair] = _nextState;
+			System.arraycopy(_rewards, 0, rewards, pair * numObjectives, numObjectives);
+			terminal[pair] = _terminal;
+			set[pair] = true;
+		}
+
+		// sets an outcome which happens instead of the one given to setOutcome with probability _probability
+		public void setAlternativeOutcome(int _state, int _action, double _probability, int _nextState, double _rewards[], boolean _terminal)
+		{
+			int pair = getPair(_state, _action, _nextState, _rewards);
+			alternativeProbability[pair] = _probability;
+			alternativeNextState[pair] = _nextState;
+			System.arraycopy(_rewards, 0, alternativeRewards, pair * numObjectives, numObjectives);
+			alternativeTerminal[pair] = _terminal;
+		}
+
+		// creates a batch of _batchSize copies, all starting their episodes in _startState
+		public TabularBatchEnvironment build(int _startState, int _batchSize, long _seed)
+		{
+			for (int pair=0; pair<set.length; pair++)
+			{
+				if (!set[pair])
+					throw new IllegalStateException("State " + (pair / numActions) + " action " + (pair % numActions) + " has no outcome");
+			}
+			return new TabularBatchEnvironment(this, _startState, _batchSize, _seed);
+		}
+
+		private int getPair(int _state, int _action, int _nextState, double _rewards[])
+		{
+			if (_nextState < 0 || _nextState >= numStates)
+				throw new IllegalArgumentException("Next state " + _nextState + " is out of range");
+			if (_rewards.length != numObjectives)
+				throw new IllegalArgumentException("Outcomes need " + numObjectives + " rewards");
+			return _state * numActions + _action;
+		}
+	}
+}
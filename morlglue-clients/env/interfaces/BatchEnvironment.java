@@ -0,0 +1,163 @@
+// A batch of independent copies of a discrete environment, stepped together so that many episodes can be sampled at once
+// (eg for parallel trials, or for collecting experience) without going through env_step for every step of every copy.
+// Each copy's state is held by the implementing class in primitive arrays indexed by copy, and each copy has its own
+// random number generator, seeded from the batch's seed, so the results don't depend on the number of threads used.
+// All of the copies are stepped by a single call to step, which takes one action per copy and writes each copy's
+// observation (its state index, as observed through the RL-Glue interface), reward vector and terminal flag into arrays
+// provided by the caller, so nothing is allocated per step. Large batches are split into blocks of copies which are
+// stepped in parallel on a fork-join pool.
+// Copies are not restarted automatically when their episode ends - call start(copy, ...) or restartTerminated before
+// stepping them again - as with calling env_step after the end of an episode, what stepping a copy which has ended
+// does is specific to the implementation.
+
+package env.interfaces;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public abstract class BatchEnvironment
+{
+	// number of copies stepped by a single task
+	private static final int BLOCK_SIZE = 4096;
+
+	protected final int batchSize;
+	protected final int numObjectives;
+	protected final Random random[]; // one generator per copy
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+	private ForkJoinPool pool = null; // created when first needed, and kept for the following steps
+
+	protected BatchEnvironment(int _batchSize, int _numObjectives, long _seed)
+	{
+		if (_batchSize < 1)
+			throw new IllegalArgumentException("A batch needs at least one copy of the environment");
+		batchSize = _batchSize;
+		numObjectives = _numObjectives;
+		random = new Random[batchSize];
+		Random seeds = new Random(_seed);
+		for (int copy=0; copy<batchSize; copy++)
+		{
+			random[copy] = new Random(seeds.nextLong());
+		}
+	}
+
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	// rewards are written numObjectives to a copy, so the reward array given to step needs batchSize * numObjectives elements
+	public int getNumObjectives()
+	{
+		return numObjectives;
+	}
+
+	// the number of distinct observations - observations range from 0 to getNumStates()-1
+	public abstract int getNumStates();
+
+	// actions range from 0 to getNumActions()-1
+	public abstract int getNumActions();
+
+	public void setNumThreads(int _numThreads)
+	{
+		numThreads = Math.max(1, _numThreads);
+		cleanup();
+	}
+
+	// Starts a new episode in every copy, writing their starting observations into _observations
+	public void start(int _observations[])
+	{
+		for (int copy=0; copy<batchSize; copy++)
+		{
+			_observations[copy] = startCopy(copy);
+		}
+	}
+
+	// Starts a new episode in a single copy, writing its starting observation into _observations[_copy]
+	public void start(int _copy, int _observations[])
+	{
+		_observations[_copy] = startCopy(_copy);
+	}
+
+	// Starts a new episode in every copy whose terminal flag is set, writing their starting observations into
+	// _observations. The flags are cleared, so the same arrays can be passed straight back to step.
+	public void restartTerminated(boolean _terminal[], int _observations[])
+	{
+		for (int copy=0; copy<batchSize; copy++)
+		{
+			if (_terminal[copy])
+			{
+				_observations[copy] = startCopy(copy);
+				_terminal[copy] = false;
+			}
+		}
+	}
+
+	// Applies _actions[copy] to each copy, and writes each copy's new observation into _observations[copy], its reward
+	// for objective o into _rewards[copy * numObjectives + o], and whether its episode has ended into _terminal[copy]
+	public void step(int _actions[], int _observations[], double _rewards[], boolean _terminal[])
+	{
+		if (_actions.length < batchSize || _observations.length < batchSize || _terminal.length < batchSize
+				|| _rewards.length < batchSize * numObjectives)
+			throw new IllegalArgumentException("Arrays are too small for a batch of " + batchSize + " copies with " + numObjectives + " objectives");
+		if (numThreads == 1 || batchSize <= BLOCK_SIZE)
+		{
+			stepCopies(0, batchSize, _actions, _observations, _rewards, _terminal);
+			return;
+		}
+		if (pool == null)
+			pool = new ForkJoinPool(numThreads);
+		pool.invoke(new Steps(0, batchSize, _actions, _observations, _rewards, _terminal));
+	}
+
+	// releases the threads used for stepping (they will be recreated if the batch is stepped again)
+	public void cleanup()
+	{
+		if (pool != null)
+		{
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	// resets a copy to the start of an episode and returns its observation
+	protected abstract int startCopy(int _copy);
+
+	// Steps the copies in [_first, _last), writing their results as described for step. Called concurrently for
+	// disjoint ranges of copies, so must only touch the state of the copies in the range (and their generators).
+	protected abstract void stepCopies(int _first, int _last, int _actions[], int _observations[], double _rewards[], boolean _terminal[]);
+
+	// Steps the copies in [first, last), splitting into halves until there are at most BLOCK_SIZE copies
+	@SuppressWarnings("serial") // never serialised
+	private class Steps extends RecursiveAction
+	{
+		private final int first;
+		private final int last;
+		private final int actions[];
+		private final int observations[];
+		private final double rewards[];
+		private final boolean terminal[];
+
+		Steps(int _first, int _last, int _actions[], int _observations[], double _rewards[], boolean _terminal[])
+		{
+			first = _first;
+			last = _last;
+			actions = _actions;
+			observations = _observations;
+			rewards = _rewards;
+			terminal = _terminal;
+		}
+
+		protected void compute()
+		{
+			if (last - first > BLOCK_SIZE)
+			{
+				int mid = (first + last) >>> 1;
+				invokeAll(new Steps(first, mid, actions, observations, rewards, terminal),
+							new Steps(mid, last, actions, observations, rewards, terminal));
+				return;
+			}
+			stepCopies(first, last, actions, observations, rewards, terminal);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+// An environment whose complete dynamic state - the agent's position, anything else which changes during an episode,
+// and the state of its random number generators - can be saved into a snapshot and later restored, in constant time.
+// This allows planning and Monte-Carlo rollouts from any state, without replaying the episode from env_start.
+// Snapshots are arrays of getSnapshotSize() longs (with doubles stored as their raw bits), written at an offset so that
+// many snapshots can be packed into one array. They hold only the dynamic state, not the environment's configuration,
+// so a snapshot can be restored into the environment it came from, or into any other instance created with the same
+// settings - eg a copy of the environment being used by another thread. They should be taken after env_init.
+// A restored environment repeats exactly what the original did from the same point, random outcomes included - to
+// sample different outcomes instead (eg for independent rollouts), reseed it after restoring the snapshot.
+
+package env.interfaces;
+
+import org.rlcommunity.rlglue.codec.EnvironmentInterface;
+
+public interface RestorableEnvironment extends EnvironmentInterface
+{
+	// the number of longs in a snapshot
+	public int getSnapshotSize();
+
+	// writes the environment's current state into _snapshot, starting at _offset
+	public void saveSnapshot(long _snapshot[], int _offset);
+
+	// returns the environment to the state saved in _snapshot at _offset
+	public void restoreSnapshot(long _snapshot[], int _offset);
+
+	// reseeds the environment's random number generators, leaving the rest of its state unchanged
+	public void reseed(long _seed);
+}
@@ -17,6 +17,7 @@ import org.rlcommunity.rlglue.codec.RLGlue;
 import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
 import org.rlcommunity.rlglue.codec.types.Reward;
 
+import tools.indicators.QualityIndicators;
 import tools.valuefunction.TLO_LookupTable;
 import agents.TLO_Agent;
 import env.GeneralisedDeepSeaTreasureEnv;
@@ -212,44 +213,11 @@ public class DemoExperiment
         RLGlue.RL_cleanup();   
     }
     
-    // Provides a scalar measure of difference between the agent's reward
-    // and a target reward value
-    private double additiveEpsilon(double thisReward[], double target[])
-    {
-    	double score = 0.0;
-    	for (int i=0; i<target.length; i++)
-    	{
-    		double diff = target[i] - thisReward[i];
-    		if (diff>score)
-    		{
-    			score = diff;
-    		}
-    	}
-    	return score;
-    }
-    
     // Calculates the maximum additive epsilon measure over two sets of solutions (the actual front
     // and the approximation learned by the agent
     private double additiveEpsilon(double paretoSet[][], double agentSet[][], int numAgentSolutions)
     {
-    	double maxScore = 0.0;
-    	for (int i=0; i<paretoSet.length; i++)
-    	{
-    		double minScore = Double.MAX_VALUE;
-    		for (int j=0; j<numAgentSolutions; j++)
-    		{
-	    		double score = additiveEpsilon(agentSet[j],paretoSet[i]);
-	    		if (score<minScore)
-	    		{
-	    			minScore = score;
-	    		}
-    		}
-    		if (minScore>maxScore)
-    		{
-    			maxScore = minScore;
-    		}
-    	}
-    	return maxScore;
+    	return QualityIndicators.additiveEpsilon(paretoSet, agentSet, numAgentSolutions);
     }   
 
     public static void main(String[] args) {
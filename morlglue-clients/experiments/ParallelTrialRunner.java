@@ -0,0 +1,133 @@
+// Runs the independent trials of an experiment concurrently rather than one after another.
+// Each trial gets its own agent and environment, created by a TrialFactory and connected in-process by a LocalMORLGlue,
+// so trials share no learning state and no network traffic is involved. Trials are run on a fixed-size thread pool,
+// and each writes its results to a BufferedExcelWriter. The buffered sheets are then copied into the experiment's
+// ExcelWriter in trial order as "Trial0", "Trial1" etc, so the workbook has the same per-trial sheets as a serial run
+// and any summary sheets can be built from them afterwards in the usual way. Each trial's buffer knows the names of all
+// of the trial sheets, so a trial's formulas can refer to the other trials' sheets as they would in a serial run.
+// Each trial is given a seed which depends only on the base seed and the trial number, so results are reproducible
+// regardless of the number of threads or the order in which trials happen to finish.
+
+package experiments;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.rlcommunity.rlglue.codec.AgentInterface;
+import org.rlcommunity.rlglue.codec.EnvironmentInterface;
+import org.rlcommunity.rlglue.codec.RLGlueInterface;
+
+import tools.glue.LocalMORLGlue;
+import tools.spreadsheet.BufferedExcelWriter;
+import tools.spreadsheet.ExcelWriter;
+
+public class ParallelTrialRunner 
+{
+	// creates a fresh agent and environment for each trial
+	public interface TrialFactory
+	{
+		AgentInterface createAgent(int trial, long seed);
+		EnvironmentInterface createEnvironment(int trial, long seed);
+	}
+	
+	// the body of a single trial - this is responsible for initialising and configuring the agent through the glue
+	// (including passing on the seed), running all of the trial's episodes, and writing the results to sheet
+	public interface Trial
+	{
+		void run(RLGlueInterface glue, ExcelWriter sheet, int trial, long seed);
+	}
+	
+	private final int numThreads;
+	private final long baseSeed;
+	
+	// runs with one thread per available processor
+	public ParallelTrialRunner(long baseSeed)
+	{
+		this(Runtime.getRuntime().availableProcessors(), baseSeed);
+	}
+	
+	public ParallelTrialRunner(int numThreads, long baseSeed)
+	{
+		this.numThreads = Math.max(1, numThreads);
+		this.baseSeed = baseSeed;
+	}
+	
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+	
+	// Returns the seed to use for the given trial. The trial number is scrambled so that runs with neighbouring base
+	// seeds don't end up sharing most of their per-trial seeds.
+	public static long seedForTrial(long baseSeed, int trial)
+	{
+		long z = baseSeed + (trial + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	// Runs numTrials trials and writes sheet "Trial"+t to excel at index t for each trial t. Sheets are written in trial
+	// order, each as soon as it and all earlier trials have finished. If a trial fails, the remaining trials are
+	// cancelled and the failure is rethrown.
+	public void runTrials(int numTrials, final TrialFactory factory, final Trial trial, ExcelWriter excel)
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, Math.max(1, numTrials)));
+		ArrayList<Future<BufferedExcelWriter>> results = new ArrayList<Future<BufferedExcelWriter>>();
+		final String sheetNames[] = new String[numTrials];
+		for (int t=0; t<numTrials; t++)
+		{
+			sheetNames[t] = "Trial"+t;
+		}
+		try
+		{
+			for (int t=0; t<numTrials; t++)
+			{
+				final int trialNumber = t;
+				final long seed = seedForTrial(baseSeed, t);
+				results.add(pool.submit(new Callable<BufferedExcelWriter>() {
+					public BufferedExcelWriter call()
+					{
+						AgentInterface agent = factory.createAgent(trialNumber, seed);
+						EnvironmentInterface env = factory.createEnvironment(trialNumber, seed);
+						LocalMORLGlue glue = new LocalMORLGlue(agent, env);
+						BufferedExcelWriter sheet = new BufferedExcelWriter(sheetNames);
+						try
+						{
+							trial.run(glue, sheet, trialNumber, seed);
+						}
+						finally
+						{
+							glue.RL_cleanup();
+						}
+						return sheet;
+					}
+				}));
+			}
+			for (int t=0; t<numTrials; t++)
+			{
+				BufferedExcelWriter sheet = results.get(t).get();
+				sheet.copyToSheet(excel, sheetNames[t], t);
+				results.set(t, null); // allow the buffered rows to be garbage collected
+				System.out.println("Trial " + t + " finished");
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for trials to finish", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException("Trial failed", e.getCause());
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,65 @@
+// Prints the fronts found by ParetoValueIteration for the benchmark environments whose models are available, to give
+// ground-truth fronts against which the policies found by agents can be compared:
+// - LinkedRings and NonRecurrentRings, which are continuing tasks so are solved with a discount factor, both as Pareto
+//   sets (to a precision, as looping policies give endlessly many vectors) and as convex hulls
+// - SpaceTraders
+// - a small GeneralisedDeepSeaTreasureEnv instance, without transition noise and then with noise over a limited horizon
+// Optional arguments are the discount factor for the rings and the number of threads to use.
+
+package experiments;
+
+import env.*;
+import tools.MDP.ParetoValueIteration;
+import tools.visualisers.GDST_NullRenderer;
+
+public class ParetoFrontReport
+{
+	private static int numThreads = Runtime.getRuntime().availableProcessors();
+
+	// solves and prints the front from the starting state (which is state 0 in all of these environments)
+	private static void report(String name, ParetoValueIteration solver)
+	{
+		solver.setNumThreads(numThreads);
+		long start = System.currentTimeMillis();
+		solver.solve();
+		double front[][] = solver.getFront(0);
+		System.out.println(name + ": " + front.length + " points after " + solver.getIterations() + " iterations in "
+							+ (System.currentTimeMillis() - start) + "ms" + (solver.hasConverged() ? "" : " (not converged)"));
+		for (int i=0; i<front.length; i++)
+		{
+			String line = "   ";
+			for (int o=0; o<front[i].length; o++)
+			{
+				line += " " + front[i][o];
+			}
+			System.out.println(line);
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		double gamma = (args.length > 0) ? Double.parseDouble(args[0]) : 0.9;
+		if (args.length > 1)
+			numThreads = Integer.parseInt(args[1]);
+		for (int mode = ParetoValueIteration.PARETO; mode <= ParetoValueIteration.CONVEX_HULL; mode++)
+		{
+			String label = " (" + ParetoValueIteration.modeToString(mode) + ", gamma=" + gamma + ")";
+			ParetoValueIteration solver = new LinkedRings().getParetoSolver(gamma, mode);
+			solver.setPrecision(0.01);
+			solver.setTolerance(0.05);
+			report("LinkedRings" + label, solver);
+			solver = new NonRecurrentRings().getParetoSolver(gamma, mode);
+			solver.setPrecision(0.01);
+			solver.setTolerance(0.05);
+			report("NonRecurrentRings" + label, solver);
+		}
+		report("SpaceTraders", new SpaceTraders().getParetoSolver(ParetoValueIteration.PARETO));
+		report("GDST", new GeneralisedDeepSeaTreasureEnv(10, 3, 1, 3, 0.0, 0.0, GeneralisedDeepSeaTreasureEnv.MIXED, 471, new GDST_NullRenderer())
+								.getParetoSolver(ParetoValueIteration.PARETO));
+		ParetoValueIteration solver = new GeneralisedDeepSeaTreasureEnv(4, 2, 1, 2, 0.1, 0.0, GeneralisedDeepSeaTreasureEnv.CONCAVE, 471, new GDST_NullRenderer())
+								.getParetoSolver(ParetoValueIteration.PARETO);
+		solver.setPrecision(0.05);
+		solver.setMaxIterations(50);
+		report("GDST with transition noise 0.1 (50 step horizon)", solver);
+	}
+}
@@ -4,6 +4,13 @@ import org.rlcommunity.rlglue.codec.RLGlue;
 import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
 import org.rlcommunity.rlglue.codec.types.Reward;
 
+import org.rlcommunity.rlglue.codec.AgentInterface;
+import org.rlcommunity.rlglue.codec.EnvironmentInterface;
+import org.rlcommunity.rlglue.codec.RLGlueInterface;
+
+import agents.TLO_Agent_MOSS;
+import env.SpaceTraders;
+import tools.glue.StaticRLGlue;
 import tools.valuefunction.TLO_LookupTable;
 import tools.spreadsheet.*;
 
@@ -74,24 +81,24 @@ public class TLOMOSSExperiment
 	private ExcelWriter excel;
   
     // store the data for the most recent Reward. The strings indicates a value or label to be written in the first two columns
-    private void saveReward(String labels, Reward r)
+    private void saveReward(ExcelWriter sheet, String labels, Reward r)
     {
-    	excel.writeNextRowTextAndNumbers(labels, r.doubleArray);
+    	sheet.writeNextRowTextAndNumbers(labels, r.doubleArray);
     }    
 	    
     // Run One Episode of length maximum cutOff
-    private Reward runEpisode(int stepLimit) {
-        int terminal = RLGlue.RL_episode(stepLimit);
-        int totalSteps = RLGlue.RL_num_steps();
-        Reward totalReward = RLGlue.RL_return();
+    private Reward runEpisode(RLGlueInterface glue, int stepLimit) {
+        int terminal = glue.RL_episode(stepLimit);
+        int totalSteps = glue.RL_num_steps();
+        Reward totalReward = glue.RL_return();
         return totalReward;
     }
-
-    public void runExperiment() {
-    	// set up data structures to store reward history
-        String taskSpec = RLGlue.RL_init();
+    
+    // initialise the glue and configure the agent's exploration, TLO and learning settings - returns the number of objectives
+    private int configureAgent(RLGlueInterface glue)
+    {
+        String taskSpec = glue.RL_init();
         TaskSpecVRLGLUE3 theTaskSpec = new TaskSpecVRLGLUE3(taskSpec);
-        numObjectives = theTaskSpec.getNumOfObjectives();
         // configure agents exploration and TLO settings
         String agentMessageString = "set_TLO_parameters ";
         for (int i=0; i<TLO_PARAMS.length; i++)
@@ -101,99 +108,162 @@ public class TLOMOSSExperiment
 				agentMessageString += TLO_PARAMS[i][j] + " ";
 			}
         }
-        RLGlue.RL_agent_message(agentMessageString);
-        RLGlue.RL_agent_message("set_learning_parameters" + " " + ALPHA + " " + LAMBDA + " " + GAMMA + " " + EXPLORATION + " " + ALPHA_DECAY);
-        RLGlue.RL_agent_message(PARAM_CHANGE_STRING + " " + EXPLORATION_PARAMETER + " " + NUM_ONLINE_EPISODES_PER_TRIAL + " " +EXPLORATION_END_PARAMETER); 
-        // set up the output Excel file
-    	String agentName = RLGlue.RL_agent_message("get_agent_name");
-    	final String fileName = FILENAME_PREFIX+"-"+agentName+"-"+METHOD_PREFIX+EXPLORATION_PARAMETER+"-alpha"+ALPHA+"-lambda"+LAMBDA+"-threshold"+TLO_PARAMS[0][3];
-    	excel = new JxlExcelWriter(fileName);
+        glue.RL_agent_message(agentMessageString);
+        glue.RL_agent_message("set_learning_parameters" + " " + ALPHA + " " + LAMBDA + " " + GAMMA + " " + EXPLORATION + " " + ALPHA_DECAY);
+        glue.RL_agent_message(PARAM_CHANGE_STRING + " " + EXPLORATION_PARAMETER + " " + NUM_ONLINE_EPISODES_PER_TRIAL + " " +EXPLORATION_END_PARAMETER); 
+        return theTaskSpec.getNumOfObjectives();
+    }
+    
+    private String getFileName(String agentName)
+    {
+    	return FILENAME_PREFIX+"-"+agentName+"-"+METHOD_PREFIX+EXPLORATION_PARAMETER+"-alpha"+ALPHA+"-lambda"+LAMBDA+"-threshold"+TLO_PARAMS[0][3];
+    }
+    
+    private static String getObjectivesString(int numObjectives)
+    {
     	String objectivesString="";
     	for (int i=0; i<numObjectives; i++)
     	{
     		objectivesString+="&Obj " + (i+1);
     	}
+    	return objectivesString;
+    }
+    
+    // run a single trial via glue, writing the results to a new sheet
+    private void runTrial(RLGlueInterface glue, ExcelWriter sheet, int trial, int numObjectives)
+    {
+    	String objectivesString = getObjectivesString(numObjectives);
+    	// start new excel sheet and include header row
+    	sheet.moveToNewSheet("Trial"+trial, trial);
+    	sheet.writeNextRowText(" &Episode number &Policy"+objectivesString);
+    	// run the trial and save the results to the spreadsheet
+    	System.out.println("Trial " + trial);
+        glue.RL_agent_message("start_new_trial");
+		for (int episodeNum=0; episodeNum<NUM_ONLINE_EPISODES_PER_TRIAL; episodeNum++)
+		{
+            Reward data = runEpisode(glue, MAX_EPISODE_LENGTH);
+            String policy =  glue.RL_agent_message("print_policy");
+            saveReward(sheet, "Online&"+(1+episodeNum)+"&"+policy,data);
+		}
+        glue.RL_agent_message("freeze_learning");		// turn off learning and exploration for offline assessment of the final policy    		
+        for (int episodeNum=0; episodeNum<NUM_OFFLINE_EPISODES_PER_TRIAL; episodeNum++)
+		{
+			// turn on debugging for the final offline run
+        	// if (episodeNum==NUM_OFFLINE_EPISODES_PER_TRIAL-1)
+        	// {
+            // 	//glue.RL_env_message("start-debugging");
+    		// 	//glue.RL_agent_message("start-debugging");
+        	// }
+			Reward data = runEpisode(glue, MAX_EPISODE_LENGTH);
+            String policy =  glue.RL_agent_message("print_policy");
+            saveReward(sheet, "Offline&"+(1+episodeNum)+"&"+policy,data);
+		}
+    	//glue.RL_env_message("stop-debugging");
+		//glue.RL_agent_message("stop-debugging");           
+        // add two rows at the end of the worksheet to summarise the means over all online and offline episodes
+    //     String formulas = "";
+    //     for (int i=0; i<numObjectives; i++)
+    //     {
+    //     	formulas +="AVERAGE(" + sheet.getAddress(i+2,1) + ":" + sheet.getAddress(i+2,NUM_ONLINE_EPISODES_PER_TRIAL) + ")&";
+    //     }
+    //     sheet.writeNextRowTextAndFormula("Mean over all online episodes& ", formulas);
+    //     formulas = "";
+    //     for (int i=0; i<numObjectives; i++)
+    //     {
+    //     	formulas +="AVERAGE(" + sheet.getAddress(i+2,NUM_ONLINE_EPISODES_PER_TRIAL+1) + ":" + sheet.getAddress(i+2,NUM_ONLINE_EPISODES_PER_TRIAL+NUM_OFFLINE_EPISODES_PER_TRIAL) + ")&";
+    //     }
+    //     sheet.writeNextRowTextAndFormula("Mean over all offline episodes& ", formulas);
+
+    //     ////
+    //     //glue.RL_agent_message("print_lookup_table");	
+    // }
+    // // make summary sheet - the +2 on the number of rows is to capture the online and offline means as well as the individual episode results
+    // sheet.makeSummarySheet(NUM_TRIALS, objectivesString, 2, 1, numObjectives, NUM_ONLINE_EPISODES_PER_TRIAL+NUM_OFFLINE_EPISODES_PER_TRIAL+2);           
+    // // make another sheet which collates the online and off-line per episode means across all trials, for later use in doing t-tests
+    // sheet.moveToNewSheet("Collated", NUM_TRIALS+1); // put this after the summary sheet
+    // String onlineHeader="";
+    // String offlineHeader="";
+    // for (int i=0; i<numObjectives; i++)
+    // {
+    // 	onlineHeader+= "Online mean Obj " + (i+1) +"&";
+    // 	offlineHeader+= "Offline mean Obj " + (i+1) +"&";
+    // }
+    // sheet.writeNextRowText("Trial&" + onlineHeader + offlineHeader);
+    // final int ONLINE_ROW = NUM_ONLINE_EPISODES_PER_TRIAL+NUM_OFFLINE_EPISODES_PER_TRIAL+1;
+    // final int OFFLINE_ROW = ONLINE_ROW+1;
+    // for (int i=0; i<NUM_TRIALS; i++)
+    // {
+    // 	String text = Integer.toString(i);
+    // 	String onlineLookups = "";
+    // 	String offlineLookups = "";
+    // 	for (int j=0; j<numObjectives; j++)
+    // 	{
+    // 		onlineLookups+= sheet.getAddress(i,j+2,ONLINE_ROW) + "&";
+    // 		offlineLookups+= sheet.getAddress(i,j+2,OFFLINE_ROW) + "&";
+    // 	}
+    // 	sheet.writeNextRowTextAndFormula(text, onlineLookups + offlineLookups);
+    }
+
+    public void runExperiment() {
+    	RLGlueInterface glue = new StaticRLGlue();
+    	numObjectives = configureAgent(glue);
+        // set up the output Excel file
+    	String agentName = glue.RL_agent_message("get_agent_name");
+    	excel = new JxlExcelWriter(getFileName(agentName));
+    	String objectivesString = getObjectivesString(numObjectives);
         // run the trials
         for (int trial=0; trial<NUM_TRIALS; trial++)
         {
-        	// start new excel sheet and include header row
-        	excel.moveToNewSheet("Trial"+trial, trial);
-        	excel.writeNextRowText(" &Episode number &Policy"+objectivesString);
-        	// run the trial and save the results to the spreadsheet
-        	System.out.println("Trial " + trial);
-            RLGlue.RL_agent_message("start_new_trial");
-    		for (int episodeNum=0; episodeNum<NUM_ONLINE_EPISODES_PER_TRIAL; episodeNum++)
-    		{
-                Reward data = runEpisode(MAX_EPISODE_LENGTH);
-                String policy =  RLGlue.RL_agent_message("print_policy");
-                saveReward("Online&"+(1+episodeNum)+"&"+policy,data);
-    		}
-            RLGlue.RL_agent_message("freeze_learning");		// turn off learning and exploration for offline assessment of the final policy    		
-            for (int episodeNum=0; episodeNum<NUM_OFFLINE_EPISODES_PER_TRIAL; episodeNum++)
-    		{
-    			// turn on debugging for the final offline run
-            	// if (episodeNum==NUM_OFFLINE_EPISODES_PER_TRIAL-1)
-            	// {
-	            // 	//RLGlue.RL_env_message("start-debugging");
-	    		// 	//RLGlue.RL_agent_message("start-debugging");
-            	// }
-    			Reward data = runEpisode(MAX_EPISODE_LENGTH);
-                String policy =  RLGlue.RL_agent_message("print_policy");
-                saveReward("Offline&"+(1+episodeNum)+"&"+policy,data);
-    		}
-        	//RLGlue.RL_env_message("stop-debugging");
-			//RLGlue.RL_agent_message("stop-debugging");           
-            // add two rows at the end of the worksheet to summarise the means over all online and offline episodes
-        //     String formulas = "";
-        //     for (int i=0; i<numObjectives; i++)
-        //     {
-        //     	formulas +="AVERAGE(" + excel.getAddress(i+2,1) + ":" + excel.getAddress(i+2,NUM_ONLINE_EPISODES_PER_TRIAL) + ")&";
-        //     }
-        //     excel.writeNextRowTextAndFormula("Mean over all online episodes& ", formulas);
-        //     formulas = "";
-        //     for (int i=0; i<numObjectives; i++)
-        //     {
-        //     	formulas +="AVERAGE(" + excel.getAddress(i+2,NUM_ONLINE_EPISODES_PER_TRIAL+1) + ":" + excel.getAddress(i+2,NUM_ONLINE_EPISODES_PER_TRIAL+NUM_OFFLINE_EPISODES_PER_TRIAL) + ")&";
-        //     }
-        //     excel.writeNextRowTextAndFormula("Mean over all offline episodes& ", formulas);
-
-        //     ////
-        //     //RLGlue.RL_agent_message("print_lookup_table");	
-        // }
-        // // make summary sheet - the +2 on the number of rows is to capture the online and offline means as well as the individual episode results
-        // excel.makeSummarySheet(NUM_TRIALS, objectivesString, 2, 1, numObjectives, NUM_ONLINE_EPISODES_PER_TRIAL+NUM_OFFLINE_EPISODES_PER_TRIAL+2);           
-        // // make another sheet which collates the online and off-line per episode means across all trials, for later use in doing t-tests
-        // excel.moveToNewSheet("Collated", NUM_TRIALS+1); // put this after the summary sheet
-        // String onlineHeader="";
-        // String offlineHeader="";
-        // for (int i=0; i<numObjectives; i++)
-        // {
-        // 	onlineHeader+= "Online mean Obj " + (i+1) +"&";
-        // 	offlineHeader+= "Offline mean Obj " + (i+1) +"&";
-        // }
-        // excel.writeNextRowText("Trial&" + onlineHeader + offlineHeader);
-        // final int ONLINE_ROW = NUM_ONLINE_EPISODES_PER_TRIAL+NUM_OFFLINE_EPISODES_PER_TRIAL+1;
-        // final int OFFLINE_ROW = ONLINE_ROW+1;
-        // for (int i=0; i<NUM_TRIALS; i++)
-        // {
-        // 	String text = Integer.toString(i);
-        // 	String onlineLookups = "";
-        // 	String offlineLookups = "";
-        // 	for (int j=0; j<numObjectives; j++)
-        // 	{
-        // 		onlineLookups+= excel.getAddress(i,j+2,ONLINE_ROW) + "&";
-        // 		offlineLookups+= excel.getAddress(i,j+2,OFFLINE_ROW) + "&";
-        // 	}
-        // 	excel.writeNextRowTextAndFormula(text, onlineLookups + offlineLookups);
+        	runTrial(glue, excel, trial, numObjectives);
         }
         excel.closeFile();
         RLGlue.RL_cleanup();
         System.out.println("********************************************** Experiment finished");
     }
 
+    // Runs the trials concurrently, each with its own agent and environment created by factory, rather than via the
+    // MORL_Glue server. Produces the same per-trial sheets as runExperiment.
+    public void runParallelExperiment(ParallelTrialRunner runner, final ParallelTrialRunner.TrialFactory factory)
+    {
+    	// the agent name is only needed for the file name, so ask a spare agent for it rather than a trial's agent
+    	String agentName = factory.createAgent(0, 0).agent_message("get_agent_name");
+    	excel = new JxlExcelWriter(getFileName(agentName));
+    	System.out.println("Running " + NUM_TRIALS + " trials on " + runner.getNumThreads() + " threads");
+    	runner.runTrials(NUM_TRIALS, factory, new ParallelTrialRunner.Trial() {
+    		public void run(RLGlueInterface glue, ExcelWriter sheet, int trial, long seed)
+    		{
+    			int numObjectives = configureAgent(glue);
+    			glue.RL_agent_message("set_random_seed " + seed);
+    			runTrial(glue, sheet, trial, numObjectives);
+    		}
+    	}, excel);
+        excel.closeFile();
+        System.out.println("********************************************** Experiment finished");
+    }
+
+    // run with the argument "parallel" to run the trials concurrently in-process, optionally followed by the number of
+    // threads to use (defaults to the number of processors)
     public static void main(String[] args) {
     	TLOMOSSExperiment theExperiment = new TLOMOSSExperiment();
-        theExperiment.runExperiment();
+    	if (args!=null && args.length>0 && args[0].equals("parallel"))
+    	{
+    		int numThreads = (args.length>1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    		ParallelTrialRunner.TrialFactory factory = new ParallelTrialRunner.TrialFactory() {
+    			public AgentInterface createAgent(int trial, long seed)
+    			{
+    				return new TLO_Agent_MOSS();
+    			}
+    			public EnvironmentInterface createEnvironment(int trial, long seed)
+    			{
+    				return new SpaceTraders(seed);
+    			}
+    		};
+    		theExperiment.runParallelExperiment(new ParallelTrialRunner(numThreads, 471), factory);
+    	}
+    	else
+    	{
+    		theExperiment.runExperiment();
+    	}
         System.exit(0); // shut down the experiment + hopefully everything else launched by the Driver program (server, agent, environment)
     }
 }
@@ -4,6 +4,13 @@ import org.rlcommunity.rlglue.codec.RLGlue;
 import org.rlcommunity.rlglue.codec.taskspec.TaskSpecVRLGLUE3;
 import org.rlcommunity.rlglue.codec.types.Reward;
 
+import org.rlcommunity.rlglue.codec.AgentInterface;
+import org.rlcommunity.rlglue.codec.EnvironmentInterface;
+import org.rlcommunity.rlglue.codec.RLGlueInterface;
+
+import agents.TLO_Agent_MOSSTP;
+import env.SpaceTraders;
+import tools.glue.StaticRLGlue;
 import tools.valuefunction.TLO_LookupTable;
 import tools.spreadsheet.*;
 
@@ -76,24 +83,24 @@ public class TLOMOSSTPExperiment
 	private ExcelWriter excel;
   
     // store the data for the most recent Reward. The strings indicates a value or label to be written in the first two columns
-    private void saveReward(String labels, Reward r)
+    private void saveReward(ExcelWriter sheet, String labels, Reward r)
     {
-    	excel.writeNextRowTextAndNumbers(labels, r.doubleArray);
+    	sheet.writeNextRowTextAndNumbers(labels, r.doubleArray);
     }    
 	    
     // Run One Episode of length maximum cutOff
-    private Reward runEpisode(int stepLimit) {
-        int terminal = RLGlue.RL_episode(stepLimit);
-        int totalSteps = RLGlue.RL_num_steps();
-        Reward totalReward = RLGlue.RL_return();
+    private Reward runEpisode(RLGlueInterface glue, int stepLimit) {
+        int terminal = glue.RL_episode(stepLimit);
+        int totalSteps = glue.RL_num_steps();
+        Reward totalReward = glue.RL_return();
         return totalReward;
     }
-
-    public void runExperiment() {
-    	// set up data structures to store reward history
-        String taskSpec = RLGlue.RL_init();
+    
+    // initialise the glue and configure the agent's exploration, TLO and learning settings - returns the number of objectives
+    private int configureAgent(RLGlueInterface glue)
+    {
+        String taskSpec = glue.RL_init();
         TaskSpecVRLGLUE3 theTaskSpec = new TaskSpecVRLGLUE3(taskSpec);
-        numObjectives = theTaskSpec.getNumOfObjectives();
 
         // configure agents exploration and TLO settings
         String agentMessageString = "set_TLO_parameters ";
@@ -104,88 +111,112 @@ public class TLOMOSSTPExperiment
 				agentMessageString += TLO_PARAMS[i][j] + " ";
 			}
         }
-        RLGlue.RL_agent_message(agentMessageString);
-        RLGlue.RL_agent_message("set_learning_parameters" + " " + ALPHA + " " + LAMBDA + " " + GAMMA + " " + EXPLORATION + " " + ALPHA_DECAY + " " + NUM_DATA_GATHERING_PHASE + " " + NUM_LEARNING_PHASE);
-        RLGlue.RL_agent_message(PARAM_CHANGE_STRING + " " + EXPLORATION_PARAMETER + " " + NUM_ONLINE_EPISODES_PER_TRIAL + " " +EXPLORATION_END_PARAMETER); 
-        
-        // set up the output Excel file
-    	String agentName = RLGlue.RL_agent_message("get_agent_name");
-    	final String fileName = FILENAME_PREFIX+"-"+agentName+"-"+METHOD_PREFIX+EXPLORATION_PARAMETER+"-alpha"+ALPHA+"-lambda"+LAMBDA+"-threshold"+TLO_PARAMS[0][3]+"-phase D"+NUM_DATA_GATHERING_PHASE+"+ L"+NUM_LEARNING_PHASE;
-    	excel = new JxlExcelWriter(fileName);
+        glue.RL_agent_message(agentMessageString);
+        glue.RL_agent_message("set_learning_parameters" + " " + ALPHA + " " + LAMBDA + " " + GAMMA + " " + EXPLORATION + " " + ALPHA_DECAY + " " + NUM_DATA_GATHERING_PHASE + " " + NUM_LEARNING_PHASE);
+        glue.RL_agent_message(PARAM_CHANGE_STRING + " " + EXPLORATION_PARAMETER + " " + NUM_ONLINE_EPISODES_PER_TRIAL + " " +EXPLORATION_END_PARAMETER); 
+        return theTaskSpec.getNumOfObjectives();
+    }
+    
+    private String getFileName(String agentName)
+    {
+    	return FILENAME_PREFIX+"-"+agentName+"-"+METHOD_PREFIX+EXPLORATION_PARAMETER+"-alpha"+ALPHA+"-lambda"+LAMBDA+"-threshold"+TLO_PARAMS[0][3]+"-phase D"+NUM_DATA_GATHERING_PHASE+"+ L"+NUM_LEARNING_PHASE;
+    }
+    
+    private static String getObjectivesString(int numObjectives)
+    {
     	String objectivesString="";
-        String data ="";
-        Reward totalReward;
     	for (int i=0; i<numObjectives; i++)
     	{
     		objectivesString+="&Obj " + (i+1);
     	}
-
+    	return objectivesString;
+    }
+    
+    // run a single trial via glue, writing the results to a new sheet
+    private void runTrial(RLGlueInterface glue, ExcelWriter sheet, int trial, int numObjectives)
+    {
+    	String objectivesString = getObjectivesString(numObjectives);
+        String data ="";
+        Reward totalReward;
         int phaseIndicater;
         int oneCyclePhase = NUM_DATA_GATHERING_PHASE + NUM_LEARNING_PHASE;
-        // run the trials
-        for (int trial=0; trial<NUM_TRIALS; trial++)
-        {
-        	// start new excel sheet and include header row
-        	excel.moveToNewSheet("Trial"+trial, trial);
-        	excel.writeNextRowText(" &Episode number&Probability&I_A&D_A&T_A&I_B&D_B&T_B&OP"+objectivesString);
-        	// run the trial and save the results to the spreadsheet
-        	System.out.println("Trial " + trial);
-            RLGlue.RL_agent_message("start_new_trial");
-    		for (int episodeNum=0; episodeNum<NUM_ONLINE_EPISODES_PER_TRIAL; episodeNum++)
-    		{
-                // 0 ~ (oneCyclePhase-1)
-                phaseIndicater = episodeNum%oneCyclePhase;
-                
-                if(phaseIndicater<NUM_DATA_GATHERING_PHASE){
-                    RLGlue.RL_agent_message("data_gathering_phase");
-                    totalReward = runEpisode(MAX_EPISODE_LENGTH);
-                    data = RLGlue.RL_agent_message("print_data");
-                    saveReward("Data-gather phase&"+(1+episodeNum)+"&"+data,totalReward);
-                }else{
-                    RLGlue.RL_agent_message("learning_phase");
-                    totalReward = runEpisode(MAX_EPISODE_LENGTH);
-                    data = RLGlue.RL_agent_message("print_data");
-                    saveReward("learning phase&"+(1+episodeNum)+"&"+data,totalReward);
-                }
-                //RLGlue.RL_agent_message("print_data");
-
-                // int batch = (episodeNum-phaseIndicater)/oneCyclePhase + 1;
-                // if(phaseIndicater==(NUM_DATA_GATHERING_PHASE-1)){
-                //     System.out.println("End of data gathering phase " + batch);
-                //     //RLGlue.RL_agent_message("print_lookup_table");
-                //     RLGlue.RL_agent_message("print_data");
-                // }
-                // if(phaseIndicater==(oneCyclePhase-1)){
-                //     System.out.println("End of learning phase " + batch);
-                //     //RLGlue.RL_agent_message("print_lookup_table");
-                //     RLGlue.RL_agent_message("print_data");
-                // }
-                
-    		}
-            RLGlue.RL_agent_message("freeze_learning");		// turn off learning and exploration for offline assessment of the final policy    		
-            for (int episodeNum=0; episodeNum<NUM_OFFLINE_EPISODES_PER_TRIAL; episodeNum++)
-    		{
-                totalReward = runEpisode(MAX_EPISODE_LENGTH);
-                data = RLGlue.RL_agent_message("print_data");
-    			saveReward("Offline&"+(1+episodeNum)+"&"+data,totalReward);
-    		}
-       
-            // // add two rows at the end of the worksheet to summarise the means over all online and offline episodes
-            // String formulas = "";
-            // for (int i=0; i<numObjectives; i++)
-            // {
-            // 	formulas +="AVERAGE(" + excel.getAddress(i+2,1) + ":" + excel.getAddress(i+2,NUM_ONLINE_EPISODES_PER_TRIAL) + ")&";
+
+    	// start new excel sheet and include header row
+    	sheet.moveToNewSheet("Trial"+trial, trial);
+    	sheet.writeNextRowText(" &Episode number&Probability&I_A&D_A&T_A&I_B&D_B&T_B&OP"+objectivesString);
+    	// run the trial and save the results to the spreadsheet
+    	System.out.println("Trial " + trial);
+        glue.RL_agent_message("start_new_trial");
+		for (int episodeNum=0; episodeNum<NUM_ONLINE_EPISODES_PER_TRIAL; episodeNum++)
+		{
+            // 0 ~ (oneCyclePhase-1)
+            phaseIndicater = episodeNum%oneCyclePhase;
+            
+            if(phaseIndicater<NUM_DATA_GATHERING_PHASE){
+                glue.RL_agent_message("data_gathering_phase");
+                totalReward = runEpisode(glue, MAX_EPISODE_LENGTH);
+                data = glue.RL_agent_message("print_data");
+                saveReward(sheet, "Data-gather phase&"+(1+episodeNum)+"&"+data,totalReward);
+            }else{
+                glue.RL_agent_message("learning_phase");
+                totalReward = runEpisode(glue, MAX_EPISODE_LENGTH);
+                data = glue.RL_agent_message("print_data");
+                saveReward(sheet, "learning phase&"+(1+episodeNum)+"&"+data,totalReward);
+            }
+            //glue.RL_agent_message("print_data");
+
+            // int batch = (episodeNum-phaseIndicater)/oneCyclePhase + 1;
+            // if(phaseIndicater==(NUM_DATA_GATHERING_PHASE-1)){
+            //     System.out.println("End of data gathering phase " + batch);
+            //     //glue.RL_agent_message("print_lookup_table");
+            //     glue.RL_agent_message("print_data");
             // }
-            // excel.writeNextRowTextAndFormula("Mean over all online episodes& ", formulas);
-            // formulas = "";
-            // for (int i=0; i<numObjectives; i++)
-            // {
-            // 	formulas +="AVERAGE(" + excel.getAddress(i+2,NUM_ONLINE_EPISODES_PER_TRIAL+1) + ":" + excel.getAddress(i+2,NUM_ONLINE_EPISODES_PER_TRIAL+NUM_OFFLINE_EPISODES_PER_TRIAL) + ")&";
+            // if(phaseIndicater==(oneCyclePhase-1)){
+            //     System.out.println("End of learning phase " + batch);
+            //     //glue.RL_agent_message("print_lookup_table");
+            //     glue.RL_agent_message("print_data");
             // }
-            // excel.writeNextRowTextAndFormula("Mean over all offline episodes& ", formulas);
+            
+		}
+        glue.RL_agent_message("freeze_learning");		// turn off learning and exploration for offline assessment of the final policy    		
+        for (int episodeNum=0; episodeNum<NUM_OFFLINE_EPISODES_PER_TRIAL; episodeNum++)
+		{
+            totalReward = runEpisode(glue, MAX_EPISODE_LENGTH);
+            data = glue.RL_agent_message("print_data");
+			saveReward(sheet, "Offline&"+(1+episodeNum)+"&"+data,totalReward);
+		}
+   
+        // // add two rows at the end of the worksheet to summarise the means over all online and offline episodes
+        // String formulas = "";
+        // for (int i=0; i<numObjectives; i++)
+        // {
+        // 	formulas +="AVERAGE(" + sheet.getAddress(i+2,1) + ":" + sheet.getAddress(i+2,NUM_ONLINE_EPISODES_PER_TRIAL) + ")&";
+        // }
+        // sheet.writeNextRowTextAndFormula("Mean over all online episodes& ", formulas);
+        // formulas = "";
+        // for (int i=0; i<numObjectives; i++)
+        // {
+        // 	formulas +="AVERAGE(" + sheet.getAddress(i+2,NUM_ONLINE_EPISODES_PER_TRIAL+1) + ":" + sheet.getAddress(i+2,NUM_ONLINE_EPISODES_PER_TRIAL+NUM_OFFLINE_EPISODES_PER_TRIAL) + ")&";
+        // }
+        // sheet.writeNextRowTextAndFormula("Mean over all offline episodes& ", formulas);
+
+        //System.out.println("End of learning");
+        //glue.RL_agent_message("print_lookup_table");	
+    }
+
+    public void runExperiment() {
+    	RLGlueInterface glue = new StaticRLGlue();
+    	numObjectives = configureAgent(glue);
+        
+        // set up the output Excel file
+    	String agentName = glue.RL_agent_message("get_agent_name");
+    	excel = new JxlExcelWriter(getFileName(agentName));
+    	String objectivesString = getObjectivesString(numObjectives);
 
-            //System.out.println("End of learning");
-            //RLGlue.RL_agent_message("print_lookup_table");	
+        // run the trials
+        for (int trial=0; trial<NUM_TRIALS; trial++)
+        {
+        	runTrial(glue, excel, trial, numObjectives);
         }
         // make summary sheet - the +2 on the number of rows is to capture the online and offline means as well as the individual episode results
         // excel.makeSummarySheet(NUM_TRIALS, objectivesString, 2, 1, numObjectives, NUM_ONLINE_EPISODES_PER_TRIAL+NUM_OFFLINE_EPISODES_PER_TRIAL+2);           
@@ -218,9 +249,49 @@ public class TLOMOSSTPExperiment
         System.out.println("********************************************** Experiment finished");
     }
 
+    // Runs the trials concurrently, each with its own agent and environment created by factory, rather than via the
+    // MORL_Glue server. Produces the same per-trial sheets as runExperiment.
+    public void runParallelExperiment(ParallelTrialRunner runner, final ParallelTrialRunner.TrialFactory factory)
+    {
+    	// the agent name is only needed for the file name, so ask a spare agent for it rather than a trial's agent
+    	String agentName = factory.createAgent(0, 0).agent_message("get_agent_name");
+    	excel = new JxlExcelWriter(getFileName(agentName));
+    	System.out.println("Running " + NUM_TRIALS + " trials on " + runner.getNumThreads() + " threads");
+    	runner.runTrials(NUM_TRIALS, factory, new ParallelTrialRunner.Trial() {
+    		public void run(RLGlueInterface glue, ExcelWriter sheet, int trial, long seed)
+    		{
+    			int numObjectives = configureAgent(glue);
+    			glue.RL_agent_message("set_random_seed " + seed);
+    			runTrial(glue, sheet, trial, numObjectives);
+    		}
+    	}, excel);
+        excel.closeFile();
+        System.out.println("********************************************** Experiment finished");
+    }
+
+    // run with the argument "parallel" to run the trials concurrently in-process, optionally followed by the number of
+    // threads to use (defaults to the number of processors)
     public static void main(String[] args) {
     	TLOMOSSTPExperiment theExperiment = new TLOMOSSTPExperiment();
-        theExperiment.runExperiment();
+    	if (args!=null && args.length>0 && args[0].equals("parallel"))
+    	{
+    		int numThreads = (args.length>1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    		ParallelTrialRunner.TrialFactory factory = new ParallelTrialRunner.TrialFactory() {
+    			public AgentInterface createAgent(int trial, long seed)
+    			{
+    				return new TLO_Agent_MOSSTP();
+    			}
+    			public EnvironmentInterface createEnvironment(int trial, long seed)
+    			{
+    				return new SpaceTraders(seed);
+    			}
+    		};
+    		theExperiment.runParallelExperiment(new ParallelTrialRunner(numThreads, 471), factory);
+    	}
+    	else
+    	{
+    		theExperiment.runExperiment();
+    	}
         System.exit(0); // shut down the experiment + hopefully everything else launched by the Driver program (server, agent, environment)
     }
 }
@@ -0,0 +1,272 @@
+// A frozen transition model for a whole MDP, as a faster alternative to holding a TransitionList for every state-action
+// pair. The successors of all state-action pairs are stored in compressed sparse row form - the successors of the pair
+// (s, a) are in positions offsets[r] to offsets[r+1]-1 of the successor arrays, where r = s * numActions + a - along with
+// their probabilities and the cumulative probabilities up to each successor, all in primitive arrays.
+// Successor states are sampled in constant time using Walker's alias method (as set up by Vose's algorithm), which needs
+// a single random number per sample however many successors a pair has. getNextStateByInversion samples in exactly the
+// same way as TransitionList.getNextState instead, for when a run has to reproduce results obtained with TransitionLists.
+// Models are either compiled from existing TransitionLists or built directly with a Builder, which avoids creating the
+// TransitionLists at all.
+
+package tools.MDP;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class CompiledTransitionModel
+{
+	private final int numStates;
+	private final int numActions;
+	private final int offsets[];         // start of each state-action pair's successors, plus the end of the last
+	private final int successors[];      // successor states
+	private final double probabilities[];
+	private final double cumulative[];   // probability of this successor or any earlier one for the same pair
+	private final double aliasCutoff[];  // alias table - keep this successor if the scaled sample is below the cutoff...
+	private final int alias[];           // ...otherwise use the successor at this position within the pair's successors
+
+	private CompiledTransitionModel(int _numStates, int _numActions, int _offsets[], int _successors[], double _probabilities[])
+	{
+		numStates = _numStates;
+		numActions = _numActions;
+		offsets = _offsets;
+		successors = _successors;
+		probabilities = _probabilities;
+		cumulative = new double[successors.length];
+		aliasCutoff = new double[successors.length];
+		alias = new int[successors.length];
+		int maxSuccessors = 0;
+		for (int row=0; row<offsets.length-1; row++)
+		{
+			maxSuccessors = Math.max(maxSuccessors, offsets[row+1] - offsets[row]);
+		}
+		int small[] = new int[maxSuccessors];
+		int large[] = new int[maxSuccessors];
+		for (int row=0; row<offsets.length-1; row++)
+		{
+			double summedProbability = 0.0;
+			for (int i=offsets[row]; i<offsets[row+1]; i++)
+			{
+				summedProbability += probabilities[i];
+				cumulative[i] = summedProbability;
+			}
+			buildAliasTable(offsets[row], offsets[row+1] - offsets[row], summedProbability, small, large);
+		}
+	}
+
+	// sets up the alias table for the k successors starting at position start, using Vose's algorithm
+	private void buildAliasTable(int start, int k, double total, int small[], int large[])
+	{
+		int numSmall = 0;
+		int numLarge = 0;
+		for (int i=0; i<k; i++)
+		{
+			aliasCutoff[start+i] = (total > 0) ? probabilities[start+i] * k / total : 1.0;
+			alias[start+i] = i;
+			if (aliasCutoff[start+i] < 1.0)
+				small[numSmall++] = i;
+			else
+				large[numLarge++] = i;
+		}
+		while (numSmall > 0 && numLarge > 0)
+		{
+			int less = small[--numSmall];
+			int more = large[--numLarge];
+			alias[start+less] = more;
+			aliasCutoff[start+more] = (aliasCutoff[start+more] + aliasCutoff[start+less]) - 1.0;
+			if (aliasCutoff[start+more] < 1.0)
+				small[numSmall++] = more;
+			else
+				large[numLarge++] = more;
+		}
+		// anything left over is only short of 1 because of rounding errors
+		while (numLarge > 0)
+			aliasCutoff[start+large[--numLarge]] = 1.0;
+		while (numSmall > 0)
+			aliasCutoff[start+small[--numSmall]] = 1.0;
+	}
+
+	// freezes a TransitionList for every state-action pair, indexed [state][action], into a compiled model
+	public static CompiledTransitionModel compile(TransitionList lists[][])
+	{
+		Builder builder = new Builder(lists.length, lists[0].length);
+		for (int s=0; s<lists.length; s++)
+		{
+			for (int a=0; a<lists[s].length; a++)
+			{
+				TransitionList list = lists[s][a];
+				for (int i=0; i<list.size(); i++)
+				{
+					builder.add(s, a, list.get(i).getState(), list.get(i).getProbability());
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	public int getNumStates()
+	{
+		return numStates;
+	}
+
+	public int getNumActions()
+	{
+		return numActions;
+	}
+
+	// the successors of (_state, _action) are at positions getFirstSuccessor(_state,_action) up to but not including
+	// getEndOfSuccessors(_state,_action), and can be read with getSuccessorState and getSuccessorProbability. Lets solvers
+	// iterate over the model without any per-step lookups.
+	public int getFirstSuccessor(int _state, int _action)
+	{
+		return offsets[_state * numActions + _action];
+	}
+
+	public int getEndOfSuccessors(int _state, int _action)
+	{
+		return offsets[_state * numActions + _action + 1];
+	}
+
+	public int getSuccessorState(int _position)
+	{
+		return successors[_position];
+	}
+
+	public double getSuccessorProbability(int _position)
+	{
+		return probabilities[_position];
+	}
+
+	public int getNumSuccessors(int _state, int _action)
+	{
+		int row = _state * numActions + _action;
+		return offsets[row+1] - offsets[row];
+	}
+
+	// Returns the probability of _nextState being the successor of (_state, _action). Pairs have few successors, so this
+	// is a scan of the pair's successors.
+	public double getProbability(int _state, int _action, int _nextState)
+	{
+		int row = _state * numActions + _action;
+		for (int i=offsets[row]; i<offsets[row+1]; i++)
+		{
+			if (successors[i]==_nextState)
+			{
+				return probabilities[i];
+			}
+		}
+		return 0.0;
+	}
+
+	// Stochastically selects a successor state for (_state, _action) in constant time using the alias table
+	public int getNextState(int _state, int _action, Random r)
+	{
+		int row = _state * numActions + _action;
+		int start = offsets[row];
+		int k = offsets[row+1] - start;
+		double u = r.nextDouble() * k;
+		int i = (int)u;
+		if (i >= k) // only possible through rounding
+			i = k - 1;
+		if (u - i < aliasCutoff[start+i])
+			return successors[start+i];
+		return successors[start+alias[start+i]];
+	}
+
+	// Stochastically selects a successor state for (_state, _action) exactly as TransitionList.getNextState does, so
+	// that the same random numbers give the same successors - a binary search of the cumulative probabilities, with the
+	// last successor taking any probability left over
+	public int getNextStateByInversion(int _state, int _action, Random r)
+	{
+		int row = _state * numActions + _action;
+		double d = r.nextDouble();
+		int lo = offsets[row];
+		int hi = offsets[row+1] - 1; // the last successor is chosen if no earlier one is
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (d < cumulative[mid])
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		return successors[lo];
+	}
+
+	public String toString(int _state, int _action)
+	{
+		String s = "";
+		int row = _state * numActions + _action;
+		for (int i=offsets[row]; i<offsets[row+1]; i++)
+		{
+			s += "(" + successors[i] + ", " + probabilities[i] + ")";
+		}
+		return s;
+	}
+
+	// Builds a CompiledTransitionModel directly. Transitions must be added in order of state and then action (as when
+	// looping over states and then actions), but successors of the same pair may be added in any order - as with
+	// TransitionList.add, adding a successor the pair already has increases its probability.
+	public static class Builder
+	{
+		private final int numStates;
+		private final int numActions;
+		private int offsets[];
+		private int successors[];
+		private double probabilities[];
+		private int size = 0;
+		private int currentRow = 0; // the pair transitions are currently being added to
+
+		public Builder(int _numStates, int _numActions)
+		{
+			numStates = _numStates;
+			numActions = _numActions;
+			offsets = new int[_numStates * _numActions + 1];
+			successors = new int[Math.max(16, _numStates * _numActions)];
+			probabilities = new double[successors.length];
+		}
+
+		public void add(int _state, int _action, int _nextState, double _probability)
+		{
+			int row = _state * numActions + _action;
+			if (row < currentRow)
+				throw new IllegalStateException("Transitions must be added in order of state and action: (" + _state + ", " + _action + ") is out of order");
+			// close off the pairs between the current one and this one
+			while (currentRow < row)
+			{
+				currentRow++;
+				offsets[currentRow] = size;
+			}
+			for (int i=offsets[row]; i<size; i++)
+			{
+				if (successors[i]==_nextState)
+				{
+					probabilities[i] += _probability;
+					return;
+				}
+			}
+			if (size == successors.length)
+			{
+				successors = Arrays.copyOf(successors, size * 2);
+				probabilities = Arrays.copyOf(probabilities, size * 2);
+			}
+			successors[size] = _nextState;
+			probabilities[size] = _probability;
+			size++;
+		}
+
+		public CompiledTransitionModel build()
+		{
+			while (currentRow < offsets.length-1)
+			{
+				currentRow++;
+				offsets[currentRow] = size;
+			}
+			for (int row=0; row<offsets.length-1; row++)
+			{
+				if (offsets[row+1]==offsets[row])
+					throw new IllegalStateException("State " + (row / numActions) + " action " + (row % numActions) + " has no successors");
+			}
+			return new CompiledTransitionModel(numStates, numActions, offsets, Arrays.copyOf(successors, size), Arrays.copyOf(probabilities, size));
+		}
+	}
+}
@@ -0,0 +1,262 @@
+// Model-based dynamic programming for multiobjective MDPs described by a CompiledTransitionModel, so that the values of
+// policies can be calculated exactly rather than estimated from thousands of sampled episodes.
+// The MDP is defined by the transition model, the vector reward received on entering each state, which states are
+// terminal (entering one ends the episode, so it has no value of its own), and a discount factor. Two solvers are provided:
+//  - evaluatePolicy calculates the expected return of a deterministic policy from every state
+//  - solveTLO performs value iteration in which each state's value is that of its best action under the Thresholded
+//    Lexicographic Ordering (TLO) - the policy found is greedy with respect to TLO in every state, as a TLO agent's is
+//    once it has converged, which isn't necessarily the policy whose return from the start state is best under TLO
+// Both are synchronous (Jacobi) sweeps over all states, which are split into blocks and backed up in parallel on a
+// fork-join pool. Each sweep only reads the values from the previous one, so the results don't depend on the number of
+// threads. Sweeps continue until no value changes by more than the tolerance, or the iteration limit is reached - with a
+// discount factor of 1 a policy which can avoid terminal states forever never converges, so check hasConverged().
+
+package tools.MDP;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import tools.valuefunction.TLO;
+
+public class MOValueIteration
+{
+	// number of states backed up by a single task
+	private static final int BLOCK_SIZE = 1024;
+
+	private final CompiledTransitionModel model;
+	private final int numStates;
+	private final int numActions;
+	private final int numObjectives;
+	private final double rewards[];     // reward for entering each state, numObjectives values per state
+	private final boolean terminal[];
+	private final double gamma;
+	private double tolerance = 1e-10;
+	private int maxIterations = 100000;
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+	// results of the last solve
+	private double values[];            // numObjectives values per state
+	private double nextValues[];        // the values being calculated by the current sweep
+	private int policy[];
+	private int iterations;
+	private boolean converged;
+
+	// _rewards is indexed [state][objective], and gives the reward received on each transition into that state
+	public MOValueIteration(CompiledTransitionModel _model, double _rewards[][], boolean _terminal[], double _gamma)
+	{
+		model = _model;
+		numStates = _model.getNumStates();
+		numActions = _model.getNumActions();
+		numObjectives = _rewards[0].length;
+		if (_rewards.length != numStates || _terminal.length != numStates)
+			throw new IllegalArgumentException("Rewards and terminal flags are needed for all " + numStates + " states");
+		rewards = new double[numStates * numObjectives];
+		for (int s=0; s<numStates; s++)
+		{
+			System.arraycopy(_rewards[s], 0, rewards, s * numObjectives, numObjectives);
+		}
+		terminal = _terminal.clone();
+		gamma = _gamma;
+	}
+
+	// solving stops once a sweep changes no value by more than this amount
+	public void setTolerance(double _tolerance)
+	{
+		tolerance = _tolerance;
+	}
+
+	public void setMaxIterations(int _maxIterations)
+	{
+		maxIterations = _maxIterations;
+	}
+
+	public void setNumThreads(int _numThreads)
+	{
+		numThreads = Math.max(1, _numThreads);
+	}
+
+	public int getNumObjectives()
+	{
+		return numObjectives;
+	}
+
+	// Calculates the expected return of following _policy (indexed by state) from every state. Returns the values,
+	// indexed [state][objective]. The entries of _policy for terminal states are ignored.
+	public double[][] evaluatePolicy(int _policy[])
+	{
+		if (_policy.length != numStates)
+			throw new IllegalArgumentException("Policy has " + _policy.length + " states, model has " + numStates);
+		policy = _policy.clone();
+		solve(null);
+		return getValues();
+	}
+
+	// Performs TLO value iteration with the given thresholds (one fewer than the number of objectives, as for
+	// TLO.compare). Returns the greedy policy, and the values are then available from getValues. Ties between actions
+	// are broken in favour of the lowest numbered action, so that the result is reproducible.
+	// In stochastic environments an action's thresholded value can cross the threshold back and forth as the values of
+	// its successors change, so the greedy policy may cycle forever rather than converge. If the iteration limit is
+	// reached the policy from the last sweep is evaluated, so that the values are always those of the returned policy,
+	// and hasConverged() returns false.
+	public int[] solveTLO(double _thresholds[])
+	{
+		if (_thresholds.length != numObjectives - 1)
+			throw new IllegalArgumentException("TLO needs " + (numObjectives - 1) + " thresholds");
+		policy = new int[numStates];
+		solve(_thresholds);
+		if (!converged)
+		{
+			solve(null);
+			converged = false;
+		}
+		return policy.clone();
+	}
+
+	// returns the values from the last solve, indexed [state][objective]
+	public double[][] getValues()
+	{
+		double result[][] = new double[numStates][numObjectives];
+		for (int s=0; s<numStates; s++)
+		{
+			System.arraycopy(values, s * numObjectives, result[s], 0, numObjectives);
+		}
+		return result;
+	}
+
+	// returns the value of _state from the last solve
+	public double[] getValue(int _state)
+	{
+		double result[] = new double[numObjectives];
+		System.arraycopy(values, _state * numObjectives, result, 0, numObjectives);
+		return result;
+	}
+
+	// returns the expected return of taking _action in _state and then following the policy from the last solve
+	public double[] getActionValue(int _state, int _action)
+	{
+		double result[] = new double[numObjectives];
+		backup(_state, _action, values, result);
+		return result;
+	}
+
+	// the number of sweeps performed by the last solve
+	public int getIterations()
+	{
+		return iterations;
+	}
+
+	// whether the last solve stopped because the values converged rather than because of the iteration limit
+	public boolean hasConverged()
+	{
+		return converged;
+	}
+
+	// sweeps until convergence, evaluating policy if thresholds is null and otherwise performing TLO value iteration
+	private void solve(double thresholds[])
+	{
+		values = new double[numStates * numObjectives];
+		nextValues = new double[numStates * numObjectives];
+		iterations = 0;
+		converged = false;
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try
+		{
+			while (!converged && iterations < maxIterations)
+			{
+				double change = pool.invoke(new Sweep(0, numStates, thresholds));
+				double swap[] = values;
+				values = nextValues;
+				nextValues = swap;
+				iterations++;
+				converged = change <= tolerance;
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	// adds the expected return of taking _action in _state, given the values of the successor states in from, to result
+	private void backup(int _state, int _action, double from[], double result[])
+	{
+		int end = model.getEndOfSuccessors(_state, _action);
+		for (int i=model.getFirstSuccessor(_state, _action); i<end; i++)
+		{
+			int next = model.getSuccessorState(i);
+			double p = model.getSuccessorProbability(i);
+			int offset = next * numObjectives;
+			for (int o=0; o<numObjectives; o++)
+			{
+				double future = terminal[next] ? 0.0 : gamma * from[offset + o];
+				result[o] += p * (rewards[offset + o] + future);
+			}
+		}
+	}
+
+	// Backs up the states in [first, last) into nextValues, splitting into halves until there are at most BLOCK_SIZE
+	// states. Returns the largest change in any value.
+	@SuppressWarnings("serial") // never serialised
+	private class Sweep extends RecursiveTask<Double>
+	{
+		private final int first;
+		private final int last;
+		private final double thresholds[];
+
+		Sweep(int _first, int _last, double _thresholds[])
+		{
+			first = _first;
+			last = _last;
+			thresholds = _thresholds;
+		}
+
+		protected Double compute()
+		{
+			if (last - first > BLOCK_SIZE)
+			{
+				int mid = (first + last) >>> 1;
+				Sweep left = new Sweep(first, mid, thresholds);
+				left.fork();
+				double change = new Sweep(mid, last, thresholds).compute();
+				return Math.max(change, left.join());
+			}
+			double change = 0.0;
+			double best[] = new double[numObjectives];
+			double candidate[] = new double[numObjectives];
+			for (int s=first; s<last; s++)
+			{
+				if (terminal[s])
+					continue; // terminal states keep a value of 0
+				if (thresholds == null)
+				{
+					Arrays.fill(best, 0.0);
+					backup(s, policy[s], values, best);
+				}
+				else
+				{
+					int bestAction = 0;
+					for (int a=0; a<numActions; a++)
+					{
+						Arrays.fill(candidate, 0.0);
+						backup(s, a, values, candidate);
+						if (a == 0 || TLO.compare(candidate, best, thresholds) > 0)
+						{
+							double swap[] = best;
+							best = candidate;
+							candidate = swap;
+							bestAction = a;
+						}
+					}
+					policy[s] = bestAction;
+				}
+				int offset = s * numObjectives;
+				for (int o=0; o<numObjectives; o++)
+				{
+					change = Math.max(change, Math.abs(best[o] - values[offset + o]));
+					nextValues[offset + o] = best[o];
+				}
+			}
+			return change;
+		}
+	}
+}
@@ -0,0 +1,427 @@
+// Set-based value iteration for multiobjective MDPs described by a CompiledTransitionModel, which finds the whole front
+// of value vectors achievable from each state rather than the value of a single policy (White, "Multi-objective
+// infinite-horizon discounted Markov decision processes", 1982; the convex hull variant is that of Barrett and Narayanan,
+// "Learning all optimal policies with multiple criteria", ICML 2008).
+// As in Pareto Q-learning, each state-action pair holds a set of value vectors:
+//     Q(s,a) = R(s,a) + gamma * (sum over successors s' of P(s'|s,a) * V(s'))
+// where the sum of sets takes one vector from the set of each successor in every possible way, and the set for each
+// state is V(s) = the union over actions of Q(s,a). The sets are pruned after every step of a backup, keeping either:
+//  - PARETO: the non-dominated vectors
+//  - CONVEX_HULL: the vectors on the upper convex hull of the non-dominated ones - those which are best for some
+//    non-negative linear weighting of the objectives. This keeps the sets much smaller, but is only supported for two
+//    objectives.
+// R(s,a) is the expected reward for taking a in s, and terminal states have a value of zero. Each sweep backs up every
+// state from the previous sweep's sets, in parallel on a fork-join pool, so the results don't depend on the number of
+// threads. Sweeps continue until no set moves by more than the tolerance (measured by the Hausdorff distance between the
+// old and new sets, taking the largest difference on any objective as the distance between vectors), or until the
+// iteration limit is reached.
+// In environments where the agent can loop, distinct non-stationary policies can give endlessly many slightly different
+// vectors. A precision greater than 0 bounds the size of the sets by also pruning any vector which another vector in
+// the set is within the precision of (or better than) on every objective. Which vectors survive this changes from sweep
+// to sweep, and the differences build up through successive backups, so the sets never settle down by less than a few
+// times the precision - the tolerance must then be set above that.
+
+package tools.MDP;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class ParetoValueIteration
+{
+	// constants to label the different types of set which can be kept
+	public static final int PARETO = 0;
+	public static final int CONVEX_HULL = 1;
+
+	// number of states backed up by a single task - far fewer than for MOValueIteration, as each backup combines sets
+	private static final int BLOCK_SIZE = 16;
+
+	private final CompiledTransitionModel model;
+	private final int numStates;
+	private final int numActions;
+	private final int numObjectives;
+	private final double rewards[];     // expected reward for each state-action pair, numObjectives values per pair
+	private final boolean terminal[];
+	private final double gamma;
+	private final int mode;
+	private double tolerance = 1e-6;
+	private double precision = 0.0;
+	private int maxIterations = 10000;
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+	// results of the last solve
+	private double values[][][];        // the set for each state
+	private double nextValues[][][];    // the sets being calculated by the current sweep
+	private double actionValues[][][];  // the set for each state-action pair, indexed by state * numActions + action
+	private int iterations;
+	private boolean converged;
+
+	// orders vectors by decreasing first objective, then decreasing second objective
+	private static final Comparator<double[]> FIRST_OBJECTIVE_DESCENDING = new Comparator<double[]>()
+	{
+		public int compare(double a[], double b[])
+		{
+			int result = Double.compare(b[0], a[0]);
+			return (result != 0) ? result : Double.compare(b[1], a[1]);
+		}
+	};
+
+	// orders vectors by decreasing sum of their objectives
+	private static final Comparator<double[]> SUM_DESCENDING = new Comparator<double[]>()
+	{
+		public int compare(double a[], double b[])
+		{
+			double sumA = 0.0;
+			double sumB = 0.0;
+			for (int i=0; i<a.length; i++)
+			{
+				sumA += a[i];
+				sumB += b[i];
+			}
+			return Double.compare(sumB, sumA);
+		}
+	};
+
+	// _rewards is indexed [state][action][objective], and gives the expected reward for taking each action in each state
+	public ParetoValueIteration(CompiledTransitionModel _model, double _rewards[][][], boolean _terminal[], double _gamma, int _mode)
+	{
+		model = _model;
+		numStates = _model.getNumStates();
+		numActions = _model.getNumActions();
+		numObjectives = _rewards[0][0].length;
+		if (_rewards.length != numStates || _terminal.length != numStates)
+			throw new IllegalArgumentException("Rewards and terminal flags are needed for all " + numStates + " states");
+		if (_mode == CONVEX_HULL && numObjectives != 2)
+			throw new IllegalArgumentException(modeToString(_mode) + " is only supported for 2 objectives");
+		rewards = new double[numStates * numActions * numObjectives];
+		for (int s=0; s<numStates; s++)
+		{
+			for (int a=0; a<numActions; a++)
+			{
+				System.arraycopy(_rewards[s][a], 0, rewards, (s * numActions + a) * numObjectives, numObjectives);
+			}
+		}
+		terminal = _terminal.clone();
+		gamma = _gamma;
+		mode = _mode;
+	}
+
+	// returns a String representing the type of set
+	public static String modeToString(int mode)
+	{
+		switch (mode)
+		{
+			case PARETO: return "Pareto";
+			case CONVEX_HULL: return "Convex hull";
+			default: return "Unknown";
+		}
+	}
+
+	// solving stops once a sweep moves no set by more than this amount
+	public void setTolerance(double _tolerance)
+	{
+		tolerance = _tolerance;
+	}
+
+	// vectors which another vector in the same set is within this amount of (or better than) on every objective are
+	// pruned - 0 keeps exactly the non-dominated vectors. The tolerance should be several times the precision.
+	public void setPrecision(double _precision)
+	{
+		precision = _precision;
+	}
+
+	public void setMaxIterations(int _maxIterations)
+	{
+		maxIterations = _maxIterations;
+	}
+
+	public void setNumThreads(int _numThreads)
+	{
+		numThreads = Math.max(1, _numThreads);
+	}
+
+	public int getNumObjectives()
+	{
+		return numObjectives;
+	}
+
+	// sweeps until the sets converge or the iteration limit is reached, starting from a value of zero for every state
+	public void solve()
+	{
+		values = new double[numStates][][];
+		for (int s=0; s<numStates; s++)
+		{
+			values[s] = new double[][] { new double[numObjectives] };
+		}
+		nextValues = new double[numStates][][];
+		actionValues = new double[numStates * numActions][][];
+		iterations = 0;
+		converged = false;
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try
+		{
+			while (!converged && iterations < maxIterations)
+			{
+				double change = pool.invoke(new Sweep(0, numStates));
+				double swap[][][] = values;
+				values = nextValues;
+				nextValues = swap;
+				iterations++;
+				converged = change <= tolerance;
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	// returns a copy of the set of value vectors for _state from the last solve (for two objectives, in order of
+	// decreasing first objective)
+	public double[][] getFront(int _state)
+	{
+		return copy(values[_state]);
+	}
+
+	// returns a copy of the set of value vectors for taking _action in _state from the last solve
+	public double[][] getActionFront(int _state, int _action)
+	{
+		return copy(actionValues[_state * numActions + _action]);
+	}
+
+	// the number of sweeps performed by the last solve
+	public int getIterations()
+	{
+		return iterations;
+	}
+
+	// whether the last solve stopped because the sets converged rather than because of the iteration limit
+	public boolean hasConverged()
+	{
+		return converged;
+	}
+
+	private static double[][] copy(double set[][])
+	{
+		double result[][] = new double[set.length][];
+		for (int i=0; i<set.length; i++)
+		{
+			result[i] = set[i].clone();
+		}
+		return result;
+	}
+
+	// returns the set for taking _action in _state, given the sets of the successor states in from
+	private double[][] backup(int _state, int _action, double from[][][])
+	{
+		double reward[] = new double[numObjectives];
+		System.arraycopy(rewards, (_state * numActions + _action) * numObjectives, reward, 0, numObjectives);
+		double set[][] = new double[][] { reward };
+		int end = model.getEndOfSuccessors(_state, _action);
+		for (int i=model.getFirstSuccessor(_state, _action); i<end; i++)
+		{
+			int next = model.getSuccessorState(i);
+			if (terminal[next])
+				continue;
+			double weight = gamma * model.getSuccessorProbability(i);
+			double successorSet[][] = from[next];
+			double sum[][] = new double[set.length * successorSet.length][];
+			int n = 0;
+			for (double vector[] : set)
+			{
+				for (double successor[] : successorSet)
+				{
+					double combined[] = new double[numObjectives];
+					for (int o=0; o<numObjectives; o++)
+					{
+						combined[o] = vector[o] + weight * successor[o];
+					}
+					sum[n++] = combined;
+				}
+			}
+			// a single successor vector just shifts the set, which leaves it pruned
+			set = (successorSet.length == 1) ? sum : prune(sum);
+		}
+		return set;
+	}
+
+	// returns the vectors from set which are kept under the current mode and precision. set may be reordered.
+	private double[][] prune(double set[][])
+	{
+		double kept[][] = (numObjectives == 2) ? prune2D(set) : pruneND(set);
+		return (mode == CONVEX_HULL) ? upperHull(kept) : kept;
+	}
+
+	// For two objectives - sorted by decreasing first objective, each vector is kept only if its second objective is
+	// greater (by more than the precision) than that of the last vector kept. Returns the vectors kept in that order.
+	private double[][] prune2D(double set[][])
+	{
+		Arrays.sort(set, FIRST_OBJECTIVE_DESCENDING);
+		int n = 0;
+		for (int i=0; i<set.length; i++)
+		{
+			if (n == 0 || set[i][1] > set[n-1][1] + precision)
+				set[n++] = set[i];
+		}
+		return Arrays.copyOf(set, n);
+	}
+
+	// For any number of objectives - in order of decreasing sum, so a vector can only be dominated by one before it,
+	// each vector is kept unless one already kept is within the precision of (or better than) it on every objective.
+	private double[][] pruneND(double set[][])
+	{
+		Arrays.sort(set, SUM_DESCENDING);
+		ArrayList<double[]> kept = new ArrayList<double[]>();
+		for (double vector[] : set)
+		{
+			boolean dominated = false;
+			for (int k=0; k<kept.size() && !dominated; k++)
+			{
+				double other[] = kept.get(k);
+				dominated = true;
+				for (int o=0; o<numObjectives && dominated; o++)
+				{
+					dominated = other[o] + precision >= vector[o];
+				}
+			}
+			if (!dominated)
+				kept.add(vector);
+		}
+		return kept.toArray(new double[kept.size()][]);
+	}
+
+	// Returns the vectors of a two-objective front (in order of decreasing first objective, so increasing second
+	// objective) which lie on its upper convex hull, with vectors lying on or within the precision of a line between two
+	// others removed.
+	private double[][] upperHull(double front[][])
+	{
+		double hull[][] = new double[front.length][];
+		int n = 0;
+		for (double vector[] : front)
+		{
+			// remove the last hull vector while it lies below, on or not far enough above the line from the one before
+			// it to this vector (the cross product is that height times the length of the line)
+			while (n >= 2)
+			{
+				double a[] = hull[n-2];
+				double b[] = hull[n-1];
+				double cross = (b[0] - a[0]) * (vector[1] - a[1]) - (b[1] - a[1]) * (vector[0] - a[0]);
+				if (cross > precision * Math.hypot(vector[0] - a[0], vector[1] - a[1]))
+					break;
+				n--;
+			}
+			hull[n++] = vector;
+		}
+		return Arrays.copyOf(hull, n);
+	}
+
+	// the Hausdorff distance between two sets, using the largest difference on any objective as the distance between
+	// two vectors
+	private double distance(double set1[][], double set2[][])
+	{
+		return Math.max(directedDistance(set1, set2), directedDistance(set2, set1));
+	}
+
+	// the largest distance from a vector in set1 to the nearest vector in set2
+	private double directedDistance(double set1[][], double set2[][])
+	{
+		if (numObjectives == 2)
+			return directedDistance2D(set1, set2);
+		double largest = 0.0;
+		for (double vector[] : set1)
+		{
+			double nearest = Double.POSITIVE_INFINITY;
+			for (int j=0; j<set2.length && nearest > largest; j++)
+			{
+				double d = 0.0;
+				for (int o=0; o<numObjectives; o++)
+				{
+					d = Math.max(d, Math.abs(vector[o] - set2[j][o]));
+				}
+				nearest = Math.min(nearest, d);
+			}
+			largest = Math.max(largest, nearest);
+		}
+		return largest;
+	}
+
+	// As directedDistance, for two-objective sets which are in order of decreasing first objective. The nearest vector
+	// in set2 is searched for outwards from the position of the vector from set1 in that order, stopping on each side
+	// once the difference in the first objective alone is too large.
+	private static double directedDistance2D(double set1[][], double set2[][])
+	{
+		double largest = 0.0;
+		for (double vector[] : set1)
+		{
+			// find the first vector in set2 whose first objective isn't greater than this vector's
+			int lo = 0;
+			int hi = set2.length;
+			while (lo < hi)
+			{
+				int mid = (lo + hi) >>> 1;
+				if (set2[mid][0] > vector[0])
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			double nearest = Double.POSITIVE_INFINITY;
+			for (int j=lo; j<set2.length && set2[j][0] > vector[0] - nearest; j++)
+			{
+				nearest = Math.min(nearest, Math.max(vector[0] - set2[j][0], Math.abs(vector[1] - set2[j][1])));
+			}
+			for (int j=lo-1; j>=0 && set2[j][0] < vector[0] + nearest; j--)
+			{
+				nearest = Math.min(nearest, Math.max(set2[j][0] - vector[0], Math.abs(vector[1] - set2[j][1])));
+			}
+			largest = Math.max(largest, nearest);
+		}
+		return largest;
+	}
+
+	// Backs up the states in [first, last) into nextValues and actionValues, splitting into halves until there are at
+	// most BLOCK_SIZE states. Returns the largest distance any state's set moved.
+	@SuppressWarnings("serial") // never serialised
+	private class Sweep extends RecursiveTask<Double>
+	{
+		private final int first;
+		private final int last;
+
+		Sweep(int _first, int _last)
+		{
+			first = _first;
+			last = _last;
+		}
+
+		protected Double compute()
+		{
+			if (last - first > BLOCK_SIZE)
+			{
+				int mid = (first + last) >>> 1;
+				Sweep left = new Sweep(first, mid);
+				left.fork();
+				double change = new Sweep(mid, last).compute();
+				return Math.max(change, left.join());
+			}
+			double change = 0.0;
+			for (int s=first; s<last; s++)
+			{
+				if (terminal[s])
+				{
+					nextValues[s] = values[s]; // terminal states keep a value of zero
+					continue;
+				}
+				ArrayList<double[]> union = new ArrayList<double[]>();
+				for (int a=0; a<numActions; a++)
+				{
+					double set[][] = backup(s, a, values);
+					actionValues[s * numActions + a] = set;
+					union.addAll(Arrays.asList(set));
+				}
+				nextValues[s] = prune(union.toArray(new double[union.size()][]));
+				change = Math.max(change, distance(nextValues[s], values[s]));
+			}
+			return change;
+		}
+	}
+}
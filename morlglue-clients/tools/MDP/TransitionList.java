@@ -45,6 +45,18 @@ public class TransitionList
 		return 0.0;	
 	}
 	
+	// Returns the number of possible successor states
+	public int size()
+	{
+		return list.size();
+	}
+	
+	// Returns the i'th entry in the list
+	public TransitionPair get(int i)
+	{
+		return list.get(i);
+	}
+	
 	// Stochastically selects a successor state from the list, and returns its ID
 	public int getNextState(Random r)
 	{
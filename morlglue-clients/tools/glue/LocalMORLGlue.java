@@ -0,0 +1,244 @@
+// An in-process replacement for the MORL_Glue server. It connects an AgentInterface and an EnvironmentInterface directly
+// through method calls, so an experiment, agent and environment can all run inside one JVM without any socket traffic.
+// To use it, install it before the experiment makes its first RLGlue call, eg
+//		RLGlue.setGlue(new LocalMORLGlue(new TLO_Agent(), new GeneralisedDeepSeaTreasureEnv()));
+//		new DemoExperiment().runExperiment();
+// Existing experiments then run unchanged, as they only ever use the static RLGlue methods.
+// The bookkeeping follows RL_glue.c in the MORL_Glue server - in particular RL_return gives the per-objective sum of the
+// rewards received in the current (or just completed) episode, with one element per reward in the environment's Reward
+// structure. The LocalGlue class in the codec can't be used for this, as it only accumulates a single scalar reward.
+// Objects are handed between the environment and agent by reference, without copying. setObjectReuse(true) switches the
+// environment, the agent and the glue itself to reusing a single instance of each object they return (provided both the
+// environment and the agent support it), so that a run allocates nothing per step - see ReusableStepObjects for when a consumer then needs to copy what it is given.
+
+package tools.glue;
+
+import org.rlcommunity.rlglue.codec.AgentInterface;
+import org.rlcommunity.rlglue.codec.EnvironmentInterface;
+import org.rlcommunity.rlglue.codec.RLGlueInterface;
+import org.rlcommunity.rlglue.codec.types.Action;
+import org.rlcommunity.rlglue.codec.types.Observation;
+import org.rlcommunity.rlglue.codec.types.Observation_action;
+import org.rlcommunity.rlglue.codec.types.Reward;
+import org.rlcommunity.rlglue.codec.types.Reward_observation_action_terminal;
+import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
+
+public class LocalMORLGlue implements RLGlueInterface
+{
+	private final AgentInterface agent;
+	private final EnvironmentInterface env;
+
+	private Action lastAction = null;
+	private double totalReward[] = new double[0]; // summed rewards for the current episode, sized from the first reward
+	private int numSteps = 0;
+	private int numEpisodes = 0;
+	// in object reuse mode these are refilled and returned by every RL_start and RL_step
+	private boolean reuseObjects = false;
+	private final Observation_action startResult = new Observation_action();
+	private final Reward_observation_action_terminal stepResult = new Reward_observation_action_terminal();
+
+	public LocalMORLGlue(AgentInterface agent, EnvironmentInterface env)
+	{
+		this.agent = agent;
+		this.env = env;
+	}
+
+	public String RL_init()
+	{
+		String taskSpec = env.env_init();
+		agent.agent_init(taskSpec);
+		totalReward = new double[0];
+		numSteps = 0;
+		numEpisodes = 0;
+		return taskSpec;
+	}
+
+	public Observation_action RL_start()
+	{
+		resetTotalReward();
+		numSteps = 1;
+		Observation observation = env.env_start();
+		lastAction = agent.agent_start(observation);
+		if (!reuseObjects)
+			return new Observation_action(observation, lastAction);
+		startResult.o = observation;
+		startResult.a = lastAction;
+		return startResult;
+	}
+
+	public Observation RL_env_start()
+	{
+		resetTotalReward();
+		numSteps = 1;
+		return env.env_start();
+	}
+
+	public Reward_observation_terminal RL_env_step(Action action)
+	{
+		Reward_observation_terminal rot = env.env_step(action);
+		addToTotalReward(rot.r);
+		if (rot.terminal == 1)
+			numEpisodes++;
+		else
+			numSteps++;
+		return rot;
+	}
+
+	public Action RL_agent_start(Observation observation)
+	{
+		return agent.agent_start(observation);
+	}
+
+	public Action RL_agent_step(Reward reward, Observation observation)
+	{
+		return agent.agent_step(reward, observation);
+	}
+
+	public void RL_agent_end(Reward reward)
+	{
+		agent.agent_end(reward);
+	}
+
+	public Reward_observation_action_terminal RL_step()
+	{
+		Reward_observation_terminal rot = env.env_step(lastAction);
+		addToTotalReward(rot.r);
+		// as in RL_glue.c the step count isn't incremented on the terminal step, so an episode which ends on its first
+		// env_step reports a single step
+		if (rot.terminal == 1)
+		{
+			numEpisodes++;
+			agent.agent_end(rot.r);
+		}
+		else
+		{
+			numSteps++;
+			lastAction = agent.agent_step(rot.r, rot.o);
+		}
+		if (!reuseObjects)
+			return new Reward_observation_action_terminal(rot.r, rot.o, lastAction, rot.terminal);
+		stepResult.r = rot.r;
+		stepResult.o = rot.o;
+		stepResult.a = lastAction;
+		stepResult.terminal = rot.terminal;
+		return stepResult;
+	}
+
+	public int RL_episode(int maxStepsThisEpisode)
+	{
+		int terminal = 0;
+		RL_start();
+		while (terminal == 0 && (maxStepsThisEpisode == 0 || numSteps < maxStepsThisEpisode))
+		{
+			terminal = RL_step().terminal;
+		}
+		return terminal;
+	}
+
+	public void RL_cleanup()
+	{
+		env.env_cleanup();
+		agent.agent_cleanup();
+	}
+
+	public String RL_agent_message(String message)
+	{
+		String response = agent.agent_message(message == null ? "" : message);
+		return response == null ? "" : response;
+	}
+
+	public String RL_env_message(String message)
+	{
+		String response = env.env_message(message == null ? "" : message);
+		return response == null ? "" : response;
+	}
+
+	// Switches the glue, and the agent and environment (by sending them the set_object_reuse message), into or out of
+	// object reuse mode, and returns true if they are all now in the requested mode. Reuse is only switched on if both the
+	// agent and the environment understand the message - if either doesn't, the other is switched back, everything goes
+	// on creating new objects (as one which doesn't know about reuse may keep the objects it is handed) and false is
+	// returned, leaving it to the caller to report the refusal. Switching reuse off always succeeds, as one which doesn't
+	// understand the message has never reused its objects.
+	public boolean setObjectReuse(boolean reuse)
+	{
+		String message = ReusableStepObjects.MESSAGE + " " + reuse;
+		boolean agentSwitched = sendReuseToAgent(message, reuse);
+		boolean envSwitched = sendReuseToEnv(message, reuse);
+		if (reuse && !(agentSwitched && envSwitched))
+		{
+			message = ReusableStepObjects.MESSAGE + " false";
+			if (agentSwitched)
+				sendReuseToAgent(message, false);
+			if (envSwitched)
+				sendReuseToEnv(message, false);
+			reuseObjects = false;
+			return false;
+		}
+		reuseObjects = reuse;
+		return true;
+	}
+
+	// agents answer messages they don't understand with a message of their own rather than an exception
+	private boolean sendReuseToAgent(String message, boolean reuse)
+	{
+		try
+		{
+			return ReusableStepObjects.response(reuse).equals(agent.agent_message(message));
+		}
+		catch (UnsupportedOperationException e)
+		{
+			return false;
+		}
+	}
+
+	private boolean sendReuseToEnv(String message, boolean reuse)
+	{
+		try
+		{
+			return ReusableStepObjects.response(reuse).equals(env.env_message(message));
+		}
+		catch (UnsupportedOperationException e)
+		{
+			return false;
+		}
+	}
+
+	// returns a copy, so the caller can keep it after the next episode starts
+	public Reward RL_return()
+	{
+		Reward result = new Reward(0, totalReward.length, 0);
+		System.arraycopy(totalReward, 0, result.doubleArray, 0, totalReward.length);
+		return result;
+	}
+
+	public int RL_num_steps()
+	{
+		return numSteps;
+	}
+
+	public int RL_num_episodes()
+	{
+		return numEpisodes;
+	}
+
+	private void resetTotalReward()
+	{
+		for (int i=0; i<totalReward.length; i++)
+			totalReward[i] = 0.0;
+	}
+
+	private void addToTotalReward(Reward reward)
+	{
+		if (reward == null || reward.doubleArray == null)
+			return;
+		if (totalReward.length != reward.doubleArray.length)
+		{
+			// first reward seen (or the environment has changed its number of objectives) - start a fresh total
+			double resized[] = new double[reward.doubleArray.length];
+			System.arraycopy(totalReward, 0, resized, 0, Math.min(totalReward.length, resized.length));
+			totalReward = resized;
+		}
+		for (int i=0; i<totalReward.length; i++)
+			totalReward[i] += reward.doubleArray[i];
+	}
+}
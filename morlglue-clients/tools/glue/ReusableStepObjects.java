@@ -0,0 +1,104 @@
+// Supplies the objects an environment or agent hands over on each step - the Observation, Reward and
+// Reward_observation_terminal from env_start/env_step, or the Action from agent_start/agent_step. Normally a new object
+// is created for every call, as the environments and agents always did. In object reuse mode each environment or agent
+// instead owns a single instance of each, which is refilled and returned by every call, so that a long run (eg
+// thousands of MountainCar episodes through a LocalMORLGlue) allocates nothing per step. The mode is switched by the
+// message "set_object_reuse true" or "set_object_reuse false" to the environment or agent, or for both at once (and
+// for the glue's own objects) by LocalMORLGlue.setObjectReuse.
+// The in-process hand-off contract in reuse mode:
+//  - objects returned by env_start/env_step are only valid until that environment's next env_start or env_step call,
+//    and an Action from agent_start/agent_step until that agent's next agent_start or agent_step
+//  - consumers may read them freely until then (as the glue and the agents do, using each step's observation and
+//    reward before the next step), but must not modify them
+//  - a consumer which keeps one for longer (eg in a history of rewards or observations) must copy it first, with
+//    duplicate() or by copying its values. Environments which keep their reward in a field (eg BonusWorld and
+//    SpaceTraders) return the same Reward from every step whichever mode is used, so rewards should always be copied
+//    before being kept.
+// Over the network there is nothing to copy, as the codec serialises each object as soon as it is returned.
+// Each environment and agent needs its own ReusableStepObjects, as the objects aren't safe to share between threads.
+
+package tools.glue;
+
+import org.rlcommunity.rlglue.codec.types.Action;
+import org.rlcommunity.rlglue.codec.types.Observation;
+import org.rlcommunity.rlglue.codec.types.Reward;
+import org.rlcommunity.rlglue.codec.types.Reward_observation_terminal;
+
+public class ReusableStepObjects
+{
+	public static final String MESSAGE = "set_object_reuse";
+
+	private boolean reuse = false;
+	private Observation observation = null;
+	private Reward reward = null;
+	private Reward_observation_terminal stepResult = null;
+	private Action action = null;
+
+	public boolean isReusing()
+	{
+		return reuse;
+	}
+
+	public void setReusing(boolean _reuse)
+	{
+		reuse = _reuse;
+	}
+
+	// If _message is a set_object_reuse message, switches mode and returns a response for the sender. Returns null for
+	// any other message, so the caller can go on to handle it.
+	public String handleMessage(String _message)
+	{
+		if (!_message.startsWith(MESSAGE))
+			return null;
+		String[] parts = _message.split(" ");
+		setReusing(parts.length < 2 || Boolean.parseBoolean(parts[1]));
+		return response(reuse);
+	}
+
+	// the response to a set_object_reuse message which switched the mode to _reuse, so that the sender can tell whether
+	// the message was understood
+	public static String response(boolean _reuse)
+	{
+		return "Object reuse " + (_reuse ? "on" : "off");
+	}
+
+	// an Observation holding a single int, which the caller then sets
+	public Observation getObservation()
+	{
+		if (!reuse)
+			return new Observation(1, 0, 0);
+		if (observation == null)
+			observation = new Observation(1, 0, 0);
+		return observation;
+	}
+
+	// a Reward with _numObjectives values, all of which the caller then sets
+	public Reward getReward(int _numObjectives)
+	{
+		if (!reuse)
+			return new Reward(0, _numObjectives, 0);
+		if (reward == null || reward.doubleArray.length != _numObjectives)
+			reward = new Reward(0, _numObjectives, 0);
+		return reward;
+	}
+
+	// a Reward_observation_terminal, which the caller then fills in
+	public Reward_observation_terminal getStepResult()
+	{
+		if (!reuse)
+			return new Reward_observation_terminal();
+		if (stepResult == null)
+			stepResult = new Reward_observation_terminal();
+		return stepResult;
+	}
+
+	// an Action holding a single int, which the caller then sets
+	public Action getAction()
+	{
+		if (!reuse)
+			return new Action(1, 0, 0);
+		if (action == null)
+			action = new Action(1, 0, 0);
+		return action;
+	}
+}
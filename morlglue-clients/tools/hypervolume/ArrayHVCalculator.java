@@ -0,0 +1,242 @@
+package tools.hypervolume;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+// A hypervolume calculator which works directly on double[][] fronts rather than on the Front and Point classes used
+// by HVCalculator. For four or more objectives it runs the same inclusion-exclusion recursion as HVCalculator, comparing
+// and combining the points in the same order, so it gives identical results - but each point is a double[] rather than
+// a map of BigDecimals.
+// The scratch front used at each depth of the recursion is allocated the first time that depth is reached and reused
+// from then on, including by later calls to getVolume, so an instance which is kept and reused for every front does
+// no allocation once it has seen its largest front. An instance must only be used by one thread at a time.
+// Fronts of two or three objectives don't need the general recursion, which is exponential in the number of objectives:
+// they are measured with an O(n log n) sweep (two objectives) or a dimension sweep which keeps the two-objective front
+// in a Staircase2D of primitive arrays, reused from call to call (three objectives). These give the same volumes as the
+// recursion up to floating point rounding, as they add up the same region in a different order.
+
+public class ArrayHVCalculator {
+
+    int n = 0;              // the number of objectives
+    double ref[];           // the reference point
+    double front[][] = new double[0][]; // the points of the front being measured which dominate the reference point
+    int maxm = 0;           // the number of points in front
+    double fs[][][] = new double[8][][]; // scratch fronts, one per recursion depth
+    int fsPoints[] = new int[8];         // the number of points kept in each scratch front
+    int fr = 0;             // current depth
+    Staircase2D<Object> staircase = new Staircase2D<Object>(); // the two-objective front used by the three objective sweep
+
+    public static double getVolumeFromArray(double[][] data) {
+        return getVolumeFromArray(data, new double[] {0.0, 0.0, 0.0});
+    }
+
+    public static double getVolumeFromArray(double[][] data, double[] refPoint) {
+        return new ArrayHVCalculator().getVolume(data, refPoint);
+    }
+
+    // returns true if point 1 Pareto-dominates point2
+    private static boolean dominates(double[] point1, double[] point2)
+    {
+        for (int i=0; i<point1.length; i++)
+        {
+            if (point1[i]<point2[i])
+                return false;
+        }
+        return true;
+    }
+
+    // returns the hypervolume of the points in data relative to refPoint. Points which don't dominate the reference
+    // point are ignored. The rows of data are only read, never modified.
+    public double getVolume(double[][] data, double[] refPoint) {
+        return getVolume(data, data.length, refPoint);
+    }
+
+    // as getVolume(data, refPoint), but only uses the first numPoints rows of data
+    public double getVolume(double[][] data, int numPoints, double[] refPoint) {
+        if (front.length < numPoints) {
+            front = new double[numPoints][];
+        }
+        maxm = 0;
+        n = 0;
+        for (int i = 0; i < numPoints; i++) {
+            double[] point = data[i];
+            if (dominates(point, refPoint)) {
+                front[maxm++] = point;
+                n = Math.max(n, point.length);
+            }
+        }
+        if (maxm == 0) {
+            return 0.0;
+        }
+        ref = refPoint;
+        double volume;
+        if (n == 2) {
+            volume = sweep2D(front, maxm);
+        } else if (n == 3) {
+            volume = sweep3D(front, maxm);
+        } else {
+            fr = 0;
+            volume = hv(front, maxm);
+        }
+        Arrays.fill(front, 0, maxm, null); // don't hold on to the caller's points
+        return volume;
+    }
+
+    // order points by decreasing value of the second and third objectives respectively
+    private static final Comparator<double[]> BY_Y = new Comparator<double[]>() {
+        public int compare(double[] p, double[] q) {
+            return Double.compare(q[1], p[1]);
+        }
+    };
+    private static final Comparator<double[]> BY_Z = new Comparator<double[]>() {
+        public int compare(double[] p, double[] q) {
+            return Double.compare(q[2], p[2]);
+        }
+    };
+
+    // two objectives: with the points in decreasing order of the second objective, each point which improves on the
+    // best first objective seen so far adds a rectangle between its own first objective and that best value
+    private double sweep2D(double[][] ps, int m) {
+        Arrays.sort(ps, 0, m, BY_Y);
+        double volume = 0;
+        double bestX = ref[0];
+        for (int i = 0; i < m; i++) {
+            if (ps[i][0] > bestX) {
+                volume += (ps[i][0] - bestX) * (ps[i][1] - ref[1]);
+                bestX = ps[i][0];
+            }
+        }
+        return volume;
+    }
+
+    // three objectives: the points are visited in decreasing order of the third objective. Between consecutive values of
+    // the third objective the volume is a slab whose cross-section is the area dominated by the first two objectives of
+    // the points visited so far. Those points' non-dominated front is kept in a Staircase2D, which reports the area each
+    // point adds as it is inserted.
+    private double sweep3D(double[][] ps, int m) {
+        Arrays.sort(ps, 0, m, BY_Z);
+        staircase.clear();
+        staircase.setReferencePoint(ref[0], ref[1]);
+        staircase.ensureCapacity(m);
+        double volume = 0;
+        double area = 0;
+        for (int i = 0; i < m; i++) {
+            if (i > 0) {
+                volume += area * (ps[i - 1][2] - ps[i][2]);
+            }
+            area += staircase.insert(ps[i][0], ps[i][1]);
+        }
+        volume += area * (ps[m - 1][2] - ref[2]);
+        return volume;
+    }
+
+    private double hv(double[][] ps, int m) {
+        double volume = 0;
+        for (int i = 0; i < m; i++) {
+            volume += exclhv(ps, m, i);
+        }
+        return volume;
+    }
+
+    private double exclhv(double[][] ps, int m, int p) {
+        double volume = inclhv(ps[p]);
+        if (m > p + 1) {
+            makeDominatedBit(ps, m, p);
+            volume -= hv(fs[fr - 1], fsPoints[fr - 1]);
+            fr--;
+        }
+        return volume;
+    }
+
+    private double inclhv(double[] p) {
+        double volume = 1;
+        for (int i = 0; i < n; i++) {
+            volume *= Math.abs(p[i] - ref[i]);
+        }
+        return volume;
+    }
+
+    // returns the scratch front for the current depth, (re)allocating it if it is too small. The front at depth d is
+    // built from a front of at most maxm-d points, so it never needs more than maxm-1-d points.
+    private double[][] scratchFront(int size) {
+        if (fr == fs.length) {
+            fs = Arrays.copyOf(fs, fr * 2);
+            fsPoints = Arrays.copyOf(fsPoints, fr * 2);
+        }
+        double[][] scratch = fs[fr];
+        if (scratch == null || scratch.length < size || scratch[0].length < n) {
+            scratch = new double[Math.max(size, maxm - 1 - fr)][n];
+            fs[fr] = scratch;
+        }
+        return scratch;
+    }
+
+    // fills the scratch front for the current depth with the non-dominated set of the points after p in ps, each limited
+    // to be no better than p in every objective
+    private void makeDominatedBit(double[][] ps, int m, int p) {
+        int z = m - 1 - p;
+        double[][] scratch = scratchFront(z);
+        double[] x = ps[p];
+        for (int i = 0; i < z; i++) {
+            double[] y = ps[p + 1 + i];
+            double[] point = scratch[i];
+            for (int j = 0; j < n; j++) {
+                point[j] = worse(x[j], y[j]);
+            }
+        }
+        double[] t;
+        int kept = 1;
+        for (int i = 1; i < z; i++) {
+            int j = 0;
+            boolean keep = true;
+            while (j < kept && keep) {
+                switch (dominates2way(scratch[i], scratch[j])) {
+                    case -1: {
+                        t = scratch[j];
+                        kept--;
+                        scratch[j] = scratch[kept];
+                        scratch[kept] = t;
+                        break;
+                    }
+                    case  0: {
+                        j++;
+                        break;
+                    }
+                    default: {
+                        keep = false;
+                    }
+                }
+            }
+            if (keep) {
+                t = scratch[kept];
+                scratch[kept] = scratch[i];
+                scratch[i] = t;
+                kept++;
+            }
+        }
+        fsPoints[fr] = kept;
+        fr++;
+    }
+
+    private static double worse(double x, double y) {
+        return (y > x) ? x : y;
+    }
+
+    // returns -1 if p dominates q, 1 if q dominates p, 2 if they are equal and 0 if neither dominates the other
+    private int dominates2way(double[] p, double[] q) {
+        for (int i = n - 1; i >= 0; i--) {
+            if (p[i] > q[i]) {
+                for (int j = i - 1; j >= 0; j--) {
+                    if (q[j] > p[j]) return 0;
+                }
+                return -1;
+            } else if (q[i] > p[i]) {
+                for (int j = i - 1; j >= 0; j--) {
+                    if (p[j] > q[j]) return 0;
+                }
+                return 1;
+            }
+        }
+        return 2;
+    }
+}
@@ -0,0 +1,387 @@
+package tools.hypervolume;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Reads files of fronts in the format used by HVCalculator - each front starts with a line holding just "#", and each
+// point is a line of objective values separated by spaces - in a single pass, handing each front on as soon as it has
+// been read. The file is memory-mapped (in chunks, so files over 2GB are fine) and parsed a byte at a time, with no
+// Scanner, String or BigDecimal per value, and fronts may have different numbers of points.
+// readVolumes calculates each front's hypervolume as it is read, either on the reading thread or, given a number of
+// threads, on a fork-join pool while the reading continues. Either way the volumes are reported in the order the fronts
+// appear in the file.
+
+public class FrontFileReader {
+
+    // receives each front as it is read. points holds numPoints points in its first rows, and may be reused for the next
+    // front once frontRead returns, so it should be copied if it needs to be kept
+    public interface FrontListener {
+        public void frontRead(int frontNumber, double[][] points, int numPoints);
+    }
+
+    // receives the volume of each front, in file order
+    public interface VolumeListener {
+        public void volumeCalculated(int frontNumber, double volume);
+    }
+
+    private static final long MAP_CHUNK_BYTES = 1L << 30;
+    // powers of ten which are exactly representable as doubles, used by parseDouble's fast path
+    private static final double EXACT_POWERS_OF_TEN[] = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final double refPoint[]; // null means the origin
+
+    // reads fronts, measuring their volumes relative to refPoint (or to the origin if refPoint is null)
+    public FrontFileReader(double refPoint[]) {
+        this.refPoint = (refPoint == null) ? null : refPoint.clone();
+    }
+
+    private double[] referenceFor(int numObjectives) {
+        return (refPoint == null) ? new double[numObjectives] : refPoint;
+    }
+
+    // reads the fronts in fileName, calculating their volumes on the calling thread
+    public void readVolumes(String fileName, final VolumeListener listener) throws IOException {
+        final ArrayHVCalculator calculator = new ArrayHVCalculator();
+        readFronts(fileName, new FrontListener() {
+            public void frontRead(int frontNumber, double[][] points, int numPoints) {
+                double ref[] = referenceFor(points[0].length);
+                listener.volumeCalculated(frontNumber, calculator.getVolume(points, numPoints, ref));
+            }
+        });
+    }
+
+    // reads the fronts in fileName on the calling thread while their volumes are calculated on a fork-join pool of the
+    // given number of threads. At most a few fronts per thread are held waiting to be measured.
+    public void readVolumes(String fileName, final VolumeListener listener, int numThreads) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(numThreads);
+        final ThreadLocal<ArrayHVCalculator> calculators = new ThreadLocal<ArrayHVCalculator>() {
+            protected ArrayHVCalculator initialValue() {
+                return new ArrayHVCalculator();
+            }
+        };
+        final ArrayDeque<ForkJoinTask<Double>> pending = new ArrayDeque<ForkJoinTask<Double>>();
+        final int maxPending = 4 * numThreads;
+        final ArrayDeque<Integer> pendingNumbers = new ArrayDeque<Integer>(); // the front numbers of the pending tasks
+        try {
+            readFronts(fileName, new FrontListener() {
+                public void frontRead(int frontNumber, double[][] points, int numPoints) {
+                    final double[][] front = new double[numPoints][];
+                    for (int i = 0; i < numPoints; i++) {
+                        front[i] = points[i].clone();
+                    }
+                    final double ref[] = referenceFor(front[0].length);
+                    pending.add(pool.submit(new Callable<Double>() {
+                        public Double call() {
+                            return calculators.get().getVolume(front, ref);
+                        }
+                    }));
+                    pendingNumbers.add(frontNumber);
+                    // report whatever has finished, waiting for the oldest front if too many are queued
+                    while (!pending.isEmpty() && (pending.peek().isDone() || pending.size() > maxPending)) {
+                        listener.volumeCalculated(pendingNumbers.poll(), pending.poll().join());
+                    }
+                }
+            });
+            while (!pending.isEmpty()) {
+                listener.volumeCalculated(pendingNumbers.poll(), pending.poll().join());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // reads the fronts in fileName in a single pass, passing each to listener as soon as it is complete. Fronts are
+    // numbered from 1, and empty fronts are skipped (but still numbered).
+    public void readFronts(String fileName, FrontListener listener) throws IOException {
+        Parser parser = new Parser(listener);
+        RandomAccessFile file = new RandomAccessFile(fileName, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            byte block[] = new byte[65536]; // bulk copies from the mapping are much faster than a get() per byte
+            for (long start = 0; start < size; start += MAP_CHUNK_BYTES) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAP_CHUNK_BYTES, size - start));
+                while (buffer.hasRemaining()) {
+                    int blockLength = Math.min(block.length, buffer.remaining());
+                    buffer.get(block, 0, blockLength);
+                    for (int i = 0; i < blockLength; i++) {
+                        parser.accept(block[i]);
+                    }
+                }
+            }
+            parser.finish();
+        } finally {
+            file.close();
+        }
+    }
+
+    // turns the bytes of the file into fronts. Kept separate from the mapping so that numbers and lines can run across
+    // the boundary between two mapped chunks.
+    private static class Parser {
+        private final FrontListener listener;
+        private byte token[] = new byte[32];
+        private int tokenLength = 0;
+        private int lineNumber = 1;
+        private boolean lineIsHash = false;  // true if the only token on this line so far is "#"
+        private double line[] = new double[8]; // the values on the current line
+        private int lineValues = 0;
+        private double points[][] = new double[16][];
+        private int numPoints = 0;
+        private int numObjectives = 0;
+        private int frontNumber = 0;
+
+        Parser(FrontListener listener) {
+            this.listener = listener;
+        }
+
+        void accept(byte b) throws IOException {
+            if (b == ' ' || b == '\t' || b == '\r') {
+                endToken();
+            } else if (b == '\n') {
+                endToken();
+                endLine();
+            } else {
+                if (tokenLength == token.length) {
+                    token = Arrays.copyOf(token, tokenLength * 2);
+                }
+                token[tokenLength++] = b;
+            }
+        }
+
+        void finish() throws IOException {
+            endToken();
+            endLine();
+            endFront();
+        }
+
+        private void endToken() throws IOException {
+            if (tokenLength == 0) {
+                return;
+            }
+            if (tokenLength == 1 && token[0] == '#' && lineValues == 0 && !lineIsHash) {
+                lineIsHash = true;
+            } else {
+                if (lineIsHash) {
+                    throw new IOException("Unexpected text after # on line " + lineNumber);
+                }
+                if (lineValues == line.length) {
+                    line = Arrays.copyOf(line, lineValues * 2);
+                }
+                line[lineValues++] = parseDouble(token, tokenLength, lineNumber);
+            }
+            tokenLength = 0;
+        }
+
+        private void endLine() throws IOException {
+            if (lineIsHash) {
+                endFront();
+                frontNumber++;
+            } else if (lineValues > 0) {
+                if (frontNumber == 0) {
+                    throw new IOException("Point on line " + lineNumber + " is before the first #");
+                }
+                if (numPoints == 0) {
+                    numObjectives = lineValues;
+                } else if (lineValues != numObjectives) {
+                    throw new IOException("Line " + lineNumber + " has " + lineValues + " objectives, but the front's first point has " + numObjectives);
+                }
+                if (numPoints == points.length) {
+                    points = Arrays.copyOf(points, numPoints * 2);
+                }
+                if (points[numPoints] == null || points[numPoints].length != numObjectives) {
+                    points[numPoints] = new double[numObjectives];
+                }
+                System.arraycopy(line, 0, points[numPoints], 0, numObjectives);
+                numPoints++;
+            }
+            lineIsHash = false;
+            lineValues = 0;
+            lineNumber++;
+        }
+
+        private void endFront() {
+            if (numPoints > 0) {
+                listener.frontRead(frontNumber, points, numPoints);
+            }
+            numPoints = 0;
+        }
+    }
+
+    // Parses the decimal number in the first length bytes of text, giving exactly the same result as
+    // Double.parseDouble. Numbers with at most 15 significant digits and a decimal exponent of at most 22 either way are
+    // converted directly - the digits and the power of ten are both exact as doubles, so a single multiplication or
+    // division gives the correctly rounded result. Other numbers of up to 19 significant digits (such as the 17 digits
+    // Double.toString can produce) use the Eisel-Lemire algorithm, which multiplies the digits by a 128-bit
+    // approximation of the power of ten and can tell when that approximation isn't enough to round correctly. Anything
+    // else (longer numbers, subnormals, NaN, Infinity, the rare cases Eisel-Lemire can't decide) is passed to
+    // Double.parseDouble.
+    static double parseDouble(byte[] text, int length, int lineNumber) throws IOException {
+        int i = 0;
+        boolean negative = false;
+        if (text[0] == '-' || text[0] == '+') {
+            negative = (text[0] == '-');
+            i++;
+        }
+        long digits = 0; // unsigned - 19 digits can exceed Long.MAX_VALUE
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+        boolean fastPath = true;
+        for (; i < length && text[i] >= '0' && text[i] <= '9'; i++) {
+            anyDigits = true;
+            if (digits != 0 || text[i] != '0') {
+                digits = digits * 10 + (text[i] - '0');
+                if (++significantDigits > 19) {
+                    fastPath = false;
+                    break;
+                }
+            }
+        }
+        if (fastPath && i < length && text[i] == '.') {
+            for (i++; i < length && text[i] >= '0' && text[i] <= '9'; i++) {
+                anyDigits = true;
+                if (digits != 0 || text[i] != '0') {
+                    digits = digits * 10 + (text[i] - '0');
+                    if (++significantDigits > 19) {
+                        fastPath = false;
+                        break;
+                    }
+                }
+                exponent--;
+            }
+        }
+        if (fastPath && anyDigits && i < length && (text[i] == 'e' || text[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < length && (text[i] == '-' || text[i] == '+')) {
+                negativeExponent = (text[i] == '-');
+                i++;
+            }
+            int explicitExponent = 0;
+            boolean anyExponentDigits = false;
+            for (; i < length && text[i] >= '0' && text[i] <= '9' && explicitExponent < 1000; i++) {
+                anyExponentDigits = true;
+                explicitExponent = explicitExponent * 10 + (text[i] - '0');
+            }
+            fastPath = anyExponentDigits;
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (fastPath && anyDigits && i == length) {
+            if (digits == 0) {
+                return negative ? -0.0 : 0.0;
+            }
+            if (significantDigits <= 15 && exponent >= -22 && exponent <= 22) {
+                double value = digits;
+                if (exponent < 0) {
+                    value /= EXACT_POWERS_OF_TEN[-exponent];
+                } else {
+                    value *= EXACT_POWERS_OF_TEN[exponent];
+                }
+                return negative ? -value : value;
+            }
+            double value = eiselLemire(digits, exponent, negative);
+            if (!Double.isNaN(value)) {
+                return value;
+            }
+        }
+        String number = new String(text, 0, length, StandardCharsets.ISO_8859_1);
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid number \"" + number + "\" on line " + lineNumber);
+        }
+    }
+
+    // the range of decimal exponents covered by POWERS_OF_FIVE
+    private static final int SMALLEST_POWER = -342;
+    private static final int LARGEST_POWER = 308;
+    // 128-bit approximations of 5^q for q from SMALLEST_POWER to LARGEST_POWER, shifted so the top bit is set - the high
+    // 64 bits are at 2*(q-SMALLEST_POWER) and the low 64 bits follow. Positive powers are truncated and negative ones are
+    // rounded up, as the Eisel-Lemire error analysis requires.
+    private static final long POWERS_OF_FIVE[] = new long[2 * (LARGEST_POWER - SMALLEST_POWER + 1)];
+    static {
+        BigInteger five = BigInteger.valueOf(5);
+        for (int q = SMALLEST_POWER; q <= LARGEST_POWER; q++) {
+            BigInteger power;
+            if (q >= 0) {
+                power = five.pow(q);
+                int bits = power.bitLength();
+                power = (bits < 128) ? power.shiftLeft(128 - bits) : power.shiftRight(bits - 128);
+            } else {
+                BigInteger divisor = five.pow(-q);
+                int z = divisor.bitLength();
+                int b = (q >= -27) ? z + 127 : 2 * z + 128;
+                power = BigInteger.ONE.shiftLeft(b).divide(divisor).add(BigInteger.ONE);
+                if (power.bitLength() > 128) {
+                    power = power.shiftRight(power.bitLength() - 128);
+                }
+            }
+            POWERS_OF_FIVE[2 * (q - SMALLEST_POWER)] = power.shiftRight(64).longValue();
+            POWERS_OF_FIVE[2 * (q - SMALLEST_POWER) + 1] = power.longValue();
+        }
+    }
+
+    // returns the high 64 bits of the unsigned 128-bit product of a and b
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    // returns the double nearest to w * 10^q, where w is a non-zero unsigned integer, or NaN if the algorithm can't be
+    // sure of the rounding or the result isn't a normal double
+    private static double eiselLemire(long w, int q, boolean negative) {
+        if (q < SMALLEST_POWER || q > LARGEST_POWER) {
+            return Double.NaN;
+        }
+        int leadingZeros = Long.numberOfLeadingZeros(w);
+        w <<= leadingZeros;
+        int index = 2 * (q - SMALLEST_POWER);
+        long high = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index]);
+        long low = w * POWERS_OF_FIVE[index];
+        if ((high & 0x1FF) == 0x1FF) {
+            // the truncated bits might carry into the result, so include the next 64 bits of the power
+            long secondHigh = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+            low += secondHigh;
+            if (Long.compareUnsigned(secondHigh, low) > 0) {
+                high++;
+            }
+        }
+        if (low == -1L && (q < -27 || q > 55)) {
+            return Double.NaN; // the product may be too inexact to round correctly
+        }
+        int upperBit = (int)(high >>> 63);
+        long mantissa = high >>> (upperBit + 9);
+        int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - leadingZeros + 1023;
+        if (power2 <= 0) {
+            return Double.NaN; // subnormal
+        }
+        // a product exactly halfway between two doubles has to round to even rather than up
+        if (Long.compareUnsigned(low, 1) <= 0 && q >= -4 && q <= 23 && (mantissa & 3) == 1
+                && (mantissa << (upperBit + 9)) == high) {
+            mantissa &= ~1L;
+        }
+        mantissa += (mantissa & 1);
+        mantissa >>>= 1;
+        if (mantissa >= (2L << 52)) {
+            mantissa = (1L << 52);
+            power2++;
+        }
+        mantissa &= ~(1L << 52);
+        if (power2 >= 0x7FF) {
+            return Double.NaN; // infinite
+        }
+        long bits = mantissa | ((long)power2 << 52) | (negative ? (1L << 63) : 0);
+        return Double.longBitsToDouble(bits);
+    }
+}
@@ -2,11 +2,11 @@ package tools.hypervolume;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Scanner;
 import java.util.Map;
-import java.util.Vector;
 
 public class HVCalculator {        
     
@@ -19,7 +19,7 @@ public class HVCalculator {
     Point ref;
       
     public static void main(String[] args) throws Exception {
-	    showVolumesFromFile(args[0]);	    
+	    showVolumesFromFile(args[0], (args.length > 1) ? Integer.parseInt(args[1]) : 1);
     }
     
     public FileContents readFile(String filename) throws FileNotFoundException {
@@ -71,114 +71,33 @@ public class HVCalculator {
 	    return getVolumeFromArray(data, new double[] {0.0, 0.0, 0.0});
     }
     
+    // the Front and Point classes are too slow for array data, so this is handled by ArrayHVCalculator, which gives
+    // identical results
     public static double getVolumeFromArray(double[][] data, double[] refPoint) {
-	    HVCalculator hvc = new HVCalculator();
-	    
-	    Front front = new Front();
-	    front.setnObjectives(0);
-	    
-	    for (double[] points : data) {
-		   if (dominates(points, refPoint))
-		   {
-		 	   Point p = new Point();
-		 	   front.setnObjectives(0);
-		 	   
-		 	   for (double point : points) {		 	   
-			 	   p.getObjectives().put(front.getnObjectives(), new BigDecimal(point));
-	               front.increaseNumberOfObjectives();
-		 	   }
-		 	   
-		 	   front.getPoints().put(front.getnPoints(), p);
-	           front.increaseNumberOfPoints();
-       	   }
-    	}
-    	
-    	Point newRefPoint = new Point();
-        for (int i = 0; i < refPoint.length; i++) {
-        	newRefPoint.getObjectives().put(i, new BigDecimal(refPoint[i]));
-        }
-    	hvc.setReferencePoint(newRefPoint);        
-    	
-    	if (front.getnPoints() == 0) {
-	    	front.getPoints().put(front.getnPoints(), newRefPoint);
-	    	front.increaseNumberOfPoints();
-	    	front.setnObjectives(newRefPoint.getnObjectives());
-        }
-        
-    	return hvc.getVolume(front);
+        return ArrayHVCalculator.getVolumeFromArray(data, refPoint);
     }    
     
-    public static void showVolumesFromFile(String filename) throws FileNotFoundException {
-	    Scanner scanner = new Scanner(new FileReader(filename));
-	    
-        String line = new String();
-
-        int numFronts = 0;
-        int numPoints = 0;        
-        int numObjectives = 0; 
-        boolean inFront = false;
-        
-        while (scanner.hasNextLine()) {
-            line = scanner.nextLine();
-            
-            
-            if( line.equals("#") ) {
-	            numFronts++;
-	            
-	            if (numFronts == 1) {
-		            inFront = true;
-	            } else {
-		            inFront = false;
-	            }
-	            
-            } else {
-	            if (numObjectives == 0) {
-		            String[] points = line.split(" ");
-		            numObjectives = points.length;
-            	}
-            	
-				if (inFront) {
-	            	numPoints++;
-            	}                	
-            }
-            
-        }	    
-	    
-        numFronts--;
-        
-        System.out.println("numFronts: " + numFronts + " numPoints: " + numPoints + " numObjectives: " + numObjectives);
-        
-        
-        scanner = new Scanner(new FileReader(filename));
-        Vector<double[][]> fronts = new Vector<double[][]>();
-        
-        double[][] data = null;
-        
-        int index = 1;
-        int pointIndex = 0;
-        
-        while (scanner.hasNextLine()) {
-        	line = scanner.nextLine();
-        	
-        	if( line.equals("#") ) {
-	        	if (data != null) {
-		        	//System.out.println("hv(" + (index++) + ") = " + getVolumeFromArray(data, new double[]{0.2, 0.1, 0.4}));
-		        	System.out.println("hv(" + (index++) + ") = " + getVolumeFromArray(data));
-	        	}
-	        	
-	            data = new double[numPoints][numObjectives];	            
-	            pointIndex = 0;
-            } else {
-	            String[] points = line.split(" ");
-	            
-	            for (int i = 0; i < numObjectives; i++) {
-	            	data[pointIndex][i] = Double.parseDouble(points[i]);
-            	}
-	            
-	            pointIndex++;
+    // prints the volume of each front in the file, relative to the origin, as it is read
+    public static void showVolumesFromFile(String filename) throws IOException {
+        showVolumesFromFile(filename, 1);
+    }
+    
+    // as showVolumesFromFile(filename), but calculates the volumes on numThreads threads if numThreads > 1
+    public static void showVolumesFromFile(String filename, int numThreads) throws IOException {
+        FrontFileReader reader = new FrontFileReader(null);
+        final int numFronts[] = { 0 };
+        FrontFileReader.VolumeListener printer = new FrontFileReader.VolumeListener() {
+            public void volumeCalculated(int frontNumber, double volume) {
+                System.out.println("hv(" + frontNumber + ") = " + volume);
+                numFronts[0]++;
             }
-    	}
-        
+        };
+        if (numThreads > 1) {
+            reader.readVolumes(filename, printer, numThreads);
+        } else {
+            reader.readVolumes(filename, printer);
+        }
+        System.out.println("numFronts: " + numFronts[0]);
     }
     
 
@@ -210,8 +129,36 @@ public class HVCalculator {
         }
         
         n = maxn;
+        if (n == 2 || n == 3) {
+            // the sweeps in ArrayHVCalculator are much faster than hv for so few objectives
+            double[][] data = toArrayIfDominatesRef(ps);
+            if (data != null) {
+                double[] refPoint = new double[n];
+                for (int i = 0; i < n; i++) {
+                    refPoint[i] = ref.getObjectives().get(i).doubleValue();
+                }
+                return new ArrayHVCalculator().getVolume(data, refPoint);
+            }
+        }
         return hv( ps );
 
+    }
+    
+    // returns the points of ps as arrays, or null if any point doesn't dominate the reference point (hv measures such
+    // points' boxes with their sides reflected, which the sweeps don't)
+    private double[][] toArrayIfDominatesRef(Front ps) {
+        double[][] data = new double[ps.getnPoints()][n];
+        for (int p = 0; p < ps.getnPoints(); p++) {
+            Map<Integer, BigDecimal> objectives = ps.getPoints().get(p).getObjectives();
+            for (int i = 0; i < n; i++) {
+                BigDecimal value = objectives.get(i);
+                if (value == null || value.compareTo(ref.getObjectives().get(i)) < 0) {
+                    return null;
+                }
+                data[p][i] = value.doubleValue();
+            }
+        }
+        return data;
     }    
     
     private double hv(Front ps) {
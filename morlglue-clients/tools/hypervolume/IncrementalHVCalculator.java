@@ -0,0 +1,220 @@
+package tools.hypervolume;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+// Keeps track of the hypervolume of a set of points as points are added and removed one at a time, so that a front
+// approximation which grows a policy at a time doesn't have to be measured from scratch after every change.
+// Each point added is given an id which is used to remove it or to ask for its exclusive contribution (the volume
+// dominated by that point and by no other non-dominated point). Points which don't dominate the reference point are
+// ignored. Points which are dominated by (or equal to) another point are kept but contribute nothing, and aren't counted
+// when working out the other points' contributions - if the points dominating them are later removed they rejoin the
+// front.
+// For two objectives the non-dominated points are kept in a Staircase2D, with their ids as payloads, so adding or
+// removing a point and finding its contribution take O(log n) time plus a shift of the later points along the
+// staircase's arrays (and, when a non-dominated point is removed, a check of each dominated point to see whether it
+// rejoins the front). For three or more
+// objectives the change in volume is found as the volume of the point's box minus the volume of the front limited to
+// that box, using ArrayHVCalculator - O(n log n) for three objectives - rather than remeasuring the whole front.
+// The total is updated by adding and subtracting these changes, so after very many changes it may differ from a fresh
+// calculation by floating point rounding; recalculate() measures it from scratch.
+
+public class IncrementalHVCalculator {
+
+    double ref[];                       // the reference point
+    int n;                              // the number of objectives
+    int nextId = 0;
+    Map<Integer, double[]> points;      // every point which dominates the reference point, by id
+    LinkedHashSet<Integer> front;       // ids of the non-dominated points
+    LinkedHashSet<Integer> dominated;   // ids of the points dominated by some point in front
+    Staircase2D<Integer> staircase;     // two objectives only - the non-dominated points by their first objective
+    double volume = 0;
+
+    ArrayHVCalculator calculator = new ArrayHVCalculator(); // for three or more objectives
+    double limited[][] = new double[0][];                   // scratch front for the limited sets
+
+    public IncrementalHVCalculator(double[] refPoint) {
+        ref = refPoint.clone();
+        n = ref.length;
+        points = new HashMap<Integer, double[]>();
+        front = new LinkedHashSet<Integer>();
+        dominated = new LinkedHashSet<Integer>();
+        staircase = new Staircase2D<Integer>(ref[0], ref.length > 1 ? ref[1] : 0);
+    }
+
+    // returns true if point1 is at least as good as point2 in every objective
+    private boolean weaklyDominates(double[] point1, double[] point2) {
+        for (int i = 0; i < n; i++) {
+            if (point1[i] < point2[i])
+                return false;
+        }
+        return true;
+    }
+
+    // adds a copy of point and returns its id, or -1 if it doesn't dominate the reference point
+    public int add(double[] point) {
+        if (point.length != n)
+            throw new IllegalArgumentException("Point has " + point.length + " objectives, reference point has " + n);
+        if (!weaklyDominates(point, ref))
+            return -1;
+        int id = nextId++;
+        double[] p = point.clone();
+        points.put(id, p);
+        insert(id, p);
+        return id;
+    }
+
+    // removes the point with the given id, returning false if there is no such point
+    public boolean remove(int id) {
+        double[] p = points.remove(id);
+        if (p == null)
+            return false;
+        if (dominated.remove(id))
+            return true;
+        volume -= contribution(id, p);
+        front.remove(id);
+        if (n == 2)
+            staircase.remove(p[0]);
+        if (front.isEmpty())
+            volume = 0; // don't let rounding errors accumulate while there is nothing to measure
+        // points which p was dominating may now be non-dominated
+        ArrayList<Integer> uncovered = new ArrayList<Integer>();
+        for (int other : dominated) {
+            if (weaklyDominates(p, points.get(other)) && !isCovered(points.get(other)))
+                uncovered.add(other);
+        }
+        for (int other : uncovered) {
+            dominated.remove(other);
+            insert(other, points.get(other));
+        }
+        return true;
+    }
+
+    public double getVolume() {
+        return volume;
+    }
+
+    // returns the volume dominated by the point with the given id and no other non-dominated point, which is 0 if it is
+    // dominated
+    public double getContribution(int id) {
+        double[] p = points.get(id);
+        if (p == null)
+            throw new IllegalArgumentException("No point with id " + id);
+        if (!front.contains(id))
+            return 0;
+        return contribution(id, p);
+    }
+
+    public boolean isNonDominated(int id) {
+        return front.contains(id);
+    }
+
+    public double[] getPoint(int id) {
+        double[] p = points.get(id);
+        return (p == null) ? null : p.clone();
+    }
+
+    public int getNumberOfPoints() {
+        return points.size();
+    }
+
+    // returns copies of the non-dominated points
+    public double[][] getNonDominatedPoints() {
+        double[][] result = new double[front.size()][];
+        int i = 0;
+        for (int id : front)
+            result[i++] = points.get(id).clone();
+        return result;
+    }
+
+    // measures the non-dominated points from scratch, resets the running total to that and returns it
+    public double recalculate() {
+        volume = calculator.getVolume(getNonDominatedPoints(), ref);
+        return volume;
+    }
+
+    // returns true if some point in the front weakly dominates p
+    private boolean isCovered(double[] p) {
+        if (n == 2)
+            return staircase.isDominated(p[0], p[1]);
+        for (int id : front) {
+            if (weaklyDominates(points.get(id), p))
+                return true;
+        }
+        return false;
+    }
+
+    // adds a point which isn't in front or dominated to the appropriate one, updating the volume
+    private void insert(int id, double[] p) {
+        if (isCovered(p)) {
+            dominated.add(id);
+            return;
+        }
+        if (n == 2) {
+            volume += insert2D(id, p);
+        } else {
+            volume += boxVolume(p) - limitedVolume(-1, p);
+            ArrayList<Integer> beaten = new ArrayList<Integer>();
+            for (int other : front) {
+                if (weaklyDominates(p, points.get(other)))
+                    beaten.add(other);
+            }
+            for (int other : beaten) {
+                front.remove(other);
+                dominated.add(other);
+            }
+        }
+        front.add(id);
+    }
+
+    // adds p to the staircase, moving the points it dominates to dominated, and returns the area it adds
+    private double insert2D(int id, double[] p) {
+        double added = staircase.insert(p[0], p[1], id);
+        for (int i = 0; i < staircase.getNumRemoved(); i++) {
+            int other = staircase.getRemoved(i);
+            front.remove(other);
+            dominated.add(other);
+        }
+        return added;
+    }
+
+    // returns the exclusive contribution of the point with the given id, which must be in front
+    private double contribution(int id, double[] p) {
+        if (n == 2) {
+            int i = staircase.indexOf(p[0]);
+            double leftX = (i > 0) ? staircase.getX(i - 1) : ref[0];
+            double rightY = (i + 1 < staircase.size()) ? staircase.getY(i + 1) : ref[1];
+            return (p[0] - leftX) * (p[1] - rightY);
+        }
+        return boxVolume(p) - limitedVolume(id, p);
+    }
+
+    private double boxVolume(double[] p) {
+        double volume = 1;
+        for (int i = 0; i < n; i++)
+            volume *= p[i] - ref[i];
+        return volume;
+    }
+
+    // returns the volume of the front, apart from the point with id except, within the box between the reference
+    // point and p - i.e. the part of p's box which the rest of the front already dominates
+    private double limitedVolume(int except, double[] p) {
+        if (limited.length < front.size()) {
+            limited = new double[Math.max(front.size(), limited.length * 2)][n];
+        }
+        int m = 0;
+        for (int id : front) {
+            if (id == except)
+                continue;
+            double[] q = points.get(id);
+            double[] point = limited[m++];
+            for (int i = 0; i < n; i++)
+                point[i] = Math.min(p[i], q[i]);
+        }
+        if (m == 0)
+            return 0;
+        return calculator.getVolume(limited, m, ref);
+    }
+}
@@ -0,0 +1,423 @@
+package tools.hypervolume;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+// A Pareto archive for any number of objectives, kept as an ND-tree (Jaszkiewicz and Lust, "ND-Tree-based update", IEEE
+// Transactions on Evolutionary Computation 2018). Each node records the best (ideal) and worst (nadir) value of each
+// objective over the points below it, which lets whole subtrees be skipped:
+//  - a point is dominated by every point in a node if the node's nadir is at least as good in every objective, and by
+//    none of them if it is better than the node's ideal in some objective
+//  - a point dominates every point in a node if it is at least as good as the node's ideal, and none of them unless it
+//    is at least as good as the node's nadir
+// so dominance checks and pruning usually only visit a small part of the tree. New points go into the leaf whose box
+// centre is nearest, and a leaf which grows beyond MAX_LEAF_SIZE points is split into numObjectives+1 children by
+// clustering its points around mutually distant seeds.
+// A bounded archive also keeps each point's hypervolume contribution, so finding the least contributor is a scan of
+// the stored values rather than a hypervolume calculation per point. Adding or evicting a point p only changes the
+// contribution of a point q if the box they share (below their component-wise minimum) isn't already dominated by some
+// third point - an ND-tree query - so only those neighbours of p have their contributions recalculated.
+
+public class NDTreeArchive extends ParetoArchive {
+
+    static final int MAX_LEAF_SIZE = 20;
+
+    private class Node {
+        double ideal[] = new double[numObjectives];
+        double nadir[] = new double[numObjectives];
+        ArrayList<double[]> points;   // set for leaves
+        ArrayList<Node> children;     // set for internal nodes
+
+        Node() {
+            points = new ArrayList<double[]>();
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+
+        boolean isEmpty() {
+            return isLeaf() ? points.isEmpty() : children.isEmpty();
+        }
+
+        // widens the bounds to include point
+        void include(double point[], boolean first) {
+            for (int i = 0; i < numObjectives; i++) {
+                if (first || point[i] > ideal[i])
+                    ideal[i] = point[i];
+                if (first || point[i] < nadir[i])
+                    nadir[i] = point[i];
+            }
+        }
+
+        // recalculates the bounds from the points or children, after some have been removed
+        void recalculateBounds() {
+            boolean first = true;
+            if (isLeaf()) {
+                for (double point[] : points) {
+                    include(point, first);
+                    first = false;
+                }
+            } else {
+                for (Node child : children) {
+                    include(child.ideal, first);
+                    for (int i = 0; i < numObjectives; i++) {
+                        if (child.nadir[i] < nadir[i])
+                            nadir[i] = child.nadir[i];
+                    }
+                    first = false;
+                }
+            }
+        }
+    }
+
+    private Node root = new Node();
+    private int size = 0;
+
+    // bounded archives only - each point's contribution, and scratch space for calculating them
+    private final IdentityHashMap<double[], Double> contributions = new IdentityHashMap<double[], Double>();
+    private final ArrayHVCalculator calculator = new ArrayHVCalculator();
+    private final ArrayList<double[]> archived = new ArrayList<double[]>();
+    private final ArrayList<double[]> pruned = new ArrayList<double[]>();
+    private double limited[][] = new double[0][];
+    private final double corner[];
+
+    public NDTreeArchive(int numObjectives) {
+        this(numObjectives, 0, null);
+    }
+
+    public NDTreeArchive(int numObjectives, int maxSize, double refPoint[]) {
+        super(numObjectives, maxSize, refPoint);
+        corner = new double[numObjectives];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        root = new Node();
+        size = 0;
+        contributions.clear();
+    }
+
+    public boolean isDominated(double point[]) {
+        return size > 0 && isDominated(root, point);
+    }
+
+    private boolean isDominated(Node node, double point[]) {
+        if (weaklyDominates(node.nadir, point))
+            return true;
+        if (!weaklyDominates(node.ideal, point))
+            return false;
+        if (node.isLeaf()) {
+            for (double archived[] : node.points) {
+                if (weaklyDominates(archived, point))
+                    return true;
+            }
+            return false;
+        }
+        for (Node child : node.children) {
+            if (isDominated(child, point))
+                return true;
+        }
+        return false;
+    }
+
+    public double[][] getPoints() {
+        ArrayList<double[]> points = new ArrayList<double[]>(size);
+        collect(root, points);
+        double result[][] = new double[points.size()][];
+        for (int i = 0; i < result.length; i++)
+            result[i] = points.get(i).clone();
+        return result;
+    }
+
+    private void collect(Node node, ArrayList<double[]> points) {
+        if (node.isLeaf()) {
+            points.addAll(node.points);
+        } else {
+            for (Node child : node.children)
+                collect(child, points);
+        }
+    }
+
+    protected void insertNonDominated(double point[]) {
+        pruned.clear();
+        if (size > 0) {
+            prune(root, point);
+            if (root.isEmpty())
+                root = new Node();
+        }
+        insert(root, point, size == 0);
+        size++;
+        if (maxSize > 0) {
+            // the pruned points' boxes lie within point's, so any change they make to the others' contributions is
+            // covered by updating the neighbours of point
+            for (double removed[] : pruned)
+                contributions.remove(removed);
+            updateNeighbours(point);
+            contributions.put(point, contribution(point));
+        }
+    }
+
+    // removes the points in node which point dominates, returning true if any were removed. For a bounded archive the
+    // removed points are added to pruned.
+    private boolean prune(Node node, double point[]) {
+        if (!weaklyDominates(point, node.nadir))
+            return false;
+        if (weaklyDominates(point, node.ideal)) {
+            size -= count(node);
+            if (maxSize > 0)
+                collect(node, pruned);
+            if (node.isLeaf())
+                node.points.clear();
+            else
+                node.children.clear();
+            return true;
+        }
+        boolean removed = false;
+        if (node.isLeaf()) {
+            for (int i = node.points.size() - 1; i >= 0; i--) {
+                if (weaklyDominates(point, node.points.get(i))) {
+                    if (maxSize > 0)
+                        pruned.add(node.points.get(i));
+                    node.points.remove(i);
+                    size--;
+                    removed = true;
+                }
+            }
+        } else {
+            for (int i = node.children.size() - 1; i >= 0; i--) {
+                Node child = node.children.get(i);
+                if (prune(child, point)) {
+                    removed = true;
+                    if (child.isEmpty())
+                        node.children.remove(i);
+                }
+            }
+            collapse(node);
+        }
+        if (removed && !node.isEmpty())
+            node.recalculateBounds();
+        return removed;
+    }
+
+    // replaces an internal node which is left with a single child by that child
+    private void collapse(Node node) {
+        if (!node.isLeaf() && node.children.size() == 1) {
+            Node child = node.children.get(0);
+            node.points = child.points;
+            node.children = child.children;
+        }
+    }
+
+    private int count(Node node) {
+        if (node.isLeaf())
+            return node.points.size();
+        int count = 0;
+        for (Node child : node.children)
+            count += count(child);
+        return count;
+    }
+
+    // adds point below node, going down to the child whose box centre is nearest at each level
+    private void insert(Node node, double point[], boolean first) {
+        node.include(point, first);
+        if (node.isLeaf()) {
+            node.points.add(point);
+            if (node.points.size() > MAX_LEAF_SIZE)
+                split(node);
+            return;
+        }
+        Node nearest = null;
+        double nearestDistance = Double.POSITIVE_INFINITY;
+        for (Node child : node.children) {
+            double distance = 0;
+            for (int i = 0; i < numObjectives; i++) {
+                double d = point[i] - (child.ideal[i] + child.nadir[i]) / 2;
+                distance += d * d;
+            }
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = child;
+            }
+        }
+        insert(nearest, point, false);
+    }
+
+    // turns a full leaf into an internal node with numObjectives+1 leaf children. The first seed is the point furthest
+    // on average from the others, each further seed the point furthest on average from the seeds so far, and every other
+    // point joins the child of its nearest seed.
+    private void split(Node leaf) {
+        ArrayList<double[]> points = leaf.points;
+        int numChildren = Math.min(numObjectives + 1, points.size());
+        ArrayList<double[]> seeds = new ArrayList<double[]>(numChildren);
+        seeds.add(furthest(points, points, seeds));
+        while (seeds.size() < numChildren)
+            seeds.add(furthest(points, seeds, seeds));
+        leaf.children = new ArrayList<Node>(numChildren);
+        for (int c = 0; c < numChildren; c++) {
+            Node child = new Node();
+            child.points.add(seeds.get(c));
+            child.include(seeds.get(c), true);
+            leaf.children.add(child);
+        }
+        for (double point[] : points) {
+            if (seeds.contains(point))
+                continue;
+            int nearest = 0;
+            double nearestDistance = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < numChildren; c++) {
+                double distance = distance(point, seeds.get(c));
+                if (distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nearest = c;
+                }
+            }
+            Node child = leaf.children.get(nearest);
+            child.points.add(point);
+            child.include(point, false);
+        }
+        leaf.points = null;
+    }
+
+    // returns the point in candidates, other than those in excluded, with the greatest average distance to the points
+    // in others
+    private double[] furthest(ArrayList<double[]> candidates, ArrayList<double[]> others, ArrayList<double[]> excluded) {
+        double furthest[] = null;
+        double furthestDistance = -1;
+        for (double candidate[] : candidates) {
+            if (excluded.contains(candidate))
+                continue;
+            double total = 0;
+            for (double other[] : others)
+                total += distance(candidate, other);
+            if (total > furthestDistance) {
+                furthestDistance = total;
+                furthest = candidate;
+            }
+        }
+        return furthest;
+    }
+
+    private double distance(double point1[], double point2[]) {
+        double distance = 0;
+        for (int i = 0; i < numObjectives; i++) {
+            double d = point1[i] - point2[i];
+            distance += d * d;
+        }
+        return Math.sqrt(distance);
+    }
+
+    protected void removePoint(double point[]) {
+        if (remove(root, point)) {
+            size--;
+            if (root.isEmpty())
+                root = new Node();
+            if (maxSize > 0) {
+                contributions.remove(point);
+                updateNeighbours(point);
+            }
+        }
+    }
+
+    private boolean remove(Node node, double point[]) {
+        if (!weaklyDominates(node.ideal, point) || !weaklyDominates(point, node.nadir))
+            return false;
+        boolean removed = false;
+        if (node.isLeaf()) {
+            for (int i = 0; i < node.points.size() && !removed; i++) {
+                if (node.points.get(i) == point) {
+                    node.points.remove(i);
+                    removed = true;
+                }
+            }
+        } else {
+            for (int i = 0; i < node.children.size() && !removed; i++) {
+                Node child = node.children.get(i);
+                if (remove(child, point)) {
+                    removed = true;
+                    if (child.isEmpty())
+                        node.children.remove(i);
+                }
+            }
+            collapse(node);
+        }
+        if (removed && !node.isEmpty())
+            node.recalculateBounds();
+        return removed;
+    }
+
+    // Scans the stored contributions in the order the points are held in the tree. Points which don't dominate the
+    // reference point contribute nothing, so are evicted first.
+    protected double[] leastContributor() {
+        archived.clear();
+        collect(root, archived);
+        double least[] = null;
+        double leastContribution = Double.POSITIVE_INFINITY;
+        for (double point[] : archived) {
+            double contribution = contributions.get(point);
+            if (contribution < leastContribution) {
+                leastContribution = contribution;
+                least = point;
+            }
+        }
+        return least;
+    }
+
+    // Recalculates the contributions of the points whose exclusive region overlaps the box of point, which has just
+    // been added to or removed from the archive. That overlap lies in the box below the component-wise minimum of the
+    // two points, so if some other point dominates that corner the contribution can't have changed.
+    private void updateNeighbours(double point[]) {
+        archived.clear();
+        collect(root, archived);
+        for (double other[] : archived) {
+            if (other == point)
+                continue;
+            for (int i = 0; i < numObjectives; i++)
+                corner[i] = Math.min(point[i], other[i]);
+            if (weaklyDominates(corner, refPoint) && !isDominatedExcept(root, corner, other, point))
+                contributions.put(other, contribution(other));
+        }
+    }
+
+    // returns true if some point below node other than except1 and except2 is at least as good as point in every
+    // objective
+    private boolean isDominatedExcept(Node node, double point[], double except1[], double except2[]) {
+        if (!weaklyDominates(node.ideal, point))
+            return false;
+        if (node.isLeaf()) {
+            for (double candidate[] : node.points) {
+                if (candidate != except1 && candidate != except2 && weaklyDominates(candidate, point))
+                    return true;
+            }
+            return false;
+        }
+        for (Node child : node.children) {
+            if (isDominatedExcept(child, point, except1, except2))
+                return true;
+        }
+        return false;
+    }
+
+    // the volume of point's box minus the volume of the rest of the archive (in archived) limited to that box
+    private double contribution(double point[]) {
+        if (!weaklyDominates(point, refPoint))
+            return 0;
+        double contribution = 1;
+        for (int i = 0; i < numObjectives; i++)
+            contribution *= point[i] - refPoint[i];
+        if (limited.length < archived.size())
+            limited = new double[Math.max(archived.size(), limited.length * 2)][numObjectives];
+        int m = 0;
+        for (double other[] : archived) {
+            if (other == point)
+                continue;
+            for (int i = 0; i < numObjectives; i++)
+                limited[m][i] = Math.min(point[i], other[i]);
+            m++;
+        }
+        return contribution - calculator.getVolume(limited, m, refPoint);
+    }
+}
@@ -0,0 +1,95 @@
+package tools.hypervolume;
+
+// An archive of mutually non-dominated points (objectives are maximised, as elsewhere in tools.hypervolume). A point is
+// only added if no point in the archive is at least as good in every objective, and adding it removes every point it
+// is at least as good as, so the archive never holds dominated or duplicate points.
+// An archive may be given a maximum size, in which case adding a point to a full archive evicts the point which
+// contributes least to the hypervolume of the archive relative to the given reference point (possibly the point just
+// added).
+// Use create() to get the most suitable implementation for the number of objectives: SortedListArchive for two
+// objectives and NDTreeArchive otherwise. Neither is safe for use by more than one thread at a time.
+
+public abstract class ParetoArchive {
+
+    protected final int numObjectives;
+    protected final int maxSize;       // 0 means unbounded
+    protected final double refPoint[]; // reference point for the hypervolume contributions used when evicting
+
+    protected ParetoArchive(int numObjectives, int maxSize, double refPoint[]) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("Archive size must not be negative: " + maxSize);
+        if (maxSize > 0 && (refPoint == null || refPoint.length != numObjectives))
+            throw new IllegalArgumentException("A bounded archive needs a reference point with " + numObjectives + " objectives");
+        this.numObjectives = numObjectives;
+        this.maxSize = maxSize;
+        this.refPoint = (refPoint == null) ? null : refPoint.clone();
+    }
+
+    // returns an unbounded archive suited to the number of objectives
+    public static ParetoArchive create(int numObjectives) {
+        return create(numObjectives, 0, null);
+    }
+
+    // returns an archive suited to the number of objectives which holds at most maxSize points (or any number if maxSize
+    // is 0), evicting by hypervolume contribution relative to refPoint
+    public static ParetoArchive create(int numObjectives, int maxSize, double refPoint[]) {
+        if (numObjectives == 2)
+            return new SortedListArchive(maxSize, refPoint);
+        return new NDTreeArchive(numObjectives, maxSize, refPoint);
+    }
+
+    public int getNumObjectives() {
+        return numObjectives;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    // returns the number of points in the archive
+    public abstract int size();
+
+    // returns true if some point in the archive is at least as good as point in every objective
+    public abstract boolean isDominated(double point[]);
+
+    // returns copies of the points in the archive
+    public abstract double[][] getPoints();
+
+    public abstract void clear();
+
+    // adds a point which isn't dominated by the archive, first removing the points it dominates
+    protected abstract void insertNonDominated(double point[]);
+
+    // removes a point which is in the archive (the same array, not just an equal one)
+    protected abstract void removePoint(double point[]);
+
+    // returns the point in the archive with the smallest hypervolume contribution relative to refPoint
+    protected abstract double[] leastContributor();
+
+    // adds a copy of point to the archive unless it is dominated, removing any points it dominates and then evicting
+    // the least contributor if the archive is over its maximum size. Returns true if the point is in the archive
+    // afterwards.
+    public boolean add(double point[]) {
+        if (point.length != numObjectives)
+            throw new IllegalArgumentException("Point has " + point.length + " objectives, archive has " + numObjectives);
+        if (isDominated(point))
+            return false;
+        double copy[] = point.clone();
+        insertNonDominated(copy);
+        if (maxSize > 0 && size() > maxSize) {
+            double evicted[] = leastContributor();
+            removePoint(evicted);
+            return evicted != copy;
+        }
+        return true;
+    }
+
+    // returns true if point1 is at least as good as point2 in every objective
+    protected static boolean weaklyDominates(double point1[], double point2[]) {
+        for (int i = 0; i < point1.length; i++) {
+            if (point1[i] < point2[i])
+                return false;
+        }
+        return true;
+    }
+}
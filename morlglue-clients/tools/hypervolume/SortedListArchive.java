@@ -0,0 +1,75 @@
+package tools.hypervolume;
+
+// A Pareto archive for two objectives. Mutually non-dominated points form a staircase - sorted by increasing first
+// objective their second objective decreases - so they are kept in a Staircase2D, with each point's array as its
+// payload. Checking whether a point is dominated only needs the archive point with the next largest (or equal) first
+// objective, so it takes O(log n) time, and adding a point takes O(log n) plus a shift of the later points.
+// Each point's hypervolume contribution is the rectangle between it and its neighbours on the staircase, so finding the
+// least contributor when the archive is over its maximum size takes a single O(n) pass.
+
+public class SortedListArchive extends ParetoArchive {
+
+    Staircase2D<double[]> staircase = new Staircase2D<double[]>();
+
+    public SortedListArchive() {
+        this(0, null);
+    }
+
+    public SortedListArchive(int maxSize, double refPoint[]) {
+        super(2, maxSize, refPoint);
+        if (refPoint != null)
+            staircase.setReferencePoint(refPoint[0], refPoint[1]);
+    }
+
+    public int size() {
+        return staircase.size();
+    }
+
+    public void clear() {
+        staircase.clear();
+    }
+
+    public boolean isDominated(double point[]) {
+        return staircase.isDominated(point[0], point[1]);
+    }
+
+    public double[][] getPoints() {
+        double points[][] = new double[staircase.size()][];
+        for (int i = 0; i < points.length; i++)
+            points[i] = staircase.getPayload(i).clone();
+        return points;
+    }
+
+    protected void insertNonDominated(double point[]) {
+        staircase.insert(point[0], point[1], point);
+    }
+
+    protected void removePoint(double point[]) {
+        staircase.remove(point[0]);
+    }
+
+    protected double[] leastContributor() {
+        double least[] = null;
+        double leastContribution = Double.POSITIVE_INFINITY;
+        int size = staircase.size();
+        for (int i = 0; i < size; i++) {
+            // the first objective of the previous point and the second objective of the next one, or the reference point's
+            double left = (i > 0) ? Math.max(staircase.getX(i - 1), refPoint[0]) : refPoint[0];
+            double below = (i + 1 < size) ? staircase.getY(i + 1) : refPoint[1];
+            double contribution = contribution(staircase.getPayload(i), left, below);
+            if (contribution < leastContribution) {
+                leastContribution = contribution;
+                least = staircase.getPayload(i);
+            }
+        }
+        return least;
+    }
+
+    // the area dominated by point and not by its neighbours, given the first objective of the neighbour to the left and
+    // the second objective of the neighbour to the right
+    private double contribution(double point[], double left, double below) {
+        if (point[0] < refPoint[0] || point[1] < refPoint[1])
+            return 0;
+        return (point[0] - left) * (point[1] - Math.max(below, refPoint[1]));
+    }
+}
@@ -0,0 +1,171 @@
+package tools.hypervolume;
+
+import java.util.Arrays;
+
+// The non-dominated front of a set of two-objective points (objectives maximised), kept as a staircase - sorted by
+// increasing first objective, the second objective decreases - in parallel primitive arrays, so no coordinates are
+// boxed. Points are found by binary search, so checking whether a point is dominated takes O(log n) time, and adding a
+// point takes O(log n) plus a shift of the later points along the arrays. The arrays grow as needed and are kept by
+// clear(), so a staircase which is reused does no allocation once it has held its largest front.
+// Values are compared as primitives, so -0.0 and 0.0 are treated as the same value.
+// Each point can carry a payload (eg the point's own array, or an id), which is returned with it. This is the single
+// implementation of the two-objective front used by ArrayHVCalculator, IncrementalHVCalculator and SortedListArchive.
+
+public class Staircase2D<T> {
+
+    double xs[] = new double[16];   // first objectives, increasing
+    double ys[] = new double[16];   // second objectives, decreasing
+    Object payloads[] = new Object[16];
+    int size = 0;
+    Object removed[] = new Object[16]; // the payloads of the points removed by the last insert
+    int numRemoved = 0;
+    double refX = 0;                // the reference point, which bounds the areas returned by insert
+    double refY = 0;
+
+    public Staircase2D() {
+    }
+
+    public Staircase2D(double refX, double refY) {
+        setReferencePoint(refX, refY);
+    }
+
+    public void setReferencePoint(double refX, double refY) {
+        this.refX = refX;
+        this.refY = refY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(payloads, 0, size, null);
+        size = 0;
+        numRemoved = 0;
+    }
+
+    // makes room for at least capacity points
+    public void ensureCapacity(int capacity) {
+        if (xs.length < capacity) {
+            int length = Math.max(capacity, xs.length * 2);
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+            payloads = Arrays.copyOf(payloads, length);
+        }
+    }
+
+    public double getX(int i) {
+        return xs[i];
+    }
+
+    public double getY(int i) {
+        return ys[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getPayload(int i) {
+        return (T) payloads[i];
+    }
+
+    // returns the index of the point whose first objective is x, or -1 if there is none
+    public int indexOf(double x) {
+        int i = ceiling(x);
+        return (i < size && xs[i] == x) ? i : -1;
+    }
+
+    // returns the index of the first point whose first objective is at least x, or size if there is none
+    int ceiling(double x) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (xs[mid] < x)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    // returns true if some point on the staircase is at least as good as (x, y) in both objectives
+    public boolean isDominated(double x, double y) {
+        int i = ceiling(x);
+        return i < size && ys[i] >= y;
+    }
+
+    public double insert(double x, double y) {
+        return insert(x, y, null);
+    }
+
+    // Adds the point (x, y) with its payload unless it is dominated, removing the points it dominates (whose payloads
+    // are then given by getRemoved), and returns the area it adds to the region dominated by the staircase (and the
+    // reference point). Walks left from x over the points the new point dominates - between consecutive points the
+    // staircase's height is that of the point to the right, and the new point raises it to y.
+    public double insert(double x, double y, T payload) {
+        numRemoved = 0;
+        int i = ceiling(x);
+        if (i < size && ys[i] >= y)
+            return 0; // dominated
+        double height = (i < size) ? ys[i] : refY;
+        // a point with the same first objective is dominated by the new point, but its height still applies just left of x
+        int end = (i < size && xs[i] == x) ? i + 1 : i;
+        double right = x;
+        double added = 0;
+        int j = i - 1;
+        while (j >= 0 && ys[j] <= y) {
+            added += (right - xs[j]) * (y - height);
+            height = ys[j];
+            right = xs[j];
+            j--;
+        }
+        double left = (j >= 0) ? xs[j] : refX;
+        added += (right - left) * (y - height);
+        replace(j + 1, end, x, y, payload);
+        return added;
+    }
+
+    // the number of points removed by the last insert
+    public int getNumRemoved() {
+        return numRemoved;
+    }
+
+    // the payload of the i'th point removed by the last insert
+    @SuppressWarnings("unchecked")
+    public T getRemoved(int i) {
+        return (T) removed[i];
+    }
+
+    // removes the point whose first objective is x, and returns its payload (or null if there is no such point)
+    public T remove(double x) {
+        int i = indexOf(x);
+        if (i < 0)
+            return null;
+        T payload = getPayload(i);
+        System.arraycopy(xs, i + 1, xs, i, size - i - 1);
+        System.arraycopy(ys, i + 1, ys, i, size - i - 1);
+        System.arraycopy(payloads, i + 1, payloads, i, size - i - 1);
+        size--;
+        payloads[size] = null;
+        return payload;
+    }
+
+    // replaces the points in [first, end) by the single point (x, y), recording the payloads of the points replaced
+    private void replace(int first, int end, double x, double y, T payload) {
+        numRemoved = end - first;
+        if (removed.length < numRemoved)
+            removed = new Object[Math.max(numRemoved, removed.length * 2)];
+        System.arraycopy(payloads, first, removed, 0, numRemoved);
+        int newSize = size - numRemoved + 1;
+        ensureCapacity(newSize);
+        int tail = size - end;
+        System.arraycopy(xs, end, xs, first + 1, tail);
+        System.arraycopy(ys, end, ys, first + 1, tail);
+        System.arraycopy(payloads, end, payloads, first + 1, tail);
+        for (int k = newSize; k < size; k++)
+            payloads[k] = null;
+        xs[first] = x;
+        ys[first] = y;
+        payloads[first] = payload;
+        size = newSize;
+    }
+}
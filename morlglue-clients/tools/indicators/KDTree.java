@@ -0,0 +1,229 @@
+package tools.indicators;
+
+import java.util.Arrays;
+
+// A k-d tree over a set of points, used by QualityIndicators to find for a query point the best matching point in a
+// front without comparing it to every point.
+// The tree is stored implicitly in flat arrays: the points are reordered so that the root of the subtree holding the
+// points in positions [lo, hi) is the median position (lo + hi) / 2, splitting on the objective with the greatest spread,
+// with the smaller points before it and the larger ones after. Each subtree root also records the bounding box of its
+// subtree, which gives a lower bound on the measure for any point in the subtree so it can be skipped when it can't
+// beat the best point found so far. The measures supported are Euclidean distance, and the additive and multiplicative
+// epsilon (the smallest amount a point has to be shifted or scaled by to be at least as good as the query point in every
+// objective, with objectives maximised).
+// build() reuses the tree's arrays when they are large enough, so a tree can be rebuilt for front after front without
+// allocating. Queries don't modify the tree, so once built it can be queried from several threads at once.
+
+public class KDTree {
+
+    // constants to label the different measures
+    public static final int EUCLIDEAN = 0;
+    public static final int ADDITIVE_EPSILON = 1;
+    public static final int MULTIPLICATIVE_EPSILON = 2;
+
+    private final int numObjectives;
+    private int numPoints = 0;
+    private double coords[] = new double[0];  // the points in tree order, numObjectives values each
+    private double boxMin[] = new double[0];  // the bounding box of the subtree rooted at each position
+    private double boxMax[] = new double[0];
+    private int splitObjective[] = new int[0]; // the objective the subtree rooted at each position is split on
+    private int order[] = new int[0];          // scratch permutation used while building
+    private double source[][];                 // the points being built from, only set while building
+
+    public KDTree(int numObjectives) {
+        this.numObjectives = numObjectives;
+    }
+
+    public KDTree(double points[][]) {
+        this(points[0].length);
+        build(points, points.length);
+    }
+
+    public int getNumObjectives() {
+        return numObjectives;
+    }
+
+    public int size() {
+        return numPoints;
+    }
+
+    // returns a String representing the measure
+    public static String measureToString(int measure) {
+        switch (measure) {
+            case EUCLIDEAN: return "Euclidean";
+            case ADDITIVE_EPSILON: return "Additive epsilon";
+            case MULTIPLICATIVE_EPSILON: return "Multiplicative epsilon";
+            default: return "Unknown";
+        }
+    }
+
+    // (re)builds the tree from the first numPoints rows of points, which are copied
+    public void build(double points[][], int numPoints) {
+        this.numPoints = numPoints;
+        if (order.length < numPoints) {
+            coords = new double[numPoints * numObjectives];
+            boxMin = new double[numPoints * numObjectives];
+            boxMax = new double[numPoints * numObjectives];
+            splitObjective = new int[numPoints];
+            order = new int[numPoints];
+        }
+        for (int i = 0; i < numPoints; i++) {
+            if (points[i].length != numObjectives)
+                throw new IllegalArgumentException("Point " + i + " has " + points[i].length + " objectives, tree has " + numObjectives);
+            order[i] = i;
+        }
+        source = points;
+        buildSubtree(0, numPoints);
+        for (int i = 0; i < numPoints; i++)
+            System.arraycopy(points[order[i]], 0, coords, i * numObjectives, numObjectives);
+        source = null;
+    }
+
+    private void buildSubtree(int lo, int hi) {
+        if (lo >= hi)
+            return;
+        int mid = (lo + hi) >>> 1;
+        int box = mid * numObjectives;
+        Arrays.fill(boxMin, box, box + numObjectives, Double.POSITIVE_INFINITY);
+        Arrays.fill(boxMax, box, box + numObjectives, Double.NEGATIVE_INFINITY);
+        for (int p = lo; p < hi; p++) {
+            double point[] = source[order[p]];
+            for (int i = 0; i < numObjectives; i++) {
+                if (point[i] < boxMin[box + i])
+                    boxMin[box + i] = point[i];
+                if (point[i] > boxMax[box + i])
+                    boxMax[box + i] = point[i];
+            }
+        }
+        int split = 0;
+        for (int i = 1; i < numObjectives; i++) {
+            if (boxMax[box + i] - boxMin[box + i] > boxMax[box + split] - boxMin[box + split])
+                split = i;
+        }
+        splitObjective[mid] = split;
+        select(lo, hi, mid, split);
+        buildSubtree(lo, mid);
+        buildSubtree(mid + 1, hi);
+    }
+
+    // partially sorts order[lo..hi) on the given objective so that position k holds the point which would be there if it
+    // were fully sorted, with no larger values before it and no smaller ones after (quickselect)
+    private void select(int lo, int hi, int k, int objective) {
+        hi--;
+        while (hi > lo) {
+            double pivot = source[order[(lo + hi) >>> 1]][objective];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (source[order[i]][objective] < pivot)
+                    i++;
+                while (source[order[j]][objective] > pivot)
+                    j--;
+                if (i <= j) {
+                    int t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+    // returns the Euclidean distance from query to the nearest point in the tree
+    public double nearestDistance(double query[]) {
+        return Math.sqrt(search(0, numPoints, query, EUCLIDEAN, Double.POSITIVE_INFINITY));
+    }
+
+    // returns the smallest, over the points in the tree, of the largest amount by which query beats the point in any
+    // objective (negative if some point beats query in every objective)
+    public double minAdditiveEpsilon(double query[]) {
+        return search(0, numPoints, query, ADDITIVE_EPSILON, Double.POSITIVE_INFINITY);
+    }
+
+    // returns the smallest, over the points in the tree, of the largest ratio of query's value to the point's value in
+    // any objective. All values must be positive.
+    public double minMultiplicativeEpsilon(double query[]) {
+        return search(0, numPoints, query, MULTIPLICATIVE_EPSILON, Double.POSITIVE_INFINITY);
+    }
+
+    // returns the smaller of best and the smallest value of the measure (squared, for EUCLIDEAN) between query and the
+    // points in positions [lo, hi)
+    private double search(int lo, int hi, double query[], int measure, double best) {
+        if (lo >= hi)
+            return best;
+        int mid = (lo + hi) >>> 1;
+        if (lowerBound(mid, query, measure) >= best)
+            return best;
+        double value = measure(mid, query, measure);
+        if (value < best)
+            best = value;
+        // search the side most likely to hold the best point first - for distance that is the side the query point lies
+        // on, and for the epsilon measures it is the side with the larger values
+        int split = splitObjective[mid];
+        if (measure == EUCLIDEAN && query[split] < coords[mid * numObjectives + split]) {
+            best = search(lo, mid, query, measure, best);
+            best = search(mid + 1, hi, query, measure, best);
+        } else {
+            best = search(mid + 1, hi, query, measure, best);
+            best = search(lo, mid, query, measure, best);
+        }
+        return best;
+    }
+
+    private double measure(int position, double query[], int measure) {
+        int point = position * numObjectives;
+        double value = (measure == EUCLIDEAN) ? 0 : Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < numObjectives; i++) {
+            double x = coords[point + i];
+            switch (measure) {
+                case EUCLIDEAN: {
+                    double d = query[i] - x;
+                    value += d * d;
+                    break;
+                }
+                case ADDITIVE_EPSILON: {
+                    value = Math.max(value, query[i] - x);
+                    break;
+                }
+                default: {
+                    value = Math.max(value, query[i] / x);
+                }
+            }
+        }
+        return value;
+    }
+
+    // a lower bound on the measure between query and any point in the subtree rooted at position
+    private double lowerBound(int position, double query[], int measure) {
+        int box = position * numObjectives;
+        double bound = (measure == EUCLIDEAN) ? 0 : Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < numObjectives; i++) {
+            switch (measure) {
+                case EUCLIDEAN: {
+                    double d = 0;
+                    if (query[i] < boxMin[box + i])
+                        d = boxMin[box + i] - query[i];
+                    else if (query[i] > boxMax[box + i])
+                        d = query[i] - boxMax[box + i];
+                    bound += d * d;
+                    break;
+                }
+                case ADDITIVE_EPSILON: {
+                    bound = Math.max(bound, query[i] - boxMax[box + i]);
+                    break;
+                }
+                default: {
+                    bound = Math.max(bound, query[i] / boxMax[box + i]);
+                }
+            }
+        }
+        return bound;
+    }
+}
@@ -0,0 +1,168 @@
+package tools.indicators;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Quality indicators which compare an approximation of a Pareto front (such as the set of policies an agent has found)
+// with a reference front (such as the true Pareto front), with objectives maximised:
+//  - ADDITIVE_EPSILON: the largest, over the reference points, of the smallest amount any approximation point would have
+//    to be improved by in every objective to be at least as good as that reference point. Approximation points which are
+//    better than a reference point count as 0 rather than negative, as in DemoExperiment, so 0 means every reference
+//    point is matched.
+//  - MULTIPLICATIVE_EPSILON: as ADDITIVE_EPSILON, but with the factor each approximation point would have to be scaled by,
+//    so 1 means every reference point is matched. All values must be positive.
+//  - GENERATIONAL_DISTANCE: the mean Euclidean distance from each approximation point to its nearest reference point.
+//  - INVERTED_GENERATIONAL_DISTANCE: the mean Euclidean distance from each reference point to its nearest approximation
+//    point.
+// An instance holds a reference front, with a KDTree over it for GENERATIONAL_DISTANCE, and a KDTree which is rebuilt
+// over each approximation for the other indicators, so scoring a front costs about O((n + m) log m) rather than O(n*m).
+// Once an instance has seen its largest approximation, calculate() doesn't allocate. An instance must only be used by
+// one thread at a time, but calculateAll() scores many approximations against the reference front in parallel.
+// The reference front must not be empty. Epsilon indicators of an empty approximation are Double.MAX_VALUE (as in
+// DemoExperiment's original calculation, so its spreadsheets are unchanged), and distances from an empty set are NaN.
+
+public class QualityIndicators {
+
+    // constants to label the different indicators
+    public static final int ADDITIVE_EPSILON = 0;
+    public static final int MULTIPLICATIVE_EPSILON = 1;
+    public static final int GENERATIONAL_DISTANCE = 2;
+    public static final int INVERTED_GENERATIONAL_DISTANCE = 3;
+
+    private final double reference[][];
+    private KDTree referenceTree;   // built when first needed, and shared by the copies made for calculateAll
+    private final KDTree approximationTree;
+
+    public QualityIndicators(double referenceFront[][]) {
+        this(referenceFront, null);
+    }
+
+    private QualityIndicators(double referenceFront[][], KDTree referenceTree) {
+        if (referenceFront.length == 0)
+            throw new IllegalArgumentException("Quality indicators need a reference front with at least one point");
+        reference = referenceFront;
+        this.referenceTree = referenceTree;
+        approximationTree = new KDTree(referenceFront[0].length);
+    }
+
+    private KDTree getReferenceTree() {
+        if (referenceTree == null)
+            referenceTree = new KDTree(reference);
+        return referenceTree;
+    }
+
+    // returns a String representing the indicator
+    public static String indicatorToString(int indicator) {
+        switch (indicator) {
+            case ADDITIVE_EPSILON: return "Additive epsilon";
+            case MULTIPLICATIVE_EPSILON: return "Multiplicative epsilon";
+            case GENERATIONAL_DISTANCE: return "GD";
+            case INVERTED_GENERATIONAL_DISTANCE: return "IGD";
+            default: return "Unknown";
+        }
+    }
+
+    // returns the indicator for the first numPoints points of approximation
+    public double calculate(int indicator, double approximation[][], int numPoints) {
+        switch (indicator) {
+            case ADDITIVE_EPSILON: return additiveEpsilon(approximation, numPoints);
+            case MULTIPLICATIVE_EPSILON: return multiplicativeEpsilon(approximation, numPoints);
+            case GENERATIONAL_DISTANCE: return generationalDistance(approximation, numPoints);
+            case INVERTED_GENERATIONAL_DISTANCE: return invertedGenerationalDistance(approximation, numPoints);
+            default: throw new IllegalArgumentException("Unknown indicator: " + indicator);
+        }
+    }
+
+    public double additiveEpsilon(double approximation[][], int numPoints) {
+        if (numPoints == 0)
+            return Double.MAX_VALUE;
+        approximationTree.build(approximation, numPoints);
+        double score = 0.0;
+        for (double target[] : reference)
+            score = Math.max(score, approximationTree.minAdditiveEpsilon(target));
+        return score;
+    }
+
+    public double multiplicativeEpsilon(double approximation[][], int numPoints) {
+        if (numPoints == 0)
+            return Double.MAX_VALUE;
+        approximationTree.build(approximation, numPoints);
+        double score = 1.0;
+        for (double target[] : reference)
+            score = Math.max(score, approximationTree.minMultiplicativeEpsilon(target));
+        return score;
+    }
+
+    public double generationalDistance(double approximation[][], int numPoints) {
+        double total = 0;
+        KDTree tree = getReferenceTree();
+        for (int i = 0; i < numPoints; i++)
+            total += tree.nearestDistance(approximation[i]);
+        return total / numPoints;
+    }
+
+    public double invertedGenerationalDistance(double approximation[][], int numPoints) {
+        if (numPoints == 0)
+            return Double.NaN;
+        approximationTree.build(approximation, numPoints);
+        double total = 0;
+        for (double target[] : reference)
+            total += approximationTree.nearestDistance(target);
+        return total / reference.length;
+    }
+
+    // returns the indicator for each of approximations, calculated on numThreads threads
+    public double[] calculateAll(final int indicator, final double approximations[][][], int numThreads) {
+        final double scores[] = new double[approximations.length];
+        int numTasks = Math.min(numThreads, approximations.length);
+        final KDTree sharedTree = (indicator == GENERATIONAL_DISTANCE) ? getReferenceTree() : null;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(numTasks, 1));
+        try {
+            // each task scores every numTasks'th approximation with its own instance, sharing the reference tree
+            ArrayList<Future<Object>> tasks = new ArrayList<Future<Object>>();
+            for (int t = 0; t < numTasks; t++) {
+                final int first = t;
+                final int stride = numTasks;
+                final QualityIndicators indicators = new QualityIndicators(reference, sharedTree);
+                tasks.add(pool.submit(new Callable<Object>() {
+                    public Object call() {
+                        for (int i = first; i < approximations.length; i += stride)
+                            scores[i] = indicators.calculate(indicator, approximations[i], approximations[i].length);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> task : tasks)
+                task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return scores;
+    }
+
+    // convenience methods for one-off calculations
+
+    public static double additiveEpsilon(double referenceFront[][], double approximation[][], int numPoints) {
+        return new QualityIndicators(referenceFront).additiveEpsilon(approximation, numPoints);
+    }
+
+    public static double multiplicativeEpsilon(double referenceFront[][], double approximation[][], int numPoints) {
+        return new QualityIndicators(referenceFront).multiplicativeEpsilon(approximation, numPoints);
+    }
+
+    public static double generationalDistance(double referenceFront[][], double approximation[][], int numPoints) {
+        return new QualityIndicators(referenceFront).generationalDistance(approximation, numPoints);
+    }
+
+    public static double invertedGenerationalDistance(double referenceFront[][], double approximation[][], int numPoints) {
+        return new QualityIndicators(referenceFront).invertedGenerationalDistance(approximation, numPoints);
+    }
+}
@@ -0,0 +1,87 @@
+// A java.util.Random whose complete state can be saved and restored, so that environments using it can be rewound
+// (see env.interfaces.RestorableEnvironment). java.util.Random keeps its state in private fields, so this class
+// implements the same 48-bit linear congruential generator and Gaussian caching in fields of its own - given the same
+// seed it produces exactly the same sequence of values as a java.util.Random, so it can replace one without changing
+// the results of an experiment.
+// Unlike java.util.Random it isn't thread-safe, as each environment has a generator of its own.
+
+package tools.random;
+
+import java.util.Random;
+
+public class RestorableRandom extends Random
+{
+	private static final long serialVersionUID = 1L;
+
+	// the number of longs written by saveSnapshot
+	public static final int SNAPSHOT_SIZE = 3;
+
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	// These are set by setSeed, which Random's constructor calls before the fields of this class are initialised - so
+	// they mustn't be given initial values here, as that would overwrite the seed.
+	private long state;
+	private boolean haveNextNextGaussian;
+	private double nextNextGaussian;
+
+	public RestorableRandom()
+	{
+		super();
+	}
+
+	public RestorableRandom(long seed)
+	{
+		super(seed);
+	}
+
+	public void setSeed(long seed)
+	{
+		state = (seed ^ MULTIPLIER) & MASK;
+		haveNextNextGaussian = false;
+	}
+
+	protected int next(int bits)
+	{
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int)(state >>> (48 - bits));
+	}
+
+	// the polar method, exactly as used by java.util.Random
+	public double nextGaussian()
+	{
+		if (haveNextNextGaussian)
+		{
+			haveNextNextGaussian = false;
+			return nextNextGaussian;
+		}
+		double v1, v2, s;
+		do
+		{
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+		nextNextGaussian = v2 * multiplier;
+		haveNextNextGaussian = true;
+		return v1 * multiplier;
+	}
+
+	// writes the generator's state into SNAPSHOT_SIZE elements of _snapshot, starting at _offset
+	public void saveSnapshot(long _snapshot[], int _offset)
+	{
+		_snapshot[_offset] = state;
+		_snapshot[_offset + 1] = haveNextNextGaussian ? 1 : 0;
+		_snapshot[_offset + 2] = Double.doubleToRawLongBits(nextNextGaussian);
+	}
+
+	// returns the generator to the state saved in _snapshot at _offset
+	public void restoreSnapshot(long _snapshot[], int _offset)
+	{
+		state = _snapshot[_offset];
+		haveNextNextGaussian = _snapshot[_offset + 1] != 0;
+		nextNextGaussian = Double.longBitsToDouble(_snapshot[_offset + 2]);
+	}
+}
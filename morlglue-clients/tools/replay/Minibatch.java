@@ -0,0 +1,47 @@
+// A minibatch of transitions sampled from a ReplayMemory, held as parallel primitive arrays in the same layout as the
+// memory itself, so that it can be passed straight to LookupTable.calculateBatchErrors and LookupTable.updateBatch.
+// Sample i is the transition stored at indices[i] in the memory; its rewards and TD errors for objective o are at
+// [i * numObjectives + o], and weights[i] is its importance sampling weight (always 1 for uniform sampling).
+// A Minibatch is refilled by every call to ReplayMemory.sample, so one can be reused for the whole of a run.
+
+package tools.replay;
+
+public class Minibatch
+{
+	public final int numObjectives;
+	public final int indices[];
+	public final int states[];
+	public final int actions[];
+	public final double rewards[];
+	public final int nextStates[];
+	public final boolean terminal[];
+	public final double weights[];
+	public final double errors[]; // filled in by the learner, and read by ReplayMemory.updatePriorities
+	int size = 0;
+
+	public Minibatch(int capacity, int numObjectives)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Minibatch capacity must be at least 1: " + capacity);
+		this.numObjectives = numObjectives;
+		indices = new int[capacity];
+		states = new int[capacity];
+		actions = new int[capacity];
+		rewards = new double[capacity * numObjectives];
+		nextStates = new int[capacity];
+		terminal = new boolean[capacity];
+		weights = new double[capacity];
+		errors = new double[capacity * numObjectives];
+	}
+
+	public int getCapacity()
+	{
+		return indices.length;
+	}
+
+	// the number of samples filled in by the last call to ReplayMemory.sample
+	public int size()
+	{
+		return size;
+	}
+}
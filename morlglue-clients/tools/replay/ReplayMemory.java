@@ -0,0 +1,202 @@
+// An experience replay memory of (state, action, reward vector, next state, terminal) transitions, so that a learner
+// can learn from each transition many times rather than once. Transitions are held in a fixed-size ring buffer as
+// parallel primitive arrays (structure-of-arrays, with the rewards of transition i at [i * numObjectives + o]), so
+// adding a transition never allocates, and once the memory is full each new transition replaces the oldest one.
+// Minibatches are sampled with replacement, either UNIFORM-ly or PRIORITISED by TD error as in prioritised experience
+// replay (Schaul et al, 2016). With prioritised sampling, each transition's priority is (|error| + PRIORITY_OFFSET)^alpha,
+// where |error| is the largest absolute TD error over the objectives in its last update (so no objective's errors are
+// swamped by another's), and new transitions get the highest priority seen so far so that each is replayed at least
+// once soon after it is added. Priorities are held in a SumTree, so sampling and updating them take O(log n).
+// The bias from prioritised sampling is corrected by importance sampling weights (n * P(i))^-beta, normalised by the
+// largest weight in the minibatch rather than over the whole memory.
+
+package tools.replay;
+
+import java.util.Random;
+
+public class ReplayMemory
+{
+	// constants to label the sampling modes
+	public static final int UNIFORM = 0;
+	public static final int PRIORITISED = 1;
+
+	// added to the TD error of every transition, so that none has a priority of 0 and is never replayed again
+	public static final double PRIORITY_OFFSET = 1e-6;
+
+	// the default exponents for prioritised sampling, as used by Schaul et al for proportional prioritisation
+	public static final double DEFAULT_ALPHA = 0.6;
+	public static final double DEFAULT_BETA = 0.4;
+
+	private final int capacity;
+	private final int numObjectives;
+	private final int sampling;
+	private final int states[];
+	private final int actions[];
+	private final double rewards[];
+	private final int nextStates[];
+	private final boolean terminal[];
+	private int next = 0; // position in the ring buffer for the next transition
+	private int size = 0;
+
+	// prioritised sampling only
+	private final SumTree priorities;
+	private double alpha = DEFAULT_ALPHA; // how strongly sampling is prioritised - 0 is uniform
+	private double beta = DEFAULT_BETA; // how fully the importance sampling weights correct for the prioritisation - 1 is fully
+	private double maxPriority = 1.0;
+
+	private final Random random = new Random(471);
+
+	public ReplayMemory(int capacity, int numObjectives, int sampling)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Replay memory capacity must be at least 1: " + capacity);
+		if (sampling != UNIFORM && sampling != PRIORITISED)
+			throw new IllegalArgumentException("Undefined sampling mode " + sampling);
+		this.capacity = capacity;
+		this.numObjectives = numObjectives;
+		this.sampling = sampling;
+		states = new int[capacity];
+		actions = new int[capacity];
+		rewards = new double[capacity * numObjectives];
+		nextStates = new int[capacity];
+		terminal = new boolean[capacity];
+		priorities = (sampling == PRIORITISED) ? new SumTree(capacity) : null;
+	}
+
+	// returns a String representing the sampling mode
+	public static String samplingToString(int sampling)
+	{
+		switch (sampling)
+		{
+			case UNIFORM: return "uniform";
+			case PRIORITISED: return "prioritised";
+			default: return "Unknown";
+		}
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public int getNumObjectives()
+	{
+		return numObjectives;
+	}
+
+	public int getSampling()
+	{
+		return sampling;
+	}
+
+	// the number of transitions currently held
+	public int size()
+	{
+		return size;
+	}
+
+	// reseed the random number generator used for sampling, eg so that each of a set of trials is reproducible
+	public void setSeed(long seed)
+	{
+		random.setSeed(seed);
+	}
+
+	// sets the exponents used by prioritised sampling for the priorities (alpha) and importance sampling weights (beta)
+	public void setExponents(double alpha, double beta)
+	{
+		this.alpha = alpha;
+		this.beta = beta;
+	}
+
+	// discards every transition
+	public void clear()
+	{
+		next = 0;
+		size = 0;
+		maxPriority = 1.0;
+		if (priorities != null)
+			priorities.clear();
+	}
+
+	// Stores a transition, replacing the oldest one if the memory is full, and returns its index. The reward values are
+	// copied, so the same array (eg a Reward's doubleArray) can be passed in on every step.
+	public int add(int state, int action, double reward[], int nextState, boolean isTerminal)
+	{
+		int index = next;
+		states[index] = state;
+		actions[index] = action;
+		System.arraycopy(reward, 0, rewards, index * numObjectives, numObjectives);
+		nextStates[index] = nextState;
+		terminal[index] = isTerminal;
+		if (priorities != null)
+			priorities.set(index, maxPriority);
+		next = (next + 1 == capacity) ? 0 : next + 1;
+		if (size < capacity)
+			size++;
+		return index;
+	}
+
+	// Fills batch with up to its capacity of transitions sampled with replacement, and returns the number sampled (which
+	// is only less than the capacity if the memory is empty). Prioritised sampling is stratified - the total priority
+	// is split into equal segments and one transition is sampled from each - which reduces the variance of a minibatch.
+	public int sample(Minibatch batch)
+	{
+		int count = (size == 0) ? 0 : batch.getCapacity();
+		if (priorities == null)
+		{
+			for (int i=0; i<count; i++)
+			{
+				batch.indices[i] = random.nextInt(size);
+				batch.weights[i] = 1.0;
+			}
+		}
+		else
+		{
+			double total = priorities.total();
+			double segment = total / count;
+			double maxWeight = 0;
+			for (int i=0; i<count; i++)
+			{
+				int index = priorities.find((i + random.nextDouble()) * segment);
+				batch.indices[i] = index;
+				double weight = Math.pow(size * priorities.get(index) / total, -beta);
+				batch.weights[i] = weight;
+				maxWeight = Math.max(maxWeight, weight);
+			}
+			for (int i=0; i<count; i++)
+			{
+				batch.weights[i] /= maxWeight;
+			}
+		}
+		for (int i=0; i<count; i++)
+		{
+			int index = batch.indices[i];
+			batch.states[i] = states[index];
+			batch.actions[i] = actions[index];
+			System.arraycopy(rewards, index * numObjectives, batch.rewards, i * numObjectives, numObjectives);
+			batch.nextStates[i] = nextStates[index];
+			batch.terminal[i] = terminal[index];
+		}
+		batch.size = count;
+		return count;
+	}
+
+	// Updates the priorities of the transitions in batch from the TD errors in batch.errors. Does nothing for uniform
+	// sampling. If a transition was sampled more than once, the priority from its last sample is kept.
+	public void updatePriorities(Minibatch batch)
+	{
+		if (priorities == null)
+			return;
+		for (int i=0; i<batch.size; i++)
+		{
+			double error = 0;
+			for (int o=0; o<numObjectives; o++)
+			{
+				error = Math.max(error, Math.abs(batch.errors[i * numObjectives + o]));
+			}
+			double priority = Math.pow(error + PRIORITY_OFFSET, alpha);
+			priorities.set(batch.indices[i], priority);
+			maxPriority = Math.max(maxPriority, priority);
+		}
+	}
+}
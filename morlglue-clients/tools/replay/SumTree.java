@@ -0,0 +1,88 @@
+// A sum tree over a fixed number of non-negative priorities, for prioritised sampling. The priorities are the leaves of
+// a complete binary tree held in a single array (the root at index 1, and the children of node n at 2n and 2n+1), with
+// each internal node holding the sum of its children. Setting a priority and finding the leaf which covers a given
+// amount of cumulative priority both take O(log n), so sampling in proportion to priority doesn't need a pass over
+// all of the priorities.
+// Parents are recomputed from their children rather than adjusted by the change in priority, so rounding errors don't
+// accumulate in the sums however many updates are made.
+
+package tools.replay;
+
+import java.util.Arrays;
+
+public class SumTree
+{
+	private final int capacity;
+	private final int leafStart; // index of the first leaf in tree - a power of 2 no smaller than capacity
+	private final double tree[];
+
+	public SumTree(int capacity)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Sum tree capacity must be at least 1: " + capacity);
+		this.capacity = capacity;
+		int leaves = Integer.highestOneBit(capacity);
+		if (leaves < capacity)
+			leaves <<= 1;
+		leafStart = leaves;
+		tree = new double[2 * leaves];
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	// sets every priority to 0
+	public void clear()
+	{
+		Arrays.fill(tree, 0.0);
+	}
+
+	public double get(int index)
+	{
+		return tree[leafStart + index];
+	}
+
+	public void set(int index, double priority)
+	{
+		if (priority < 0 || Double.isNaN(priority))
+			throw new IllegalArgumentException("Priorities must be non-negative: " + priority);
+		int node = leafStart + index;
+		tree[node] = priority;
+		node >>= 1;
+		while (node >= 1)
+		{
+			tree[node] = tree[2 * node] + tree[2 * node + 1];
+			node >>= 1;
+		}
+	}
+
+	// the sum of all of the priorities
+	public double total()
+	{
+		return tree[1];
+	}
+
+	// Returns the index whose priority covers cumulative priority mass, for mass in [0, total()) - so that for a
+	// uniformly random mass each index is found with probability in proportion to its priority. Indices with a priority
+	// of 0 are never found, including when rounding puts mass at or beyond the total.
+	public int find(double mass)
+	{
+		int node = 1;
+		while (node < leafStart)
+		{
+			int left = 2 * node;
+			if (mass < tree[left] || tree[left + 1] <= 0)
+			{
+				node = left;
+			}
+			else
+			{
+				mass -= tree[left];
+				node = left + 1;
+			}
+		}
+		return node - leafStart;
+	}
+}
@@ -0,0 +1,135 @@
+package tools.spreadsheet;
+// An ExcelWriter which holds the rows for a single worksheet in memory rather than writing them to a workbook.
+// Jxl workbooks can't safely be written to from several threads, so trials which are run concurrently each write
+// to their own BufferedExcelWriter, and the buffered rows are then copied into the real workbook one sheet at a time
+// using copyToSheet.
+// Formulas can refer to other sheets of the destination workbook (with getAddress(sheet, column, row), as used by
+// makeSummarySheet) as long as the names those sheets will have there are given to the constructor.
+
+import java.util.ArrayList;
+
+public class BufferedExcelWriter extends ExcelWriter 
+{
+	private static final int TEXT = 0;
+	private static final int NUMBERS = 1;
+	private static final int TEXT_AND_NUMBERS = 2;
+	private static final int FORMULA = 3;
+	private static final int TEXT_AND_FORMULA = 4;
+	
+	// one buffered call to a writeNextRow method
+	private static class Row
+	{
+		final int type;
+		final String text;
+		final String formulas;
+		final double numbers[];
+		
+		Row(int type, String text, String formulas, double numbers[])
+		{
+			this.type = type;
+			this.text = text;
+			this.formulas = formulas;
+			this.numbers = numbers;
+		}
+	}
+	
+	private ArrayList<Row> rows = new ArrayList<Row>();
+	private final String sheetNames[]; // the names of the sheets of the destination workbook, by index
+
+	// a buffer whose formulas only refer to cells in its own sheet
+	public BufferedExcelWriter()
+	{
+		this(new String[0]);
+	}
+
+	// a buffer whose formulas may also refer to the destination workbook's sheets, which will be named sheetNames
+	public BufferedExcelWriter(String sheetNames[])
+	{
+		this.sheetNames = sheetNames.clone();
+	}
+
+	// A buffer only ever holds a single sheet, so the name and index are ignored - they're supplied when the rows are
+	// copied to the real workbook instead. Any rows already buffered are discarded.
+	public void moveToNewSheet(String name, int index) 
+	{
+		rows.clear();
+	}
+
+	public void writeNextRowNumbers(double[] data) 
+	{
+		rows.add(new Row(NUMBERS, null, null, data.clone()));
+	}
+
+	public void writeNextRowNumbers(int[] data) 
+	{
+		double copy[] = new double[data.length];
+		for (int i=0; i<data.length; i++)
+		{
+			copy[i] = data[i];
+		}
+		rows.add(new Row(NUMBERS, null, null, copy));
+	}
+
+	public void writeNextRowText(String text) 
+	{
+		rows.add(new Row(TEXT, text, null, null));
+	}
+
+	public void writeNextRowTextAndNumbers(String text, double[] data) 
+	{
+		rows.add(new Row(TEXT_AND_NUMBERS, text, null, data.clone()));
+	}
+
+	public void writeNextRowFormula(String text) 
+	{
+		rows.add(new Row(FORMULA, null, text, null));
+	}
+
+	public void writeNextRowTextAndFormula(String text, String formulas) 
+	{
+		rows.add(new Row(TEXT_AND_FORMULA, text, formulas, null));
+	}
+
+	// Addresses within the sheet are the same as in the workbook the rows will eventually be copied to
+	public String getAddress(int column, int row) 
+	{
+		return jxl.CellReferenceHelper.getCellReference(column, row);
+	}
+
+	// Addresses in other sheets use the names given to the constructor, in the same form as JxlExcelWriter's
+	public String getAddress(int sheet, int column, int row) 
+	{
+		if (sheet < 0 || sheet >= sheetNames.length)
+			throw new IllegalArgumentException("Sheet " + sheet + " is not one of the " + sheetNames.length + " sheet names given to this BufferedExcelWriter");
+		return "'"+sheetNames[sheet]+"'!"+jxl.CellReferenceHelper.getCellReference(column, row);
+	}
+
+	// nothing to close - the rows stay available until copied
+	public void closeFile() 
+	{
+	}
+	
+	// returns the number of rows buffered so far
+	public int getNumRows()
+	{
+		return rows.size();
+	}
+	
+	// Create a new sheet in the destination workbook with the given name and index, and write all the buffered rows to it
+	// in the order they were added
+	public void copyToSheet(ExcelWriter excel, String name, int index)
+	{
+		excel.moveToNewSheet(name, index);
+		for (Row row : rows)
+		{
+			switch (row.type)
+			{
+				case TEXT: excel.writeNextRowText(row.text); break;
+				case NUMBERS: excel.writeNextRowNumbers(row.numbers); break;
+				case TEXT_AND_NUMBERS: excel.writeNextRowTextAndNumbers(row.text, row.numbers); break;
+				case FORMULA: excel.writeNextRowFormula(row.formulas); break;
+				case TEXT_AND_FORMULA: excel.writeNextRowTextAndFormula(row.text, row.formulas); break;
+			}
+		}
+	}
+}
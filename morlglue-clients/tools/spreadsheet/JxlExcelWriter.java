@@ -197,74 +197,6 @@ public class JxlExcelWriter extends ExcelWriter
 		return "'"+names[sheet]+"'!"+jxl.CellReferenceHelper.getCellReference(column,row);		
 	}
 	
-	// Create a worksheet summarising the results across a specified range of prior sheets using
-	// various aggregate statistics. Assumes that the data sheets have indices 0..(numSheets-1).
-	// Column headers are passed in as a String with & between columns.
-	// numLabels and numHeaders specify how many columns and rows need to be skipped on each data sheet to reach the actual data cells
-	public void makeSummarySheet(int numSheets, String columnHeaders, int numLabels, int numHeaders, int numDataColumns, int numDataRows)
-	{
-		moveToNewSheet("Summary", numSheets); // make new sheet after the data sheets
-		// Make a string for use in skipping over the labels at the start of the row
-		String labelSkip = "";
-		for (int i=0; i<numLabels; i++)
-		{
-			labelSkip += " &";
-		}
-		// Add a header row with the names of the stats functions being used
-		String header = labelSkip;
-		for (int i=0; i<SUMMARY_FUNCTIONS.length; i++)
-		{
-			header += SUMMARY_FUNCTIONS[i];
-			for (int cols=0; cols<numDataColumns; cols++)
-			{
-				header += "& ";
-			}
-		}
-		writeNextRowText(header);
-		// Create a row with the objective labels repeated for each of the summary functions
-		String fullHeader=labelSkip;
-		for (int i=0; i<SUMMARY_FUNCTIONS.length; i++)
-		{
-			fullHeader += columnHeaders + "&";
-		}
-		writeNextRowText(fullHeader);
-		// Generate the formulas for the summary stats; repeat for each row of data
-		String sheetNames[] = wbook.getSheetNames();
-		for (int row=0; row<numDataRows; row++)
-		{
-			String formulaText="";
-			// add formulae to look at the labels from Sheet0
-			for (int col=0; col<numLabels; col++)
-			{
-				formulaText+="'"+sheetNames[0]+"'!"+jxl.CellReferenceHelper.getCellReference(col,row+numHeaders)+"&";
-			}
-			// repeat for each statistic
-			for (int i=0; i<SUMMARY_FUNCTIONS.length; i++)
-			{
-				// repeat for each data column
-				for (int col=0; col<numDataColumns; col++)
-				{
-					String cellAddress = jxl.CellReferenceHelper.getCellReference(col+numLabels,row+numHeaders);
-					formulaText+=SUMMARY_FUNCTIONS[i]+"(";
-					// repeat for each sheet
-					for (int sheet=0; sheet<numSheets-1; sheet++)
-					{
-						formulaText+="'"+sheetNames[sheet]+"'!"+cellAddress+",";
-					}
-					// do the final sheet and close the parentheses for the function
-					formulaText+="'"+sheetNames[numSheets-1]+"'!"+cellAddress+")";
-					// add an & as a separator between cells for each cell except the very last one
-					if (!(row==numDataRows && i==SUMMARY_FUNCTIONS.length-1 && col==numDataColumns-1))
-					{
-						formulaText+="&";
-					}
-				}
-			}
-			writeNextRowFormula(formulaText);
-		}
-	}
-
-	
 	// finalise writing and close the Excel file
     public void closeFile()
     {
@@ -0,0 +1,216 @@
+// An eligibility trace of (state index, action) pairs for use with replacing traces, as an alternative to keeping a
+// Stack of StateActionIndexPair or StateActionDiscrete objects.
+// The pairs are held in a fixed-size ring buffer of ints, so adding a pair never allocates and the oldest pair is
+// dropped automatically once the trace is full. A small open-addressing hash map records the position of the most
+// recent occurrence of each pair in the trace, so isMostRecent can tell in O(1) whether a pair has a more recent entry
+// (which is what replacing traces need) instead of calling Stack.indexOf for every entry - this makes a full pass over
+// the trace O(n) rather than O(n^2).
+// Entries are indexed the same way as in the old Stacks - 0 is the oldest entry and size()-1 the most recent.
+
+package tools.traces;
+
+import java.util.Arrays;
+
+public class ReplacingTrace
+{
+	private final int capacity;
+	private final int states[]; // ring buffer of state indices
+	private final int actions[]; // ring buffer of actions
+	private int oldest; // position in the ring buffer of the oldest entry
+	private int size;
+	private long nextSequence; // sequence number that will be given to the next pair added to the trace
+
+	// hash map from a (state, action) key to the sequence number of its most recent entry - every long is a possible key
+	// (eg (-1, -1) gives -1), so which slots are in use is recorded separately rather than with a sentinel key
+	private final boolean mapUsed[];
+	private final long mapKeys[];
+	private final long mapSequences[];
+	private final int mapMask;
+
+	// Returns how many entries a trace must hold so that it keeps every entry whose decay (lambda^age, with the most recent
+	// entry having age 0) is at least cutoff, but no more. This lets the trace length adapt to lambda rather than being
+	// fixed. The result is capped at maxLength, which also applies when lambda is 1 and the decay never reaches the cutoff.
+	public static int lengthForCutoff(double lambda, double cutoff, int maxLength)
+	{
+		int length;
+		if (cutoff <= 0 || lambda >= 1)
+			length = maxLength;
+		else if (cutoff >= 1 || lambda <= 0)
+			length = 1;
+		else
+			length = (int)Math.min(Math.floor(Math.log(cutoff) / Math.log(lambda)) + 1, maxLength);
+		return Math.max(length, 1);
+	}
+
+	// Returns a trace for the given lambda and cutoff, for agents which (re)create their trace whenever these change.
+	// Without a cutoff (cutoff <= 0) the trace holds defaultLength entries; otherwise its length is
+	// lengthForCutoff(lambda, cutoff, maxLength), so that entries are dropped as soon as their decay falls below the
+	// cutoff. existing (which may be null) is returned as it is if it already has that capacity.
+	public static ReplacingTrace resize(ReplacingTrace existing, double lambda, double cutoff, int defaultLength, int maxLength)
+	{
+		int length = defaultLength;
+		if (cutoff > 0)
+			length = lengthForCutoff(lambda, cutoff, maxLength);
+		if (existing != null && existing.getCapacity() == length)
+			return existing;
+		return new ReplacingTrace(length);
+	}
+
+	public ReplacingTrace(int capacity)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Trace capacity must be at least 1: " + capacity);
+		this.capacity = capacity;
+		states = new int[capacity];
+		actions = new int[capacity];
+		// keep the map at most half full so probe sequences stay short
+		int mapSize = Integer.highestOneBit(capacity) * 4;
+		mapUsed = new boolean[mapSize];
+		mapKeys = new long[mapSize];
+		mapSequences = new long[mapSize];
+		mapMask = mapSize - 1;
+		clear();
+	}
+
+	public void clear()
+	{
+		oldest = 0;
+		size = 0;
+		nextSequence = 0;
+		Arrays.fill(mapUsed, false);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	// adds a pair as the most recent entry, dropping the oldest entry first if the trace is full
+	public void add(int state, int action)
+	{
+		if (size == capacity)
+			removeOldest();
+		int position = (oldest + size) % capacity;
+		states[position] = state;
+		actions[position] = action;
+		size++;
+		put(key(state, action), nextSequence);
+		nextSequence++;
+	}
+
+	// removes the oldest entry from the trace
+	public void removeOldest()
+	{
+		if (size == 0)
+			return;
+		long key = key(states[oldest], actions[oldest]);
+		// only forget the pair if this was its most recent entry
+		if (get(key) == sequenceOf(0))
+			remove(key);
+		oldest = (oldest + 1) % capacity;
+		size--;
+	}
+
+	public int getState(int i)
+	{
+		return states[(oldest + i) % capacity];
+	}
+
+	public int getAction(int i)
+	{
+		return actions[(oldest + i) % capacity];
+	}
+
+	// returns true if there is no more recent entry in the trace for the same state-action pair as entry i
+	public boolean isMostRecent(int i)
+	{
+		int position = (oldest + i) % capacity;
+		return get(key(states[position], actions[position])) == sequenceOf(i);
+	}
+
+	private long sequenceOf(int i)
+	{
+		return nextSequence - size + i;
+	}
+
+	private static long key(int state, int action)
+	{
+		return ((long)state << 32) | (action & 0xffffffffL);
+	}
+
+	private int slotFor(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & mapMask;
+	}
+
+	private void put(long key, long sequence)
+	{
+		int slot = slotFor(key);
+		while (mapUsed[slot] && mapKeys[slot] != key)
+			slot = (slot + 1) & mapMask;
+		mapUsed[slot] = true;
+		mapKeys[slot] = key;
+		mapSequences[slot] = sequence;
+	}
+
+	// returns the sequence number stored for key, or -1 if the key isn't in the map
+	private long get(long key)
+	{
+		int slot = slotFor(key);
+		while (mapUsed[slot])
+		{
+			if (mapKeys[slot] == key)
+				return mapSequences[slot];
+			slot = (slot + 1) & mapMask;
+		}
+		return -1;
+	}
+
+	// removes key from the map, shifting back any later entries in the same probe sequence so lookups still find them
+	private void remove(long key)
+	{
+		int slot = slotFor(key);
+		while (mapUsed[slot] && mapKeys[slot] != key)
+			slot = (slot + 1) & mapMask;
+		if (!mapUsed[slot])
+			return;
+		int gap = slot;
+		int next = (gap + 1) & mapMask;
+		while (mapUsed[next])
+		{
+			int home = slotFor(mapKeys[next]);
+			// move the entry into the gap unless its home slot lies cyclically between the gap and its current slot
+			boolean canMove = (next > gap) ? (home <= gap || home > next) : (home <= gap && home > next);
+			if (canMove)
+			{
+				mapKeys[gap] = mapKeys[next];
+				mapSequences[gap] = mapSequences[next];
+				gap = next;
+			}
+			next = (next + 1) & mapMask;
+		}
+		mapUsed[gap] = false;
+	}
+
+	public String toString()
+	{
+		String result = "";
+		for (int i=0; i<size; i++)
+		{
+			result += "(" + getState(i) + ", " + getAction(i) + ") ";
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,41 @@
+// Holds the outcome of a single action-selection pass over a state's action values: the action to be performed, the greedy
+// action for that state, and whether the selected action is greedy (ie TLO-equal to the greedy action).
+// Agents keep one instance and pass it to ActionSelector.choosePossiblyExploratoryAction on every step, so selection
+// doesn't need to allocate anything.
+
+package tools.valuefunction;
+
+public class ActionSelection 
+{
+	private int action;
+	private int greedyAction;
+	private boolean greedy;
+	
+	public void set(int _action, int _greedyAction, boolean _greedy)
+	{
+		action = _action;
+		greedyAction = _greedyAction;
+		greedy = _greedy;
+	}
+	
+	public int getAction()
+	{
+		return action;
+	}
+	
+	public int getGreedyAction()
+	{
+		return greedyAction;
+	}
+	
+	public boolean isGreedy()
+	{
+		return greedy;
+	}
+	
+	public String toString()
+	{
+		return "(" + action + ", " + greedyAction + ", " + greedy + ")";
+	}
+
+}
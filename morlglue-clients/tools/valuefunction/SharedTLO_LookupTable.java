@@ -0,0 +1,183 @@
+package tools.valuefunction;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.rlcommunity.rlglue.codec.types.Reward;
+
+// A TLO lookup table which several worker threads can learn into at the same time, Hogwild style, without locking.
+// The Q-values are held once, in the STATE_MAJOR layout, and each worker thread uses its own view of them obtained from
+// createWorkerView(). A view has its own errors buffer, action selection scratch buffers, thresholds and random number
+// generator, so the only state shared between threads is the Q-values themselves. A view must only be used by one
+// thread at a time.
+// Q-values are read and written with opaque accesses, so each value is always read or written as a whole and the
+// updates made by one thread become visible to the others promptly, without any locks or memory barriers. Updates can
+// either be ATOMIC (a compare-and-set loop, so concurrent updates to the same Q-value are never lost) or RELAXED (a
+// plain read-add-write, so a concurrent update to the same Q-value may occasionally be overwritten - as in Hogwild,
+// this is rare when the workers are spread over a large table and is cheaper than ATOMIC).
+// resetQValues, loadValueFunction and setThresholds are not coordinated with the workers - call them while no worker
+// is learning. Note setThresholds only affects the view it is called on. The lazy reset mode isn't used - see
+// setLazyReset.
+
+public class SharedTLO_LookupTable extends TLO_LookupTable
+{
+    // constants to label the different update modes
+    public static final int ATOMIC_UPDATES = 0;
+    public static final int RELAXED_UPDATES = 1;
+
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(double[].class);
+
+    private final int updateMode;
+    private final AtomicInteger numViews; // shared by all views of the same table, used to give each view its own seed
+
+    public SharedTLO_LookupTable( int numberOfObjectives, int numberOfActions, int numberOfStates, int initValue, double thresholds[], int updateMode)
+    {
+        super(numberOfObjectives, numberOfActions, numberOfStates, initValue, thresholds, STATE_MAJOR);
+        this.updateMode = updateMode;
+        numViews = new AtomicInteger(0);
+    }
+
+    private SharedTLO_LookupTable( SharedTLO_LookupTable source, int viewNumber )
+    {
+        super(source);
+        this.updateMode = source.updateMode;
+        this.numViews = source.numViews;
+        r.setSeed(499 + viewNumber); // otherwise every worker would make the same exploratory choices
+    }
+
+    // returns a new view of this table for use by one worker thread. Views can themselves be used to create further views.
+    public SharedTLO_LookupTable createWorkerView()
+    {
+        return new SharedTLO_LookupTable(this, numViews.incrementAndGet());
+    }
+
+    public int getUpdateMode()
+    {
+        return updateMode;
+    }
+
+    // returns a String representing the update mode
+    public static String updateModeToString(int updateMode)
+    {
+        switch (updateMode)
+        {
+            case ATOMIC_UPDATES: return "atomic";
+            case RELAXED_UPDATES: return "relaxed";
+            default: return "Unknown";
+        }
+    }
+
+    // Lazily resetting states on first access would need the workers to coordinate their epochs, so the lazy reset
+    // mode is ignored and resetQValues always resets the whole table eagerly. Agents which ask for lazy reset (eg to
+    // speed up start_new_trial) still work when given a shared table, and isLazyReset reports that the mode is off.
+    @Override
+    public void setLazyReset(boolean lazy)
+    {
+    }
+
+    private double read(int index)
+    {
+        return (double) VALUES.getOpaque(flatValues, index);
+    }
+
+    // adds delta to the Q-value at index, according to the update mode
+    private void add(int index, double delta)
+    {
+        if (updateMode == ATOMIC_UPDATES)
+        {
+            double current = read(index);
+            while (!VALUES.weakCompareAndSetPlain(flatValues, index, current, current + delta))
+            {
+                current = read(index);
+            }
+        }
+        else
+        {
+            VALUES.setOpaque(flatValues, index, read(index) + delta);
+        }
+    }
+
+    @Override
+    public double getValue(int objective, int action, int state)
+    {
+        return read(flatIndex(action, state) + objective);
+    }
+
+    @Override
+    public void setValue(int objective, int action, int state, double value)
+    {
+        VALUES.setOpaque(flatValues, flatIndex(action, state) + objective, value);
+    }
+
+    @Override
+    protected void copyActionValues(int state, double actionValues[][])
+    {
+        int index = flatIndex(0, state);
+        for (int a = 0; a < numberOfActions; a++)
+        {
+            for (int obj = 0; obj < numberOfObjectives; obj++)
+            {
+                actionValues[a][obj] = read(index++);
+            }
+        }
+    }
+
+    @Override
+    public double[] getQValues(int action, int state)
+    {
+        double[] result = new double[numberOfObjectives];
+        int index = flatIndex(action, state);
+        for (int i = 0; i < numberOfObjectives; i++)
+        {
+            result[i] = read(index + i);
+        }
+        return result;
+    }
+
+    // errors is this view's own buffer, so it is safe for each worker to calculate errors and update concurrently
+    @Override
+    public void calculateErrors(int action, int previousState, int greedyAction, int newState, double gamma, Reward reward)
+    {
+        int thisIndex = flatIndex(action, previousState);
+        int maxIndex = flatIndex(greedyAction, newState);
+        for (int i = 0; i < numberOfObjectives; i++)
+        {
+            errors[i] = getRewardForThisObjective(reward, i) + gamma * read(maxIndex + i) - read(thisIndex + i);
+        }
+    }
+
+    @Override
+    public void calculateTerminalErrors(int action, int previousState, double gamma, Reward reward)
+    {
+        int thisIndex = flatIndex(action, previousState);
+        for (int i = 0; i < numberOfObjectives; i++)
+        {
+            errors[i] = getRewardForThisObjective(reward, i) - read(thisIndex + i);
+        }
+    }
+
+    @Override
+    public void update(int action, int state, double lambda, double alpha)
+    {
+        int index = flatIndex(action, state);
+        for (int i = 0; i < numberOfObjectives; i++)
+        {
+            add(index + i, alpha * ( lambda * errors[i] ));
+        }
+    }
+
+    @Override
+    public void updateBatch(int count, int actions[], int states[], double batchErrors[], double weights[], double alpha)
+    {
+        for (int s = 0; s < count; s++)
+        {
+            int index = flatIndex(actions[s], states[s]);
+            double step = (weights == null) ? alpha : alpha * weights[s];
+            for (int i = 0; i < numberOfObjectives; i++)
+            {
+                add(index + i, step * batchErrors[s * numberOfObjectives + i]);
+            }
+        }
+    }
+}
@@ -4,7 +4,20 @@ import java.util.Random;
 
 public abstract class Softmax 
 {
-	static Random r = new Random(548);
+	// one generator per thread, each starting from the same seed, so that trials run concurrently on different threads
+	// don't interfere with each other
+	private static final ThreadLocal<Random> r = new ThreadLocal<Random>() {
+		protected Random initialValue()
+		{
+			return new Random(548);
+		}
+	};
+	
+	// seeds the random number generator used by the current thread
+	public static void setSeed(long seed)
+	{
+		r.get().setSeed(seed);
+	}
 	
 	// Performs softmax selection. Should an error occur in the calculations as temperature gets too low, we detect this
 	// and simply return the greedy action instead
@@ -21,7 +34,7 @@ public abstract class Softmax
 				return greedyAction;
 			}
 		}
-		double nextRandom = r.nextDouble();
+		double nextRandom = r.get().nextDouble();
 		int selectedAction = 0;
 		while((sumOfSoftmaxTerms[selectedAction]/sumOfSoftmaxTerms[numActions-1])<nextRandom)
 		{
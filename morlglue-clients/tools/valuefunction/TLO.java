@@ -1,5 +1,4 @@
 package tools.valuefunction;
-import java.util.ArrayList;
 import java.util.Random;
 
 // Implement functionality related to the Thresholded Lexicographic Ordering multiobjective action selection
@@ -8,7 +7,20 @@ import java.util.Random;
 
 public abstract class TLO {
 	
-	static Random r = new Random();
+	// each thread has its own generator for tie-breaking, so that trials run concurrently on different threads don't
+	// interfere with each other, and a trial can be made reproducible by seeding the generator of its thread
+	private static final ThreadLocal<Random> r = new ThreadLocal<Random>() {
+		protected Random initialValue()
+		{
+			return new Random();
+		}
+	};
+	
+	// seeds the tie-breaking random number generator used by the current thread
+	public static void setSeed(long seed)
+	{
+		r.get().setSeed(seed);
+	}
 	
 	// Compare two sets of values based on TLO ordering
 	// Returns 1 if a is ranked higher, -1 if b is higher, 0 if they are equal
@@ -45,44 +57,41 @@ public abstract class TLO {
 	}
 	
 	// Returns the index of the highest-ranked action in the provided array
+	// Ties are broken uniformly at random using reservoir sampling, so no list of tied actions needs to be built
 	public static int greedyAction(double actionValues[][], double thresholds[])
 	{
-        ArrayList<Integer> bestActions = new ArrayList<>();        
-        bestActions.add(0);
-
-        for (int a = 1; a < actionValues.length; a++) 
-        {
-        	int compareResult = compare(actionValues[a], actionValues[bestActions.get(0)], thresholds);
-            if (compareResult>0) 
-            {
-            	bestActions.clear();
-            	bestActions.add(a);
-            } 
-            else if (compareResult==0)
-            {
-                bestActions.add(a);
-            }            
-        }
-       /* for (int i=0; i<bestActions.size(); i++)
-        {
-        	System.out.print(bestActions.get(i) + " ");
-        }
-        System.out.println();*/
-        if (bestActions.size() > 1) 
-        {
-            return bestActions.get(r.nextInt(bestActions.size()));
-        } 
-        else 
-        {
-            return bestActions.get(0);
-        }		
+		int best = 0;
+		int numTied = 1;
+		for (int a = 1; a < actionValues.length; a++) 
+		{
+			int compareResult = compare(actionValues[a], actionValues[best], thresholds);
+			if (compareResult>0) 
+			{
+				best = a;
+				numTied = 1;
+			} 
+			else if (compareResult==0)
+			{
+				// replace the current choice with probability 1/numTied, so each tied action is equally likely to be kept
+				numTied++;
+				if (r.get().nextInt(numTied)==0)
+					best = a;
+			}            
+		}
+		return best;
 	}
 	
 	// Returns a score array with the dominance score of each action (ie the proportion of actions which this action is 
 	// equal to our better than according to TLO comparisons)
 	public static double[] getDominanceScore(double actionValues[][], double thresholds[])
 	{
-		double score[] = new double[actionValues.length];
+		return getDominanceScore(actionValues, thresholds, new double[actionValues.length]);
+	}
+	
+	// As above, but writes the scores into the caller-supplied score array (which must have one element per action) 
+	// rather than allocating a new one. Returns score for convenience.
+	public static double[] getDominanceScore(double actionValues[][], double thresholds[], double score[])
+	{
         for (int a = 0; a < actionValues.length; a++)
         {
         	score[a] = 0;
@@ -107,42 +116,44 @@ public abstract class TLO {
 	// Returns a score array with the inverse additive-epsilon score for each action (ie 1 - the maximum difference on any objective
 	// between this action and the TLO-optimal action)
 	public static double[] getInverseAdditiveEpsilonScore(double actionValues[][], int bestIndex)
+	{
+		return getInverseAdditiveEpsilonScore(actionValues, bestIndex, new double[actionValues.length]);
+	}
+	
+	// As above, but writes the scores into the caller-supplied score array (which must have one element per action)
+	// rather than allocating a new one. The objectives are processed one at a time, so the scaling range and the scaled
+	// value of the best action can be held in locals rather than in temporary arrays. Returns score for convenience.
+	public static double[] getInverseAdditiveEpsilonScore(double actionValues[][], int bestIndex, double score[])
 	{
 		int numObjectives = actionValues[0].length;
-		double score[] = new double[actionValues.length];
-		// first scale the values, so one objective with a wide range can't dominate the results
-		double min[] = new double[numObjectives];
-		double max[] = new double[numObjectives];
-		for (int i=0; i<min.length; i++)
+        for (int a = 0; a < actionValues.length; a++)
+        {
+        	score[a] = 0.0;
+        }
+		for (int i=0; i<numObjectives; i++)
 		{
-			double tempMin = actionValues[0][i];
-			double tempMax = tempMin;
+			// first scale the values, so one objective with a wide range can't dominate the results
+			double min = actionValues[0][i];
+			double max = min;
 	        for (int a = 1; a < actionValues.length; a++)
 	        {
-	        	if (actionValues[a][i]<tempMin)
-	        		tempMin = actionValues[a][i];
-	        	else if (actionValues[a][i]>tempMax)
-	        		tempMax = actionValues[a][i];
+	        	if (actionValues[a][i]<min)
+	        		min = actionValues[a][i];
+	        	else if (actionValues[a][i]>max)
+	        		max = actionValues[a][i];
 	        }  
-	        min[i] = tempMin;
-	        max[i] = tempMax;
+	        double scaledBest = (actionValues[bestIndex][i]-min)/(max-min);
+	        // now update the additive epsilon for each action on this objective
+	        for (int a = 0; a < actionValues.length; a++)
+	        {
+        		double diff = scaledBest - (actionValues[a][i]-min)/(max-min);
+        		if (diff>score[a])
+        			score[a] = diff;
+	        }
 		}
-        double scaledBest[] = new double[numObjectives];
-        for (int i=0; i<scaledBest.length; i++)
-        {
-        	scaledBest[i] = (actionValues[bestIndex][i]-min[i])/(max[i]-min[i]);
-        }
-        // now calculate the additive epsilon for each action, scaling as we go
         // finally subtract the additive epsilon from 1 so better solutions get higher scores
         for (int a = 0; a < actionValues.length; a++)
         {
-        	score[a] = 0.0;
-        	for (int i=0; i<numObjectives; i++)
-        	{
-        		double diff = scaledBest[i] - (actionValues[a][i]-min[i])/(max[i]-min[i]);
-        		if (diff>score[a])
-        			score[a] = diff;
-        	}
         	score[a] = 1.0 - score[a];
         }
         return score;        	
@@ -3,13 +3,6 @@
 
 package tools.valuefunction;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Random;
 
@@ -19,6 +12,7 @@ import tools.valuefunction.interfaces.LookupTable;
 public class TLOConditionedLookupTable extends LookupTable implements ActionSelector 
 {
     double thisStateValues[][];
+    double thisStateScores[]; // scratch buffer for the softmax exploration scores
     double conditioningValues[]; // array of dimensionality one less than number of objectives
     double thresholds[];
     int numThresholds; // will be numObjectives minus 1
@@ -26,10 +20,17 @@ public class TLOConditionedLookupTable extends LookupTable implements ActionSele
     public TLOConditionedLookupTable( int numberOfObjectives, int numberOfActions, int numberOfStates, int initValue, 
     								double theseThresholds[]) 
     {
-        super(numberOfObjectives, numberOfActions, numberOfStates, initValue); 
+        this(numberOfObjectives, numberOfActions, numberOfStates, initValue, theseThresholds, OBJECTIVE_MAJOR);
+    }
+
+    public TLOConditionedLookupTable( int numberOfObjectives, int numberOfActions, int numberOfStates, int initValue, 
+    								double theseThresholds[], int layout) 
+    {
+        super(numberOfObjectives, numberOfActions, numberOfStates, initValue, layout); 
         thresholds = theseThresholds.clone();
         numThresholds = numberOfObjectives -1;
         thisStateValues = new double[numberOfActions][numberOfObjectives]; 
+        thisStateScores = new double[numberOfActions];
         conditioningValues = new double[numThresholds];
         for (int i=0; i<numThresholds; i++)
         {
@@ -70,10 +71,10 @@ public class TLOConditionedLookupTable extends LookupTable implements ActionSele
 		{
 			for (int i=0; i<numThresholds; i++)
 			{
-				thisStateValues[a][i] = valueFunction.get(0)[a][state] + conditioningValues[i];
+				thisStateValues[a][i] = getValue(0, a, state) + conditioningValues[i];
 			}
 			// the final objective doesn't need to be conditioned as no thresholding is applied to it
-			thisStateValues[a][numThresholds] = valueFunction.get(numThresholds)[a][state];
+			thisStateValues[a][numThresholds] = getValue(numThresholds, a, state);
 		}
     }
     
@@ -104,11 +105,19 @@ public class TLOConditionedLookupTable extends LookupTable implements ActionSele
     	return (TLO.compare(thisStateValues[action], thisStateValues[best], thresholds)==0);
     }
        
+    // selects an action, and finds the greedy action and whether the selected action is greedy, from a single 
+    // gathering of this state's action values
+    public void choosePossiblyExploratoryAction(double parameter, int state, ActionSelection selection)
+    {
+    	getActionValues(state);
+    	chooseFromActionValues(parameter, thisStateValues, thresholds, thisStateScores, selection);
+    }
+       
     // softmax selection based on tournament score (i.e. the number of actions which each action TLO-dominates)
     protected int softmaxTournament(double temperature, int state)
     {
     	int best = chooseGreedyAction(state); // as a side-effect this will also set up the Q-values array
-    	double scores[] = TLO.getDominanceScore(thisStateValues,thresholds);
+    	double scores[] = TLO.getDominanceScore(thisStateValues,thresholds,thisStateScores);
     	return Softmax.getAction(scores,temperature,best);
     }
     
@@ -116,7 +125,7 @@ public class TLOConditionedLookupTable extends LookupTable implements ActionSele
     protected int softmaxAdditiveEpsilon(double temperature, int state)
     {
     	int best = chooseGreedyAction(state); // as a side-effect this will also set up the Q-values array
-    	double scores[] = TLO.getInverseAdditiveEpsilonScore(thisStateValues,best);
+    	double scores[] = TLO.getInverseAdditiveEpsilonScore(thisStateValues,best,thisStateScores);
     	return Softmax.getAction(scores,temperature,best);
     }    
 
@@ -128,50 +137,5 @@ public class TLOConditionedLookupTable extends LookupTable implements ActionSele
         this.thresholds = thresholds;
     }
     
-     public void saveValueFunction(String theFileName) {
-    	System.out.println(theFileName);
-        for (int s = 0; s < numberOfStates; s++) {
-            for (int a = 0; a < numberOfActions; a++) {
-            	System.out.print("State "+s+"\tAction "+a+"\t");         	
-            	for (int i = 0; i < numberOfObjectives; i++) {
-                    System.out.print(valueFunction.get(i)[a][s] +"\t");
-                }
-            	System.out.println();
-            }                
-        }  	
-        try {
-            DataOutputStream DO = new DataOutputStream(new FileOutputStream(new File(theFileName)));
-            for (int i = 0; i < numberOfObjectives; i++) {
-                for (int a = 0; a < numberOfActions; a++) {
-                    for (int s = 0; s < numberOfStates; s++) {
-                        DO.writeDouble( valueFunction.get(i)[a][s] );
-                    }
-                }                
-            }
-            DO.close();
-        } catch (FileNotFoundException ex) {
-            System.err.println("Problem saving value function to file: " + theFileName + " :: " + ex);
-        } catch (IOException ex) {
-            System.err.println("Problem writing value function to file:: " + ex);
-        }
-    }
-    
-    public void loadValueFunction(String theFileName) {
-        try {
-            DataInputStream DI = new DataInputStream(new FileInputStream(new File(theFileName)));
-            for (int i = 0; i < numberOfObjectives; i++) {
-                for (int a = 0; a < numberOfActions; a++) {
-                    for (int s = 0; s < numberOfStates; s++) {
-                        valueFunction.get(i)[a][s] = DI.readDouble();
-                    }
-                }                
-            }
-            DI.close();
-        } catch (FileNotFoundException ex) {
-            System.err.println("Problem loading value function from file: " + theFileName + " :: " + ex);
-        } catch (IOException ex) {
-            System.err.println("Problem reading value function from file:: " + ex);
-        }
-    }
    
 }
\ No newline at end of file
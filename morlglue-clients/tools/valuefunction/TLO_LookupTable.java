@@ -1,55 +1,34 @@
 package tools.valuefunction;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Random;
-
 import tools.valuefunction.interfaces.ActionSelector;
 import tools.valuefunction.interfaces.LookupTable;
 
 public class TLO_LookupTable extends LookupTable implements ActionSelector 
 {
-	// constants to label the different exploration strategies
-	public static final int EGREEDY = 0;
-	public static final int SOFTMAX_TOURNAMENT = 1;
-	public static final int SOFTMAX_ADDITIVE_EPSILON = 2;
-	
-    
-    Random r = null;
-    int explorationStrategy = 0; // default is egreedy
     double thresholds[];
     double thisStateValues[][];
+    double thisStateScores[]; // scratch buffer for the softmax exploration scores
 
     public TLO_LookupTable( int numberOfObjectives, int numberOfActions, int numberOfStates, int initValue, double thresholds[]) 
     {
-        super(numberOfObjectives, numberOfActions, numberOfStates, initValue);
-        r = new Random(499);    
-        this.thresholds = thresholds;
-        thisStateValues = new double[numberOfActions][numberOfObjectives];
+        this(numberOfObjectives, numberOfActions, numberOfStates, initValue, thresholds, OBJECTIVE_MAJOR);
     }
     
-    // set the exploration strategy
-    public void setExplorationStrategy(int ex)
+    public TLO_LookupTable( int numberOfObjectives, int numberOfActions, int numberOfStates, int initValue, double thresholds[], int layout) 
     {
-    	explorationStrategy = ex;
+        super(numberOfObjectives, numberOfActions, numberOfStates, initValue, layout);
+        this.thresholds = thresholds;
+        thisStateValues = new double[numberOfActions][numberOfObjectives];
+        thisStateScores = new double[numberOfActions];
     }
     
-    // returns a String representing the exploration strategy
-    public static String explorationStrategyToString(int ex)
+    // creates a view which shares its Q-values with source, but has its own thresholds and scratch buffers
+    protected TLO_LookupTable( TLO_LookupTable source )
     {
-    	switch (ex)
-    	{
-    		case EGREEDY: return "eGreedy";
-    		case SOFTMAX_TOURNAMENT: return "softmax_t";
-    		case SOFTMAX_ADDITIVE_EPSILON: return "softmax_+E";
-    		default: return "Unknown";
-    	}
+        super(source);
+        this.thresholds = source.thresholds.clone();
+        thisStateValues = new double[numberOfActions][numberOfObjectives];
+        thisStateScores = new double[numberOfActions];
     }
     
     // for debugging purposes - print out Q- values for all actions for the current state
@@ -74,14 +53,7 @@ public class TLO_LookupTable extends LookupTable implements ActionSelector
     // Copies the q-values for the current state into the 2 dimensional arraythisStateValues index by [action][objective]
     private void getActionValues(int state)
     {
-    	for (int obj=0; obj<numberOfObjectives; obj++)
-    	{
-    		double[][] thisObjQ = valueFunction.get(obj);
-    		for (int a=0; a<numberOfActions; a++)
-    		{
-    			thisStateValues[a][obj] = thisObjQ[a][state];
-    		}
-    	}    	
+    	copyActionValues(state, thisStateValues);
     }
 
     @Override
@@ -101,20 +73,19 @@ public class TLO_LookupTable extends LookupTable implements ActionSelector
     	return (TLO.compare(thisStateValues[action], thisStateValues[best], thresholds)==0);
     }
     
-    // simple eGreedy selection
-    private int eGreedy(double epsilon, int state)
+    // selects an action, and finds the greedy action and whether the selected action is greedy, from a single 
+    // gathering of this state's action values
+    public void choosePossiblyExploratoryAction(double parameter, int state, ActionSelection selection)
     {
-    	if (r.nextDouble()<=epsilon)
-    		return r.nextInt(numberOfActions);
-    	else
-    		return chooseGreedyAction(state);
+    	getActionValues(state);
+    	chooseFromActionValues(parameter, thisStateValues, thresholds, thisStateScores, selection);
     }
-    
+       
     // softmax selection based on tournament score (i.e. the number of actions which each action TLO-dominates)
     protected int softmaxTournament(double temperature, int state)
     {
     	int best = chooseGreedyAction(state); // as a side-effect this will also set up the Q-values array
-    	double scores[] = TLO.getDominanceScore(thisStateValues,thresholds);
+    	double scores[] = TLO.getDominanceScore(thisStateValues,thresholds,thisStateScores);
     	return Softmax.getAction(scores,temperature,best);
     }
     
@@ -122,28 +93,10 @@ public class TLO_LookupTable extends LookupTable implements ActionSelector
     protected int softmaxAdditiveEpsilon(double temperature, int state)
     {
     	int best = chooseGreedyAction(state); // as a side-effect this will also set up the Q-values array
-    	double scores[] = TLO.getInverseAdditiveEpsilonScore(thisStateValues,best);
+    	double scores[] = TLO.getInverseAdditiveEpsilonScore(thisStateValues,best,thisStateScores);
     	return Softmax.getAction(scores,temperature,best);
     }
     
-    // This will call one of a variety of different exploration approaches
-    public int choosePossiblyExploratoryAction(double parameter, int state)
-    {
-    	if (explorationStrategy==EGREEDY)
-    		return eGreedy(parameter, state);
-    	else if (explorationStrategy==SOFTMAX_TOURNAMENT)
-    		return softmaxTournament(parameter, state);
-    	else if (explorationStrategy==SOFTMAX_ADDITIVE_EPSILON)
-    		return softmaxAdditiveEpsilon(parameter, state);
-    	else
-    	{
-    		System.out.println("Error - undefined exploration strategy" + explorationStrategy);
-    		return -1; // should cause a crash to halt proceedings
-    	}
-    	
-    }
-    
-
     public double[] getThresholds() {
         return thresholds;
     }
@@ -152,50 +105,5 @@ public class TLO_LookupTable extends LookupTable implements ActionSelector
         this.thresholds = thresholds;
     }
     
-     public void saveValueFunction(String theFileName) {
-    	System.out.println(theFileName);
-        for (int s = 0; s < numberOfStates; s++) {
-            for (int a = 0; a < numberOfActions; a++) {
-            	System.out.print("State "+s+"\tAction "+a+"\t");         	
-            	for (int i = 0; i < numberOfObjectives; i++) {
-                    System.out.print(valueFunction.get(i)[a][s] +"\t");
-                }
-            	System.out.println();
-            }                
-        }  	
-        try {
-            DataOutputStream DO = new DataOutputStream(new FileOutputStream(new File(theFileName)));
-            for (int i = 0; i < numberOfObjectives; i++) {
-                for (int a = 0; a < numberOfActions; a++) {
-                    for (int s = 0; s < numberOfStates; s++) {
-                        DO.writeDouble( valueFunction.get(i)[a][s] );
-                    }
-                }                
-            }
-            DO.close();
-        } catch (FileNotFoundException ex) {
-            System.err.println("Problem saving value function to file: " + theFileName + " :: " + ex);
-        } catch (IOException ex) {
-            System.err.println("Problem writing value function to file:: " + ex);
-        }
-    }
-    
-    public void loadValueFunction(String theFileName) {
-        try {
-            DataInputStream DI = new DataInputStream(new FileInputStream(new File(theFileName)));
-            for (int i = 0; i < numberOfObjectives; i++) {
-                for (int a = 0; a < numberOfActions; a++) {
-                    for (int s = 0; s < numberOfStates; s++) {
-                        valueFunction.get(i)[a][s] = DI.readDouble();
-                    }
-                }                
-            }
-            DI.close();
-        } catch (FileNotFoundException ex) {
-            System.err.println("Problem loading value function from file: " + theFileName + " :: " + ex);
-        } catch (IOException ex) {
-            System.err.println("Problem reading value function from file:: " + ex);
-        }
-    }
    
 }
\ No newline at end of file
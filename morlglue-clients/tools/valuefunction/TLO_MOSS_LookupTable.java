@@ -3,20 +3,13 @@
 
 package tools.valuefunction;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-
 import tools.valuefunction.interfaces.ActionSelector;
 import tools.valuefunction.interfaces.LookupTable;
 
 public class TLO_MOSS_LookupTable extends LookupTable implements ActionSelector 
 {
     double thisStateValues[][];
+    double thisStateScores[]; // scratch buffer for the softmax exploration scores
     double accumlatedRewards[]; //accumulated rewards // array of dimensionality one less than number of objectives
     double stateVisitedProbability;
     double estimateOtherStateReturns[]; // array of dimensionality one less than number of objectives
@@ -27,10 +20,17 @@ public class TLO_MOSS_LookupTable extends LookupTable implements ActionSelector
     public TLO_MOSS_LookupTable( int numberOfObjectives, int numberOfActions, int numberOfStates, int initValue, 
     								double theseThresholds[]) 
     {
-        super(numberOfObjectives, numberOfActions, numberOfStates, initValue); 
+        this(numberOfObjectives, numberOfActions, numberOfStates, initValue, theseThresholds, OBJECTIVE_MAJOR);
+    }
+
+    public TLO_MOSS_LookupTable( int numberOfObjectives, int numberOfActions, int numberOfStates, int initValue, 
+    								double theseThresholds[], int layout) 
+    {
+        super(numberOfObjectives, numberOfActions, numberOfStates, initValue, layout); 
         thresholds = theseThresholds.clone();
         numThresholds = numberOfObjectives -1;
         thisStateValues = new double[numberOfActions][numberOfObjectives]; 
+        thisStateScores = new double[numberOfActions];
         accumlatedRewards = new double[numThresholds];
         stateVisitedProbability =1;
         estimateOtherStateReturns = new double[numThresholds];
@@ -45,15 +45,15 @@ public class TLO_MOSS_LookupTable extends LookupTable implements ActionSelector
     // Combine the state-action values and the conditioning Values together into thisStateValues
     private void getActionValues(int state)
     {
+		copyActionValues(state, thisStateValues);
+		// the final objective doesn't need to be conditioned as no thresholding is applied to it, so it is left as copied
 		for (int a=0; a<numberOfActions; a++)
 		{
 			for (int i=0; i<numThresholds; i++)
 			{
-				thisStateValues[a][i] = stateVisitedProbability*(valueFunction.get(i)[a][state] + accumlatedRewards[i])
+				thisStateValues[a][i] = stateVisitedProbability*(thisStateValues[a][i] + accumlatedRewards[i])
                                         +(1-stateVisitedProbability)*estimateOtherStateReturns[i];
 			}
-			// the final objective doesn't need to be conditioned as no thresholding is applied to it
-			thisStateValues[a][numThresholds] = valueFunction.get(numThresholds)[a][state];
 		}
     }
     
@@ -87,11 +87,19 @@ public class TLO_MOSS_LookupTable extends LookupTable implements ActionSelector
     	return (TLO.compare(thisStateValues[action], thisStateValues[best], thresholds)==0);
     }
        
+    // selects an action, and finds the greedy action and whether the selected action is greedy, from a single 
+    // gathering of this state's action values
+    public void choosePossiblyExploratoryAction(double parameter, int state, ActionSelection selection)
+    {
+    	getActionValues(state);
+    	chooseFromActionValues(parameter, thisStateValues, thresholds, thisStateScores, selection);
+    }
+       
     // softmax selection based on tournament score (i.e. the number of actions which each action TLO-dominates)
     protected int softmaxTournament(double temperature, int state)
     {
     	int best = chooseGreedyAction(state); // as a side-effect this will also set up the Q-values array
-    	double scores[] = TLO.getDominanceScore(thisStateValues,thresholds);
+    	double scores[] = TLO.getDominanceScore(thisStateValues,thresholds,thisStateScores);
     	return Softmax.getAction(scores,temperature,best);
     }
     
@@ -99,7 +107,7 @@ public class TLO_MOSS_LookupTable extends LookupTable implements ActionSelector
     protected int softmaxAdditiveEpsilon(double temperature, int state)
     {
     	int best = chooseGreedyAction(state); // as a side-effect this will also set up the Q-values array
-    	double scores[] = TLO.getInverseAdditiveEpsilonScore(thisStateValues,best);
+    	double scores[] = TLO.getInverseAdditiveEpsilonScore(thisStateValues,best,thisStateScores);
     	return Softmax.getAction(scores,temperature,best);
     }    
 
@@ -115,50 +123,5 @@ public class TLO_MOSS_LookupTable extends LookupTable implements ActionSelector
         return thisStateValues;
     }
     
-    public void saveValueFunction(String theFileName) {
-    	System.out.println(theFileName);
-        for (int s = 0; s < numberOfStates; s++) {
-            for (int a = 0; a < numberOfActions; a++) {
-            	System.out.print("State "+s+"\tAction "+a+"\t");         	
-            	for (int i = 0; i < numberOfObjectives; i++) {
-                    System.out.print(valueFunction.get(i)[a][s] +"\t");
-                }
-            	System.out.println();
-            }                
-        }  	
-        try {
-            DataOutputStream DO = new DataOutputStream(new FileOutputStream(new File(theFileName)));
-            for (int i = 0; i < numberOfObjectives; i++) {
-                for (int a = 0; a < numberOfActions; a++) {
-                    for (int s = 0; s < numberOfStates; s++) {
-                        DO.writeDouble( valueFunction.get(i)[a][s] );
-                    }
-                }                
-            }
-            DO.close();
-        } catch (FileNotFoundException ex) {
-            System.err.println("Problem saving value function to file: " + theFileName + " :: " + ex);
-        } catch (IOException ex) {
-            System.err.println("Problem writing value function to file:: " + ex);
-        }
-    }
-    
-    public void loadValueFunction(String theFileName) {
-        try {
-            DataInputStream DI = new DataInputStream(new FileInputStream(new File(theFileName)));
-            for (int i = 0; i < numberOfObjectives; i++) {
-                for (int a = 0; a < numberOfActions; a++) {
-                    for (int s = 0; s < numberOfStates; s++) {
-                        valueFunction.get(i)[a][s] = DI.readDouble();
-                    }
-                }                
-            }
-            DI.close();
-        } catch (FileNotFoundException ex) {
-            System.err.println("Problem loading value function from file: " + theFileName + " :: " + ex);
-        } catch (IOException ex) {
-            System.err.println("Problem reading value function from file:: " + ex);
-        }
-    }
    
 }
\ No newline at end of file
@@ -1,13 +1,5 @@
 package tools.valuefunction;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-
 import tools.valuefunction.interfaces.ActionSelector;
 import tools.valuefunction.interfaces.LookupTable;
 
@@ -15,12 +7,19 @@ public class TLO_Option_LookupTable extends LookupTable implements ActionSelecto
 {
     double thresholds[];
     double thisStateValues[][];
+    double thisStateScores[]; // scratch buffer for the softmax exploration scores
 
     public TLO_Option_LookupTable( int numberOfObjectives, int numberOfOptions, int numberOfStates, int initValue, double thresholds[]) 
     {
-        super(numberOfObjectives, numberOfOptions, numberOfStates, initValue);    
+        this(numberOfObjectives, numberOfOptions, numberOfStates, initValue, thresholds, OBJECTIVE_MAJOR);
+    }
+    
+    public TLO_Option_LookupTable( int numberOfObjectives, int numberOfOptions, int numberOfStates, int initValue, double thresholds[], int layout) 
+    {
+        super(numberOfObjectives, numberOfOptions, numberOfStates, initValue, layout);    
         this.thresholds = thresholds;
         thisStateValues = new double[numberOfOptions][numberOfObjectives];
+        thisStateScores = new double[numberOfOptions];
     }
     
 
@@ -47,14 +46,7 @@ public class TLO_Option_LookupTable extends LookupTable implements ActionSelecto
     // Copies the q-values for the current state into the 2 dimensional arraythisStateValues index by [action][objective]
     private void getActionValues(int state)
     {
-    	for (int obj=0; obj<numberOfObjectives; obj++)
-    	{
-    		double[][] thisObjQ = valueFunction.get(obj);
-    		for (int a=0; a<numberOfActions; a++)
-    		{
-    			thisStateValues[a][obj] = thisObjQ[a][state];
-    		}
-    	}    	
+    	copyActionValues(state, thisStateValues);
     }
 
     @Override
@@ -74,11 +66,19 @@ public class TLO_Option_LookupTable extends LookupTable implements ActionSelecto
     	return (TLO.compare(thisStateValues[action], thisStateValues[best], thresholds)==0);
     }
        
+    // selects an action, and finds the greedy action and whether the selected action is greedy, from a single 
+    // gathering of this state's action values
+    public void choosePossiblyExploratoryAction(double parameter, int state, ActionSelection selection)
+    {
+    	getActionValues(state);
+    	chooseFromActionValues(parameter, thisStateValues, thresholds, thisStateScores, selection);
+    }
+       
     // softmax selection based on tournament score (i.e. the number of actions which each action TLO-dominates)
     protected int softmaxTournament(double temperature, int state)
     {
     	int best = chooseGreedyAction(state); // as a side-effect this will also set up the Q-values array
-    	double scores[] = TLO.getDominanceScore(thisStateValues,thresholds);
+    	double scores[] = TLO.getDominanceScore(thisStateValues,thresholds,thisStateScores);
     	return Softmax.getAction(scores,temperature,best);
     }
     
@@ -86,7 +86,7 @@ public class TLO_Option_LookupTable extends LookupTable implements ActionSelecto
     protected int softmaxAdditiveEpsilon(double temperature, int state)
     {
     	int best = chooseGreedyAction(state); // as a side-effect this will also set up the Q-values array
-    	double scores[] = TLO.getInverseAdditiveEpsilonScore(thisStateValues,best);
+    	double scores[] = TLO.getInverseAdditiveEpsilonScore(thisStateValues,best,thisStateScores);
     	return Softmax.getAction(scores,temperature,best);
     }
     
@@ -100,50 +100,5 @@ public class TLO_Option_LookupTable extends LookupTable implements ActionSelecto
         this.thresholds = thresholds;
     }
     
-     public void saveValueFunction(String theFileName) {
-    	System.out.println(theFileName);
-        for (int s = 0; s < numberOfStates; s++) {
-            for (int a = 0; a < numberOfActions; a++) {
-            	System.out.print("State "+s+"\tAction "+a+"\t");         	
-            	for (int i = 0; i < numberOfObjectives; i++) {
-                    System.out.print(valueFunction.get(i)[a][s] +"\t");
-                }
-            	System.out.println();
-            }                
-        }  	
-        try {
-            DataOutputStream DO = new DataOutputStream(new FileOutputStream(new File(theFileName)));
-            for (int i = 0; i < numberOfObjectives; i++) {
-                for (int a = 0; a < numberOfActions; a++) {
-                    for (int s = 0; s < numberOfStates; s++) {
-                        DO.writeDouble( valueFunction.get(i)[a][s] );
-                    }
-                }                
-            }
-            DO.close();
-        } catch (FileNotFoundException ex) {
-            System.err.println("Problem saving value function to file: " + theFileName + " :: " + ex);
-        } catch (IOException ex) {
-            System.err.println("Problem writing value function to file:: " + ex);
-        }
-    }
-    
-    public void loadValueFunction(String theFileName) {
-        try {
-            DataInputStream DI = new DataInputStream(new FileInputStream(new File(theFileName)));
-            for (int i = 0; i < numberOfObjectives; i++) {
-                for (int a = 0; a < numberOfActions; a++) {
-                    for (int s = 0; s < numberOfStates; s++) {
-                        valueFunction.get(i)[a][s] = DI.readDouble();
-                    }
-                }                
-            }
-            DI.close();
-        } catch (FileNotFoundException ex) {
-            System.err.println("Problem loading value function from file: " + theFileName + " :: " + ex);
-        } catch (IOException ex) {
-            System.err.println("Problem reading value function from file:: " + ex);
-        }
-    }
    
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package tools.valuefunction.interfaces;
 
+import tools.valuefunction.ActionSelection;
+
 public interface ActionSelector {
     
     public int chooseGreedyAction(int state);
@@ -8,4 +10,8 @@ public interface ActionSelector {
     
     public boolean isGreedy(int state, int action);
     
+    // Equivalent to calling choosePossiblyExploratoryAction, chooseGreedyAction and isGreedy for the same state, but 
+    // evaluates the state's action values only once. The results are written into selection.
+    public void choosePossiblyExploratoryAction(double parameter, int state, ActionSelection selection);
+    
 }
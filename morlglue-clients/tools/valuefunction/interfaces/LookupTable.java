@@ -1,8 +1,24 @@
 package tools.valuefunction.interfaces;
 
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 import org.rlcommunity.rlglue.codec.types.Reward;
+import tools.valuefunction.ActionSelection;
 import tools.valuefunction.Softmax;
 import tools.valuefunction.TLO;
 
@@ -20,27 +36,59 @@ public abstract class LookupTable extends ValueFunction {
 	public static final int SOFTMAX_ADDITIVE_EPSILON = 2;
     protected int explorationStrategy = 0; // default is egreedy
     
-    protected ArrayList<double[][]> valueFunction = null;
+    // constants to label the different storage layouts for the Q-values
+    public static final int OBJECTIVE_MAJOR = 0; // one [action][state] array per objective
+    public static final int STATE_MAJOR = 1; // a single flat array indexed [state][action][objective]
+    protected final int layout;
+    
+    protected ArrayList<double[][]> valueFunction = null; // only used by the OBJECTIVE_MAJOR layout
+    protected double[] flatValues = null; // only used by the STATE_MAJOR layout
     protected double[] errors = null;
+    
+    // used by the lazy reset mode (see setLazyReset) - each state records the epoch in which its Q-values were last
+    // reset, and its values are only valid if that matches the current epoch
+    protected int[] stateEpochs = null;
+    protected int currentEpoch = 0;
+    protected double[] lazyInitValues = null;
 
     public LookupTable( int numberOfObjectives, int numberOfActions, int numberOfStates, int initValue ) {
+        this(numberOfObjectives, numberOfActions, numberOfStates, initValue, OBJECTIVE_MAJOR);
+    }
+
+    // The STATE_MAJOR layout keeps all of the action-values for a state in one contiguous block, so that
+    // gathering a state's values for action selection touches a single run of memory rather than
+    // numberOfObjectives x numberOfActions separate arrays. This matters for large (eg augmented) state spaces.
+    public LookupTable( int numberOfObjectives, int numberOfActions, int numberOfStates, int initValue, int layout ) {
         this.numberOfObjectives = numberOfObjectives;
         this.numberOfActions = numberOfActions;
         this.numberOfStates = numberOfStates;
+        this.layout = layout;
         r = new Random(499);
         
-        valueFunction = new ArrayList<>();
-        for(int i=0 ; i<numberOfObjectives ; i++) {
-            double[][] array = new double[numberOfActions][numberOfStates];
-            valueFunction.add( array );
+        if (layout == STATE_MAJOR) {
+            long size = (long) numberOfStates * numberOfActions * numberOfObjectives;
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Lookup table of " + size + " values is too large for the STATE_MAJOR layout");
+            }
+            flatValues = new double[(int) size];
+            if( initValue != 0 ) {
+                Arrays.fill(flatValues, initValue);
+            }
         }
-        
-        if( initValue != 0 ) {
-            for (int i = 0; i < numberOfObjectives; i++) {
-                double[][] array = valueFunction.get(i);
-                for (int j = 0; j < numberOfActions; j++) {
-                    for (int k = 0; k < numberOfStates; k++) {
-                        array[j][k] = initValue;
+        else {
+            valueFunction = new ArrayList<>();
+            for(int i=0 ; i<numberOfObjectives ; i++) {
+                double[][] array = new double[numberOfActions][numberOfStates];
+                valueFunction.add( array );
+            }
+            
+            if( initValue != 0 ) {
+                for (int i = 0; i < numberOfObjectives; i++) {
+                    double[][] array = valueFunction.get(i);
+                    for (int j = 0; j < numberOfActions; j++) {
+                        for (int k = 0; k < numberOfStates; k++) {
+                            array[j][k] = initValue;
+                        }
                     }
                 }
             }
@@ -48,6 +96,138 @@ public abstract class LookupTable extends ValueFunction {
         errors = new double[numberOfObjectives];
         
     }
+    
+    // Creates a table which shares its Q-values with source rather than having its own. Everything else (the errors
+    // buffer, random number generator and exploration strategy) is separate, so each of a number of threads can use its
+    // own view of a single shared table.
+    protected LookupTable( LookupTable source ) {
+        this.numberOfObjectives = source.numberOfObjectives;
+        this.numberOfActions = source.numberOfActions;
+        this.numberOfStates = source.numberOfStates;
+        this.layout = source.layout;
+        this.explorationStrategy = source.explorationStrategy;
+        r = new Random(499);
+        valueFunction = source.valueFunction;
+        flatValues = source.flatValues;
+        errors = new double[numberOfObjectives];
+    }
+    
+    // returns a String representing the storage layout
+    public static String layoutToString(int layout)
+    {
+        switch (layout)
+        {
+            case OBJECTIVE_MAJOR: return "objective-major";
+            case STATE_MAJOR: return "state-major";
+            default: return "Unknown";
+        }
+    }
+    
+    public int getLayout() {
+        return layout;
+    }
+    
+    // index of the first objective value for this state-action in flatValues (STATE_MAJOR layout only)
+    protected int flatIndex(int action, int state) {
+        return (state * numberOfActions + action) * numberOfObjectives;
+    }
+    
+    // In the lazy reset mode resetQValues doesn't change the table - it just starts a new epoch and records the new
+    // initial values. Each state's Q-values are then reset the first time the state is accessed in the new epoch, so a
+    // reset takes constant time regardless of the size of the table, with the work spread over the states actually
+    // visited. This costs an int per state, plus a check on every access. Turning the mode off brings every state up to
+    // date first.
+    public void setLazyReset(boolean lazy) {
+        if (lazy && stateEpochs == null) {
+            stateEpochs = new int[numberOfStates]; // all states start in epoch 0, so the current values are valid
+            currentEpoch = 0;
+        }
+        else if (!lazy && stateEpochs != null) {
+            touchAllStates();
+            stateEpochs = null;
+        }
+    }
+    
+    public boolean isLazyReset() {
+        return stateEpochs != null;
+    }
+    
+    // brings the Q-values for this state up to date if a lazy reset has happened since the state was last accessed
+    protected final void touch(int state) {
+        if (stateEpochs != null && stateEpochs[state] != currentEpoch) {
+            initialiseState(state);
+        }
+    }
+    
+    protected void touchAllStates() {
+        if (stateEpochs != null) {
+            for (int s = 0; s < numberOfStates; s++) {
+                touch(s);
+            }
+        }
+    }
+    
+    private void initialiseState(int state) {
+        if (layout == STATE_MAJOR) {
+            int index = flatIndex(0, state);
+            for (int a = 0; a < numberOfActions; a++) {
+                System.arraycopy(lazyInitValues, 0, flatValues, index, numberOfObjectives);
+                index += numberOfObjectives;
+            }
+        }
+        else {
+            for (int i = 0; i < numberOfObjectives; i++) {
+                double[][] array = valueFunction.get(i);
+                for (int a = 0; a < numberOfActions; a++) {
+                    array[a][state] = lazyInitValues[i];
+                }
+            }
+        }
+        stateEpochs[state] = currentEpoch;
+    }
+    
+    // read and write a single Q-value, independent of the storage layout
+    public double getValue(int objective, int action, int state) {
+        touch(state);
+        if (layout == STATE_MAJOR)
+            return flatValues[flatIndex(action, state) + objective];
+        return valueFunction.get(objective)[action][state];
+    }
+    
+    public void setValue(int objective, int action, int state, double value) {
+        touch(state);
+        if (layout == STATE_MAJOR)
+            flatValues[flatIndex(action, state) + objective] = value;
+        else
+            valueFunction.get(objective)[action][state] = value;
+    }
+    
+    // Copies the Q-values for all actions in the specified state into actionValues, indexed [action][objective].
+    // This is the shape expected by the TLO library functions.
+    protected void copyActionValues(int state, double actionValues[][]) {
+        touch(state);
+        if (layout == STATE_MAJOR) {
+            int base = flatIndex(0, state);
+            for (int a = 0; a < numberOfActions; a++) {
+                System.arraycopy(flatValues, base, actionValues[a], 0, numberOfObjectives);
+                base += numberOfObjectives;
+            }
+        }
+        else {
+            for (int obj = 0; obj < numberOfObjectives; obj++) {
+                double[][] thisObjQ = valueFunction.get(obj);
+                for (int a = 0; a < numberOfActions; a++) {
+                    actionValues[a][obj] = thisObjQ[a][state];
+                }
+            }
+        }
+    }
+
+        // reseed the random number generator used for exploration, eg so that each of a set of trials is reproducible
+        public void setSeed(long seed)
+        {
+            r.setSeed(seed);
+        }
 
         // set the exploration strategy
         public void setExplorationStrategy(int ex)
@@ -84,6 +264,31 @@ public abstract class LookupTable extends ValueFunction {
         // softmax selection based on each action's additive epsilon score
         abstract protected int softmaxAdditiveEpsilon(double temperature, int state);
         
+        // Chooses a possibly exploratory action from the supplied action values for a state (indexed [action][objective]), 
+        // recording the chosen action, the greedy action and whether the chosen action is greedy in selection.
+        // The subclasses use this to implement ActionSelector.choosePossiblyExploratoryAction(double, int, ActionSelection), 
+        // which only needs to gather the state's action values once for all three results.
+        protected void chooseFromActionValues(double parameter, double actionValues[][], double thresholds[], double scores[], 
+        										ActionSelection selection)
+        {
+            int best = TLO.greedyAction(actionValues, thresholds);
+            int action;
+            if (explorationStrategy==EGREEDY)
+                action = (r.nextDouble()<=parameter) ? r.nextInt(numberOfActions) : best;
+            else if (explorationStrategy==SOFTMAX_TOURNAMENT)
+                action = Softmax.getAction(TLO.getDominanceScore(actionValues, thresholds, scores), parameter, best);
+            else if (explorationStrategy==SOFTMAX_ADDITIVE_EPSILON)
+                action = Softmax.getAction(TLO.getInverseAdditiveEpsilonScore(actionValues, best, scores), parameter, best);
+            else
+            {
+                System.out.println("Error - undefined exploration strategy" + explorationStrategy);
+                selection.set(-1, best, false); // should cause a crash to halt proceedings
+                return;
+            }
+            // the chosen action is greedy if it is TLO-equal to the greedily selected action
+            selection.set(action, best, action==best || TLO.compare(actionValues[action], actionValues[best], thresholds)==0);
+        }
+        
         // This will call one of a variety of different exploration approaches
         public int choosePossiblyExploratoryAction(double parameter, int state)
         {
@@ -102,6 +307,16 @@ public abstract class LookupTable extends ValueFunction {
     
     @Override
     public void calculateErrors(int action, int previousState, int greedyAction, int newState, double gamma, Reward reward) {
+        touch(previousState);
+        touch(newState);
+        if (layout == STATE_MAJOR) {
+            int thisIndex = flatIndex(action, previousState);
+            int maxIndex = flatIndex(greedyAction, newState);
+            for (int i = 0; i < numberOfObjectives; i++) {
+                errors[i] = getRewardForThisObjective(reward, i) + gamma * flatValues[maxIndex + i] - flatValues[thisIndex + i];
+            }
+            return;
+        }
         for (int i = 0; i < numberOfObjectives; i++) {
             double[][] qValues = valueFunction.get(i);
             
@@ -117,6 +332,14 @@ public abstract class LookupTable extends ValueFunction {
     }
     @Override
     public void calculateTerminalErrors(int action, int previousState, double gamma, Reward reward) {
+        touch(previousState);
+        if (layout == STATE_MAJOR) {
+            int thisIndex = flatIndex(action, previousState);
+            for (int i = 0; i < numberOfObjectives; i++) {
+                errors[i] = getRewardForThisObjective(reward, i) - flatValues[thisIndex + i];
+            }
+            return;
+        }
         for (int i = 0; i < numberOfObjectives; i++) {
             double[][] qValues = valueFunction.get(i);
             
@@ -165,6 +388,14 @@ public abstract class LookupTable extends ValueFunction {
     @Override
     public void update(int action, int state, double lambda, double alpha) {
         //System.out.println("\t\tUpdate - state,action " + state + ", " + action);       
+        touch(state);
+        if (layout == STATE_MAJOR) {
+            int index = flatIndex(action, state);
+            for (int i = 0; i < numberOfObjectives; i++) {
+                flatValues[index + i] += alpha * ( lambda * errors[i] );
+            }
+            return;
+        }
         for (int i = 0; i < numberOfObjectives; i++) {
             double[][] qValues = valueFunction.get(i);
             double thisQ = qValues[ action ][ state ];
@@ -175,9 +406,63 @@ public abstract class LookupTable extends ValueFunction {
         }        
     }
     
+    // Minibatch updates, eg for experience replay. Sample i is the transition from states[i] by actions[i] to
+    // nextStates[i], and its rewards and errors for objective o are at [i * numberOfObjectives + o].
+    // Finds the TD errors of count transitions, all against the current Q-values, writing them into batchErrors. 
+    // The target for a transition which isn't terminal uses the greedy action in its next state.
+    public void calculateBatchErrors(int count, int actions[], int states[], double rewards[], int nextStates[], boolean terminal[], 
+    									double gamma, double batchErrors[]) {
+        for (int s = 0; s < count; s++) {
+            int base = s * numberOfObjectives;
+            if (terminal[s]) {
+                for (int i = 0; i < numberOfObjectives; i++) {
+                    batchErrors[base + i] = rewards[base + i] - getValue(i, actions[s], states[s]);
+                }
+            }
+            else {
+                int greedyAction = chooseGreedyAction(nextStates[s]);
+                for (int i = 0; i < numberOfObjectives; i++) {
+                    batchErrors[base + i] = rewards[base + i] + gamma * getValue(i, greedyAction, nextStates[s]) 
+                    							- getValue(i, actions[s], states[s]);
+                }
+            }
+        }
+    }
+    
+    // Applies the TD errors of a minibatch in one pass over the table's storage, each scaled by alpha and by the sample's
+    // weight (eg an importance sampling weight - null weights them all equally). Samples for the same state-action add up.
+    public void updateBatch(int count, int actions[], int states[], double batchErrors[], double weights[], double alpha) {
+        for (int s = 0; s < count; s++) {
+            touch(states[s]);
+        }
+        if (layout == STATE_MAJOR) {
+            for (int s = 0; s < count; s++) {
+                int index = flatIndex(actions[s], states[s]);
+                double step = (weights == null) ? alpha : alpha * weights[s];
+                int base = s * numberOfObjectives;
+                for (int i = 0; i < numberOfObjectives; i++) {
+                    flatValues[index + i] += step * batchErrors[base + i];
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < numberOfObjectives; i++) {
+            double[][] qValues = valueFunction.get(i);
+            for (int s = 0; s < count; s++) {
+                double step = (weights == null) ? alpha : alpha * weights[s];
+                qValues[ actions[s] ][ states[s] ] += step * batchErrors[s * numberOfObjectives + i];
+            }
+        }
+    }
+    
     @Override
     public double[] getQValues(int action, int state) {
         double[] result = new double[ numberOfObjectives ];
+        touch(state);
+        if (layout == STATE_MAJOR) {
+            System.arraycopy(flatValues, flatIndex(action, state), result, 0, numberOfObjectives);
+            return result;
+        }
         for (int i = 0; i < numberOfObjectives; i++) {
             double[][] qValues = valueFunction.get(i);
             result[i] = qValues[ action ][ state ];
@@ -194,8 +479,7 @@ public abstract class LookupTable extends ValueFunction {
                 System.out.print("[");
                 for (int i = 0; i < numberOfObjectives; i++) 
                 {
-                    double[][] qValues = valueFunction.get(i);
-                    System.out.print(qValues[ action ][ state ]+" ");
+                    System.out.print(getValue(i, action, state)+" ");
                 } 
                 System.out.print("], ");
             }
@@ -215,7 +499,23 @@ public abstract class LookupTable extends ValueFunction {
         return numberOfStates;
     }
 
+    // Returns the Q-values as one [action][state] array per objective. For the OBJECTIVE_MAJOR layout this is the
+    // live table; for the STATE_MAJOR layout it is a copy, so changes made to it will not affect the table.
     public ArrayList<double[][]> getValueFunction() {
+        touchAllStates();
+        if (layout == STATE_MAJOR) {
+            ArrayList<double[][]> copy = new ArrayList<>();
+            for (int i = 0; i < numberOfObjectives; i++) {
+                double[][] array = new double[numberOfActions][numberOfStates];
+                for (int j = 0; j < numberOfActions; j++) {
+                    for (int k = 0; k < numberOfStates; k++) {
+                        array[j][k] = flatValues[flatIndex(j, k) + i];
+                    }
+                }
+                copy.add(array);
+            }
+            return copy;
+        }
         return valueFunction;
     }
     
@@ -223,6 +523,25 @@ public abstract class LookupTable extends ValueFunction {
     public void resetQValues(double initValue[])
     {
     	//System.out.println("reset q values");
+        if (stateEpochs != null) {
+            lazyInitValues = initValue.clone();
+            if (currentEpoch < Integer.MAX_VALUE) {
+                currentEpoch++;
+                return;
+            }
+            // out of epochs - fall through to an eager reset, after which every state is valid again from epoch 0
+            Arrays.fill(stateEpochs, 0);
+            currentEpoch = 0;
+        }
+        if (layout == STATE_MAJOR) {
+            // fill the first state-action block, then copy it across the rest of the table
+            int blockSize = numberOfObjectives;
+            System.arraycopy(initValue, 0, flatValues, 0, Math.min(blockSize, flatValues.length));
+            for (int filled = blockSize; filled < flatValues.length; filled *= 2) {
+                System.arraycopy(flatValues, 0, flatValues, filled, Math.min(filled, flatValues.length - filled));
+            }
+            return;
+        }
         for (int i = 0; i < numberOfObjectives; i++) {
         	//System.out.println(i + ": " + initValue[i]);
             double[][] array = valueFunction.get(i);
@@ -234,6 +553,278 @@ public abstract class LookupTable extends ValueFunction {
         }   	
     }
     
+    // Binary value function files. The file starts with a header (all values big-endian):
+    //      int magic number ("MOVF"), int format version, int payload byte order (0 = big-endian, 1 = little-endian),
+    //      int payload layout (OBJECTIVE_MAJOR or STATE_MAJOR), int number of objectives, int number of actions,
+    //      int number of states, int number of thresholds, then the thresholds as doubles
+    // followed by the Q-values as doubles, in the order of the saving table's storage layout and in the native byte
+    // order of the machine which saved it. The header is a multiple of 8 bytes long, so the payload is aligned.
+    // The payload is transferred in bulk through a direct buffer, a chunk of doubles at a time, rather than a value at a
+    // time. The file isn't memory-mapped, so it is never left mapped after a save or load (which would stop it being
+    // replaced on some platforms).
+    public static final int FILE_MAGIC = 0x4D4F5646;
+    public static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER_INTS = 8;
+    private static final int TRANSFER_CHUNK_BYTES = 1 << 20;
+    
+    // the thresholds saved with the Q-values
+    public abstract double[] getThresholds();
+    
+    // Saves the Q-values and thresholds in the binary value function format described above
+    public void saveValueFunction(String theFileName) {
+        try {
+            saveTable(theFileName, getThresholds());
+            System.out.println("Value function saved to " + theFileName);
+        } catch (IOException ex) {
+            System.err.println("Problem writing value function to file: " + theFileName + " :: " + ex);
+        }
+    }
+    
+    // Loads the Q-values, and returns the thresholds recorded in the file (null for files in the old format, or if the
+    // file couldn't be read, in which case the table is unchanged). The recorded thresholds aren't applied - the table
+    // keeps the ones its agent gave it, so that the two don't disagree - but they can be passed on to the agent, eg in a
+    // change_thresholds message.
+    public double[] loadValueFunction(String theFileName) {
+        try {
+            return loadTable(theFileName);
+        } catch (FileNotFoundException ex) {
+            System.err.println("Problem loading value function from file: " + theFileName + " :: " + ex);
+        } catch (IOException ex) {
+            System.err.println("Problem reading value function from file:: " + ex);
+        }
+        return null;
+    }
     
+    // the table's arrays in the order their values appear in the payload
+    private double[][] payloadRuns() {
+        if (layout == STATE_MAJOR)
+            return new double[][] { flatValues };
+        double[][] runs = new double[numberOfObjectives * numberOfActions][];
+        for (int i = 0; i < numberOfObjectives; i++) {
+            double[][] array = valueFunction.get(i);
+            for (int a = 0; a < numberOfActions; a++) {
+                runs[i * numberOfActions + a] = array[a];
+            }
+        }
+        return runs;
+    }
+    
+    // new arrays of the same shape as payloadRuns(), for a load to fill before any of the table's values are replaced
+    private double[][] scratchRuns() {
+        double[][] runs = payloadRuns();
+        double[][] scratch = new double[runs.length][];
+        for (int i = 0; i < runs.length; i++) {
+            scratch[i] = new double[runs[i].length];
+        }
+        return scratch;
+    }
+    
+    // writes runs to the channel from its current position, a chunk at a time
+    private static void writePayload(FileChannel channel, double[][] runs) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(TRANSFER_CHUNK_BYTES).order(ByteOrder.nativeOrder());
+        DoubleBuffer doubles = bytes.asDoubleBuffer();
+        for (double[] run : runs) {
+            int offset = 0;
+            while (offset < run.length) {
+                int count = Math.min(run.length - offset, doubles.remaining());
+                doubles.put(run, offset, count);
+                offset += count;
+                if (!doubles.hasRemaining())
+                    flushDoubles(channel, bytes, doubles);
+            }
+        }
+        flushDoubles(channel, bytes, doubles);
+    }
+    
+    // writes the doubles put into doubles (a view of bytes) so far, and empties it
+    private static void flushDoubles(FileChannel channel, ByteBuffer bytes, DoubleBuffer doubles) throws IOException {
+        bytes.clear();
+        bytes.limit(doubles.position() * 8);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        doubles.clear();
+    }
+    
+    // fills runs from the file starting at byte position start, a chunk at a time
+    private static void readPayload(FileChannel channel, long start, ByteOrder order, double[][] runs) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(TRANSFER_CHUNK_BYTES).order(order);
+        DoubleBuffer doubles = bytes.asDoubleBuffer();
+        doubles.limit(0);
+        long position = start;
+        for (double[] run : runs) {
+            int offset = 0;
+            while (offset < run.length) {
+                if (!doubles.hasRemaining())
+                    position = fillDoubles(channel, position, bytes, doubles);
+                int count = Math.min(run.length - offset, doubles.remaining());
+                doubles.get(run, offset, count);
+                offset += count;
+            }
+        }
+    }
+    
+    // refills doubles (a view of bytes) from the file at position, and returns the position following what was read
+    private static long fillDoubles(FileChannel channel, long position, ByteBuffer bytes, DoubleBuffer doubles) throws IOException {
+        bytes.clear();
+        while (bytes.position() < 8) {
+            int read = channel.read(bytes, position);
+            if (read < 0)
+                throw new EOFException("Value function file is truncated");
+            position += read;
+        }
+        // a partial double at the end of the chunk is read again at the start of the next one
+        int whole = bytes.position() / 8;
+        position -= bytes.position() - whole * 8;
+        doubles.clear();
+        doubles.limit(whole);
+        return position;
+    }
+    
+    // Saves the Q-values and thresholds to a binary value function file. The file is written in full to a temporary file
+    // alongside it and forced to disk, and only then renamed over any existing file, so a save which fails part way
+    // leaves the previous file intact.
+    protected void saveTable(String fileName, double thresholds[]) throws IOException {
+        touchAllStates();
+        int numThresholds = (thresholds == null) ? 0 : thresholds.length;
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_INTS * 4 + numThresholds * 8);
+        header.putInt(FILE_MAGIC).putInt(FILE_VERSION);
+        header.putInt(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 0 : 1);
+        header.putInt(layout).putInt(numberOfObjectives).putInt(numberOfActions).putInt(numberOfStates);
+        header.putInt(numThresholds);
+        for (int i = 0; i < numThresholds; i++) {
+            header.putDouble(thresholds[i]);
+        }
+        header.flip();
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        boolean saved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+            											StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                writePayload(channel, payloadRuns());
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            saved = true;
+        }
+        finally {
+            if (!saved)
+                Files.deleteIfExists(temp);
+        }
+    }
+    
+    // Loads the Q-values from a value function file, which must be for a table with the same number of objectives,
+    // actions and states, and returns the thresholds recorded in it. Files saved from a table with the other storage
+    // layout are converted as they are read. Files in the original headerless format (every Q-value as a big-endian
+    // double, ordered by objective, then action, then state) can also be loaded - in that case null is returned as
+    // there are no thresholds in the file.
+    // Every problem with the file (including one which doesn't record exactly numberOfObjectives-1 thresholds, which
+    // must be from a different task) is reported with an IOException. The whole payload is read into new arrays before
+    // any of the table's values are replaced, so if the load fails the table is unchanged.
+    protected double[] loadTable(String fileName) throws IOException {
+        double thresholds[] = null;
+        double[][] loaded = scratchRuns();
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            FileChannel channel = file.getChannel();
+            long payloadBytes = (long) numberOfObjectives * numberOfActions * numberOfStates * 8;
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_INTS * 4);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < 4 || header.getInt(0) != FILE_MAGIC) {
+                if (file.length() != payloadBytes)
+                    throw new IOException(fileName + " is not a value function file for a table of this size");
+                readPayloadConverting(channel, 0, OBJECTIVE_MAJOR, ByteOrder.BIG_ENDIAN, loaded);
+            }
+            else {
+                if (header.remaining() < FILE_HEADER_INTS * 4)
+                    throw new EOFException("Truncated header in value function file " + fileName);
+                header.getInt(); // magic number
+                int version = header.getInt();
+                if (version > FILE_VERSION)
+                    throw new IOException(fileName + " uses value function file version " + version + ", which is newer than this code supports");
+                ByteOrder order = (header.getInt() == 0) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+                int fileLayout = header.getInt();
+                int fileObjectives = header.getInt();
+                int fileActions = header.getInt();
+                int fileStates = header.getInt();
+                int numThresholds = header.getInt();
+                if (fileObjectives != numberOfObjectives || fileActions != numberOfActions || fileStates != numberOfStates)
+                    throw new IOException(fileName + " holds a table of " + fileObjectives + " objectives x " + fileActions + " actions x "
+                    		+ fileStates + " states, which doesn't match this table");
+                if (numThresholds != numberOfObjectives - 1)
+                    throw new IOException(fileName + " records " + numThresholds + " thresholds, but a table with " 
+                    		+ numberOfObjectives + " objectives has " + (numberOfObjectives - 1));
+                ByteBuffer thresholdBytes = ByteBuffer.allocate(numThresholds * 8);
+                channel.read(thresholdBytes, header.limit());
+                thresholdBytes.flip();
+                if (thresholdBytes.remaining() < numThresholds * 8)
+                    throw new EOFException("Truncated header in value function file " + fileName);
+                thresholds = new double[numThresholds];
+                for (int i = 0; i < numThresholds; i++) {
+                    thresholds[i] = thresholdBytes.getDouble();
+                }
+                long start = header.limit() + numThresholds * 8;
+                if (file.length() < start + payloadBytes)
+                    throw new EOFException("Value function file " + fileName + " is truncated");
+                if (fileLayout == layout)
+                    readPayload(channel, start, order, loaded);
+                else
+                    readPayloadConverting(channel, start, fileLayout, order, loaded);
+            }
+        }
+        // the whole file has been read, so replace the table's values
+        double[][] runs = payloadRuns();
+        for (int i = 0; i < runs.length; i++) {
+            System.arraycopy(loaded[i], 0, runs[i], 0, runs[i].length);
+        }
+        // every state now holds loaded values, so none of them should be lazily reset
+        if (stateEpochs != null)
+            Arrays.fill(stateEpochs, currentEpoch);
+        return thresholds;
+    }
+    
+    // reads the payload a value at a time into runs (which have the shape of payloadRuns()), for files whose layout is
+    // different to this table's
+    private void readPayloadConverting(FileChannel channel, long start, int fileLayout, ByteOrder order, double[][] runs) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(1 << 16).order(order);
+        bytes.limit(0);
+        long position = start;
+        for (int first = 0; first < (fileLayout == STATE_MAJOR ? numberOfStates : numberOfObjectives); first++) {
+            for (int a = 0; a < numberOfActions; a++) {
+                for (int last = 0; last < (fileLayout == STATE_MAJOR ? numberOfObjectives : numberOfStates); last++) {
+                    if (bytes.remaining() < 8) {
+                        bytes.compact();
+                        int read = channel.read(bytes, position);
+                        if (read > 0)
+                            position += read;
+                        bytes.flip();
+                        if (bytes.remaining() < 8)
+                            throw new EOFException("Value function file is truncated");
+                    }
+                    double value = bytes.getDouble();
+                    if (fileLayout == STATE_MAJOR)
+                        setRunValue(runs, last, a, first, value);
+                    else
+                        setRunValue(runs, first, a, last, value);
+                }
+            }
+        }
+    }
+    
+    // sets a value in arrays with the shape of payloadRuns()
+    private void setRunValue(double[][] runs, int objective, int action, int state, double value) {
+        if (layout == STATE_MAJOR)
+            runs[0][flatIndex(action, state) + objective] = value;
+        else
+            runs[objective * numberOfActions + action][state] = value;
+    }
     
 }
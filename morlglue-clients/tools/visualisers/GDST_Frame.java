@@ -3,7 +3,9 @@ package tools.visualisers;
 import javax.swing.JFrame;
 import java.awt.*;
 
-public class GDST_Frame extends JFrame 
+import tools.visualisers.interfaces.GDST_Renderer;
+
+public class GDST_Frame extends JFrame implements GDST_Renderer
 {
 	GDST_Panel panel1;
 	Scatter_Plot_Panel panel2;
@@ -32,5 +34,10 @@ public class GDST_Frame extends JFrame
     	panel1.moveSubmarine(col, row);
     	repaint();
     }
+    
+    public void close()
+    {
+    	dispose();
+    }
 	
 }
@@ -0,0 +1,18 @@
+package tools.visualisers;
+
+import tools.visualisers.interfaces.GDST_Renderer;
+
+// A renderer which displays nothing, for running GeneralisedDeepSeaTreasureEnv headless or as fast as possible
+public class GDST_NullRenderer implements GDST_Renderer 
+{
+    public void updateEnvironmentSettings(int numCols, int numRows, int[] depths, int[] steps, int[] treasure) {
+    }
+    
+    public void moveSubmarine(int col, int row)
+    {
+    }
+    
+    public void close()
+    {
+    }
+}
@@ -0,0 +1,68 @@
+package tools.visualisers;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import tools.visualisers.interfaces.GDST_Renderer;
+
+// Displays GeneralisedDeepSeaTreasureEnv in a GDST_Frame, but repaints at most a given number of times per second so
+// the display can be watched without slowing the environment down. moveSubmarine only records the submarine's position
+// as a snapshot, and a Swing timer copies the latest snapshot into the frame (on the event dispatch thread) whenever
+// it has changed. The frame is created when the environment first passes in its settings, and like every other use of
+// the frame this is done on the event dispatch thread, so the environment's thread never touches Swing.
+public class GDST_ThrottledRenderer implements GDST_Renderer 
+{
+	private GDST_Frame frame;           // only used on the event dispatch thread
+	private volatile long position = 0; // the submarine's column in the upper 32 bits and its row in the lower 32
+	private long paintedPosition = 0;   // only used on the event dispatch thread
+	private final Timer timer;
+	
+    public GDST_ThrottledRenderer(int maxRepaintsPerSecond) {
+    	timer = new Timer(Math.max(1, 1000 / Math.max(1, maxRepaintsPerSecond)), new ActionListener() {
+    		public void actionPerformed(ActionEvent e) {
+    			long latest = position;
+    			if (frame != null && latest != paintedPosition)
+    			{
+    				frame.moveSubmarine((int)(latest >>> 32), (int)latest);
+    				paintedPosition = latest;
+    			}
+    		}
+    	});
+    	timer.setCoalesce(true);
+    }
+    
+    public void updateEnvironmentSettings(final int numCols, final int numRows, int[] depths, int[] steps, int[] treasure) {
+    	// copy the settings, as the environment may change its arrays before the frame is updated
+    	final int[] depthsCopy = depths.clone();
+    	final int[] stepsCopy = steps.clone();
+    	final int[] treasureCopy = treasure.clone();
+    	SwingUtilities.invokeLater(new Runnable() {
+    		public void run() {
+    			if (frame == null)
+    				frame = new GDST_Frame(numCols, numRows, depthsCopy, stepsCopy, treasureCopy);
+    			else
+    				frame.updateEnvironmentSettings(numCols, numRows, depthsCopy, stepsCopy, treasureCopy);
+    			timer.start();
+    		}
+    	});
+    }
+    
+    public void moveSubmarine(int col, int row)
+    {
+    	position = ((long)col << 32) | (row & 0xFFFFFFFFL);
+    }
+    
+    public void close()
+    {
+    	SwingUtilities.invokeLater(new Runnable() {
+    		public void run() {
+    			timer.stop();
+    			if (frame != null)
+    				frame.dispose();
+    		}
+    	});
+    }
+}
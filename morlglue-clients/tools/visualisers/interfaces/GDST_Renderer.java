@@ -0,0 +1,15 @@
+package tools.visualisers.interfaces;
+
+// Displays the state of a GeneralisedDeepSeaTreasureEnv. moveSubmarine is called on every step of the environment, so
+// implementations should return quickly.
+public interface GDST_Renderer {
+    
+    // called whenever the structure of the environment is set up or changed
+    public void updateEnvironmentSettings(int numCols, int numRows, int[] depths, int[] steps, int[] treasure);
+    
+    public void moveSubmarine(int col, int row);
+    
+    // releases any display resources, once the renderer is no longer needed
+    public void close();
+    
+}